@@ -6,9 +6,14 @@ import gitlet.Manager.StageManager;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.PrintWriter;
 import java.io.Serializable;
+import java.time.DateTimeException;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
-import java.util.Map;
 
 import static gitlet.Const.*;
 
@@ -17,6 +22,12 @@ import static gitlet.Const.*;
  *
  */
 public class Commit implements Serializable {
+    /**
+     * that of commits made before the timestamp was split into
+     * _timeMillis and _timeZone, so those can still be read.
+     */
+    private static final long serialVersionUID = -4044245387856843913L;
+
     /**
      * a new gitlet commit with:
      * -commit message MSG.
@@ -25,7 +36,7 @@ public class Commit implements Serializable {
      * stored in another directory with identical name.
      */
     public Commit(String msg, Commit parent) throws IOException {
-        initCommit(msg, parent);
+        initCommit(msg, parent, null);
     }
 
     /** a new merge commit.
@@ -37,8 +48,22 @@ public class Commit implements Serializable {
 
     public Commit(String mergeMsg, Commit parent, Commit mergeParent)
             throws IOException {
+        this(mergeMsg, parent, mergeParent, null);
+    }
+
+    /** a new merge commit tracking the files of BLOBMAPPING, or the
+     * staged files iff it is null.
+     * @param mergeMsg merge message of the commit.
+     * @param parent parent of this commit.
+     * @param mergeParent merge parnet of this commit.
+     * @param blobMapping mapping of filename --> file blob.
+     * @throws IOException
+     */
+    public Commit(String mergeMsg, Commit parent, Commit mergeParent,
+                  LinkedHashMap<String, String> blobMapping)
+            throws IOException {
         _mergeParentSHA = mergeParent.getShaVal();
-        initCommit(mergeMsg, parent);
+        initCommit(mergeMsg, parent, blobMapping);
     }
 
 
@@ -46,17 +71,20 @@ public class Commit implements Serializable {
      * initialize a standard commit.
      * @param msg    the commit message.
      * @param parent parent commit of THIS commit.
+     * @param blobMapping files of THIS commit, or null for the parent's
+     *                    files with the staged changes.
      **/
-    private void initCommit(String msg, Commit parent) throws IOException {
+    private void initCommit(String msg, Commit parent,
+                            LinkedHashMap<String, String> blobMapping)
+            throws IOException {
         _parentSHA = parent.getShaVal();
         _msg = msg;
-        _time = InfoManager.gitletTime();
-        LinkedHashMap<String, String> blobMapping = processStage();
-        _shaVal = Utils.sha1(
-                Utils.serialize(blobMapping),
-                Utils.serialize(_msg),
-                Utils.serialize(_time),
-                Utils.serialize(_parentSHA));
+        _timeMillis = System.currentTimeMillis();
+        _timeZone = InfoManager.localOffset(_timeMillis);
+        if (blobMapping == null) {
+            blobMapping = processStage();
+        }
+        _shaVal = hash(Utils.serialize(blobMapping));
         saveCommitBlob();
         saveMappingBlob(blobMapping);
     }
@@ -65,34 +93,98 @@ public class Commit implements Serializable {
      * an initial commit.
      **/
     public Commit() throws IOException {
-        _msg = "initial commit";
-        _time = "Date: Thu Jan 1 00:00:00 1970 -0000";
-        _shaVal = Utils.sha1(Utils.serialize(this));
+        _msg = INITIAL_MSG;
+        _time = LEGACY_INITIAL_TIME;
         LinkedHashMap<String, String> initialMapping =
                 new LinkedHashMap<String, String>();
+        _shaVal = hash(Utils.serialize(initialMapping));
         saveMappingBlob(initialMapping);
         saveCommitBlob();
     }
 
+    /**
+     * return the SHA-1 value of a commit with my fields tracking the
+     * files of the mapping serialized as MAPPING, the contents of its
+     * mapping blob: that of the mapping, message, time, time zone and
+     * parent, or as named before the time zone was kept for a commit
+     * with the old timestamp. the merge parent is not hashed.
+     * a commit is named by this value when it is made, so checking its
+     * name against it finds a commit or mapping changed since. the
+     * mapping is taken as bytes, since a map read back need not
+     * serialize as it did when written.
+     */
+    public String hash(byte[] mapping) {
+        if (_time != null) {
+            return legacyHash(mapping);
+        }
+        return Utils.sha1(
+                mapping,
+                Utils.serialize(_msg),
+                Utils.serialize(_timeMillis),
+                Utils.serialize(_timeZone),
+                Utils.serialize(_parentSHA));
+    }
+
+    /**
+     * return the SHA-1 value of a commit with the old timestamp, as
+     * in hash(MAPPING). such an initial commit was named by its
+     * serialized self, which no longer serializes the same, so it is
+     * only recognised by its fields; any other is named by its mapping,
+     * message, timestamp and parent.
+     */
+    private String legacyHash(byte[] mapping) {
+        if (_parentSHA == null) {
+            if (INITIAL_MSG.equals(_msg)
+                    && LEGACY_INITIAL_TIME.equals(_time)
+                    && _mergeParentSHA == null
+                    && Arrays.equals(mapping, Utils.serialize(
+                            new LinkedHashMap<String, String>()))) {
+                return LEGACY_INITIAL_SHA;
+            }
+            return Utils.sha1(mapping, Utils.serialize(_msg),
+                    Utils.serialize(_time));
+        }
+        return Utils.sha1(
+                mapping,
+                Utils.serialize(_msg),
+                Utils.serialize(_time),
+                Utils.serialize(_parentSHA));
+    }
+
+    /**
+     * read my fields from IN, taking the time and time zone from the
+     * old timestamp of a commit that has one.
+     */
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (_time == null) {
+            return;
+        }
+        if (!_time.startsWith(DATE_LABEL)) {
+            throw new InvalidObjectException("bad timestamp " + _time);
+        }
+        try {
+            OffsetDateTime time = InfoManager.parseGitletTime(
+                    _time.substring(DATE_LABEL.length()));
+            _timeMillis = time.toInstant().toEpochMilli();
+            _timeZone = time.getOffset().getTotalSeconds();
+        } catch (DateTimeException excp) {
+            throw new InvalidObjectException("bad timestamp " + _time);
+        }
+    }
+
     /**
      * process the mapping of [Filename -> file blob] from parent, based on
      * addStage, removeStage, and blob mapping from previous commit.
      * return the processed Linked Hashmap of the current commit.
      */
-    private LinkedHashMap<String, String> processStage() throws IOException {
+    private LinkedHashMap<String, String> processStage() {
         LinkedHashMap<String, String> map = getParentCommit().getBlobMapping();
         for (String key : StageManager.rmStageMap().keySet()) {
             map.remove(key);
         }
-        for (Map.Entry<String, String> entry
-                : StageManager.addStageMap().entrySet()) {
-            String fileName = entry.getKey();
-            String blobSHA = entry.getValue();
-            map.put(fileName, blobSHA);
-            File stagedBlob = new File(ADD_BLOB_DIR, blobSHA);
-            File newBlob = new File(BLOB_DIR, blobSHA);
-            Utils.copyContents(stagedBlob, newBlob);
-        }
+        map.putAll(StageManager.addStageMap());
         StageManager.clearStage();
         return map;
     }
@@ -166,30 +258,19 @@ public class Commit implements Serializable {
 
 
 
-    /** simply prints my log.
+    /** simply prints my log to OUT.
      */
-    public void printLog() {
-        System.out.println("===");
-        System.out.println("commit " + _shaVal);
+    public void printLog(PrintWriter out) {
+        out.println("===");
+        out.println("commit " + _shaVal);
         if (_mergeParentSHA != null) {
-            System.out.println("Merge: "
+            out.println("Merge: "
                     + _parentSHA.substring(0, 7) + " "
                     + _mergeParentSHA.substring(0, 7));
         }
-        System.out.println(_time);
-        System.out.println(_msg);
-        System.out.println();
-    }
-
-    /**
-     * print my log, and trace the previous
-     * commit's log if previous commit exists.
-     */
-    public void traceLog() {
-        printLog();
-        if (_parentSHA != null) {
-            getParentCommit().traceLog();
-        }
+        out.println("Date: " + getDate());
+        out.println(_msg);
+        out.println();
     }
 
     /**
@@ -220,17 +301,33 @@ public class Commit implements Serializable {
         return _mergeParentSHA;
     }
 
-    /**return iff THIS commit has parent. */
+    /**return iff THIS commit has parent that can be walked to.
+     * a shallow boundary commit has none, since its parents
+     * were never fetched. */
     public boolean hasParent() {
-        return _parentSHA != null;
+        return _parentSHA != null && !CommitManager.isShallow(_shaVal);
     }
 
-    /**return iff THIS commit has a merge parent. */
+    /**return iff THIS commit has a merge parent that can be walked to. */
     public boolean hasMergeParent() {
-        return _mergeParentSHA != null;
+        return _mergeParentSHA != null && !CommitManager.isShallow(_shaVal);
     }
 
 
+    /**
+     * return my timestamp as shown by log, without the "Date: " label.
+     */
+    public String getDate() {
+        return InfoManager.gitletTime(_timeMillis, _timeZone);
+    }
+
+    /**
+     * return my timestamp in milliseconds since the epoch.
+     */
+    public long getTimeMillis() {
+        return _timeMillis;
+    }
+
     /**
      * return my commit message.
      */
@@ -245,7 +342,21 @@ public class Commit implements Serializable {
     private String _msg;
 
     /**
-     * timestamp.
+     * timestamp, in milliseconds since the epoch.
+     */
+    private long _timeMillis;
+
+    /**
+     * time zone the commit was made in, in seconds ahead of UTC.
+     * only used to display the timestamp.
+     */
+    private int _timeZone;
+
+    /**
+     * timestamp as shown by log, "Date: " and all, kept by commits
+     * made before _timeMillis and _timeZone, which are read from it,
+     * and by the initial commit, so it is named as it was then.
+     * null for any other commit.
      */
     private String _time;
 
@@ -275,6 +386,20 @@ public class Commit implements Serializable {
         return _shaVal;
     }
 
+    /** message of the initial commit. */
+    private static final String INITIAL_MSG = "initial commit";
+
+    /** label the old timestamp starts with. */
+    private static final String DATE_LABEL = "Date: ";
+
+    /** old timestamp of the initial commit. */
+    private static final String LEGACY_INITIAL_TIME =
+            "Date: Thu Jan 1 00:00:00 1970 -0000";
+
+    /** name of the initial commit, in every repository. */
+    private static final String LEGACY_INITIAL_SHA =
+            "4fb48c12e2c10aa0bb0a404ba41b02346b811247";
+
 
 
 }
@@ -31,17 +31,18 @@ public class Const {
     public static final File GITLET_META_DIR =
             new File(GITLET_DIR, ".gitletMeta");
 
-    /**
-     * directory storing all the blobs staged for addition.
-     */
-    public static final File ADD_BLOB_DIR = new File(GITLET_DIR, ".blobCart");
-
     /**
      * directory storing mappings of files of all commits.
      */
     public static final File BLOB_MAP_DIR =
             new File(COMMIT_META_DIR, ".blobMapping");
 
+    /**
+     * index of all commits sorted by time, see TimeIndex.
+     */
+    public static final File TIME_INDEX_FILE =
+            new File(COMMIT_META_DIR, ".timeIndex");
+
     /**
      * directory storing all the blobs that has been committed.
      */
@@ -66,11 +67,28 @@ public class Const {
             new File(GITLET_META_DIR, ".StagedRm");
 
     /**
-     * file storing a serialized hashmap for branches.
+     * file storing most branches, sorted by name; see RefStore.
+     */
+    public static final File PACKED_REFS_FILE =
+            new File(GITLET_META_DIR, ".packedRefs");
+
+    /**
+     * file in which older versions stored every branch as a serialized
+     * hashmap; RefStore moves its branches to PACKED_REFS_FILE.
      */
     public static final File BRANCH_MAP_FILE =
             new File(GITLET_META_DIR, ".branchMAP");
 
+    /**
+     * directory storing recently updated branches, one file each.
+     */
+    public static final File REFS_DIR = new File(GITLET_META_DIR, ".refs");
+
+    /**
+     * directory storing the reflog of each branch; see Reflog.
+     */
+    public static final File LOGS_DIR = new File(GITLET_META_DIR, ".logs");
+
     /**
      * file storing a serialized hashmap for remote repositories.
      * Mapping: repository name --> repository directory
@@ -78,8 +96,54 @@ public class Const {
     public static final File REMOTE_REPO_FILE =
             new File(GITLET_META_DIR, ".remoteRepo");
 
-    /**hour to minute.*/
-    public static final int HOUR_TO_MILISEC = 3600000;
+    /**
+     * file storing a serialized set of shallow boundary commits,
+     * commits whose parents were deliberately not fetched.
+     */
+    public static final File SHALLOW_FILE =
+            new File(GITLET_META_DIR, ".shallow");
+
+    /**
+     * file storing a serialized hashmap for blobs left on a remote
+     * by a partial fetch.
+     * Mapping: blob SHA-1 value --> remote name
+     */
+    public static final File PROMISED_FILE =
+            new File(GITLET_META_DIR, ".promised");
+
+    /**
+     * file storing when this repository was cloned, in milliseconds
+     * since the epoch. absent iff it was not made by clone.
+     */
+    public static final File CLONE_TIME_FILE =
+            new File(GITLET_META_DIR, ".cloneTime");
+
+    /**
+     * file storing the glob patterns of a sparse checkout, one per
+     * line. absent iff every file is checked out.
+     */
+    public static final File SPARSE_FILE =
+            new File(GITLET_META_DIR, ".sparse");
+
+    /**
+     * file storing the port and directory of a running file system
+     * monitor, one per line. absent iff none was started.
+     */
+    public static final File FSMONITOR_FILE =
+            new File(GITLET_META_DIR, ".fsmonitor");
+
+    /**
+     * file storing the files of the working directory and their hashes
+     * as of the last answer of the file system monitor; see FsMonitor.
+     */
+    public static final File FSMONITOR_CACHE_FILE =
+            new File(GITLET_META_DIR, ".fsmonitorCache");
+
+    /**
+     * directory caching the result of blame for a file in a commit, in
+     * a file named by the SHA-1 of both; see BlameManager.
+     */
+    public static final File BLAME_DIR = new File(GITLET_META_DIR, ".blame");
 
 
 }
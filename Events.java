@@ -0,0 +1,120 @@
+package gitlet;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** JDK Flight Recorder events of gitlet, all in the category Gitlet.
+ *  They are disabled unless a recording enables them, as gitlet.jfc
+ *  does, so a recording with the default settings sees none of them.
+ *  Code emitting an event creates it, calls begin, does its work, and
+ *  fills in its fields and commits it only if shouldCommit, so when
+ *  the events are disabled none of their fields are computed.
+ */
+public final class Events {
+
+    /** The execution of one gitlet command that runs to completion;
+     *  commands that stop on an error are not recorded. */
+    @Name("gitlet.Command")
+    @Label("Command")
+    @Category("Gitlet")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class Command extends Event {
+        /** The command and its operands. */
+        @Label("Arguments")
+        public String arguments;
+    }
+
+    /** A read of one object: a commit, a blob or metadata. */
+    @Name("gitlet.ObjectRead")
+    @Label("Object Read")
+    @Category("Gitlet")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class ObjectRead extends Event {
+        /** Name of the object, a SHA-1 hash for commits and blobs. */
+        @Label("Id")
+        public String id;
+        /** Kind of object, such as Commit or blob. */
+        @Label("Type")
+        public String type;
+        /** Size of the object as stored. */
+        @Label("Size")
+        @DataAmount
+        public long size;
+    }
+
+    /** A write of one object: a commit, a blob or metadata. */
+    @Name("gitlet.ObjectWrite")
+    @Label("Object Write")
+    @Category("Gitlet")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class ObjectWrite extends Event {
+        /** Name of the object, a SHA-1 hash for commits and blobs. */
+        @Label("Id")
+        public String id;
+        /** Kind of object, such as Commit or blob. */
+        @Label("Type")
+        public String type;
+        /** Size of the object as stored. */
+        @Label("Size")
+        @DataAmount
+        public long size;
+    }
+
+    /** One phase of a merge: finding the split point, categorizing
+     *  files, or generating the conflict of one file. */
+    @Name("gitlet.MergePhase")
+    @Label("Merge Phase")
+    @Category("Gitlet")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class MergePhase extends Event {
+        /** The phase: split point, categorization or conflict. */
+        @Label("Phase")
+        public String phase;
+        /** The branch being merged in. */
+        @Label("Given Branch")
+        public String branch;
+        /** Number of files the phase went through. */
+        @Label("Files")
+        public int files;
+        /** The conflicted file, for a conflict. */
+        @Label("File")
+        public String file;
+    }
+
+    /** A push or fetch between this repository and a remote. */
+    @Name("gitlet.Transfer")
+    @Label("Remote Transfer")
+    @Category("Gitlet")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class Transfer extends Event {
+        /** Either push or fetch. */
+        @Label("Direction")
+        public String direction;
+        /** Name of the remote. */
+        @Label("Remote")
+        public String remote;
+        /** Branch of the remote pushed to or fetched. */
+        @Label("Branch")
+        public String branch;
+        /** Commits sent or received, where known. */
+        @Label("Commits")
+        public int commits;
+        /** Blobs sent or received, where known. */
+        @Label("Blobs")
+        public int blobs;
+    }
+
+    /** Not instantiable. */
+    private Events() {
+    }
+}
@@ -1,15 +1,30 @@
 package gitlet;
 
 
+import gitlet.Manager.BlameManager;
 import gitlet.Manager.BranchManager;
+import gitlet.Manager.BundleManager;
 import gitlet.Manager.CheckoutManager;
+import gitlet.Manager.CloneManager;
 import gitlet.Manager.CommitManager;
+import gitlet.Manager.FsckManager;
+import gitlet.Manager.FsMonitor;
+import gitlet.Manager.GcManager;
 import gitlet.Manager.InfoManager;
 import gitlet.Manager.MergeManager;
 import gitlet.Manager.RemoteManager;
+import gitlet.Manager.SparseManager;
 import gitlet.Manager.StageManager;
+import gitlet.Manager.TransportManager;
 
+import java.io.File;
 import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
 
 import static gitlet.Const.*;
 
@@ -25,50 +40,83 @@ public class Main {
             Utils.error("Please enter a command.");
         }
         _input = args;
-        if (_input[0].equals("init")) {
-            initGitlet();
-        } else {
-            readGitlet();
-            processInput();
+        Trace.start(args);
+        Events.Command event = new Events.Command();
+        event.begin();
+        try {
+            if (_input[0].equals("init")) {
+                initGitlet();
+            } else if (_input[0].equals("clone")) {
+                cloneGitlet();
+            } else if (_input[0].equals("serve")) {
+                readGitlet();
+                serve(_input);
+                return;
+            } else if (_input[0].equals("fsmonitor")) {
+                readGitlet();
+                fsmonitor();
+                return;
+            } else {
+                readGitlet();
+                processInput();
+            }
+            saveGitlet();
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        } finally {
+            if (event.shouldCommit()) {
+                event.arguments = String.join(" ", args);
+                event.commit();
+            }
+            Trace.finish();
         }
-        saveGitlet();
     }
 
     /**process the input ARGS and operate accordingly. */
     static void processInput() throws IOException {
         switch (_input[0]) {
-        case "add": add(_input[1]); break;
+        case "add": add(_input); break;
         case "commit": commit(); break;
         case "rm": remove(_input[1]); break;
-        case "log": log(); break;
-        case "global-log": logAll(); break;
+        case "log": log(_input); break;
+        case "global-log": logAll(_input); break;
         case "find": find(_input[1]); break;
         case "status": status(); break;
         case "checkout": checkout(_input); break;
         case "branch": branchInit(_input[1]); break;
         case "rm-branch": branchDel(_input[1]); break;
         case "reset": reset(_input[1]); break;
-        case "merge": merge(_input[1]); break;
+        case "merge": merge(_input); break;
         case "add-remote": addRemote(_input[1], _input[2]); break;
         case "rm-remote": rmRemote(_input[1]); break;
         case "push": pushToRemote(_input[1], _input[2]); break;
-        case "fetch": fetchFromRemote(_input[1], _input[2]); break;
+        case "fetch": fetchFromRemote(_input); break;
         case "pull": pullFromRemote(_input[1], _input[2]); break;
+        case "bundle": bundle(_input); break;
+        case "unbundle": unbundle(_input[1]); break;
+        case "gc": gc(_input); break;
+        case "fsck": fsck(_input); break;
+        case "reflog": reflog(_input); break;
+        case "sparse-checkout": sparseCheckout(_input); break;
+        case "blame": blame(_input); break;
         default: noMatchingInput(); break;
         }
     }
 
     /** get the gitlet for the current directory stored as a serialized
      * file inside .gitlet subdirectory.*/
+    @SuppressWarnings("try")
     public static void readGitlet() {
         if (!GITLET_DIR.exists()) {
             Utils.error("Not in an initialized Gitlet directory.");
         }
-        StageManager.getAddStageMapFromFile();
-        StageManager.getRmStageMapFromFile();
-        BranchManager.getBranchMapFromFile();
-        BranchManager.getActiveBranchFromFile();
-        RemoteManager.readRemoteMap();
+        try (Trace.Span span = Trace.span("readGitlet")) {
+            StageManager.getAddStageMapFromFile();
+            StageManager.getRmStageMapFromFile();
+            BranchManager.getActiveBranchFromFile();
+            RemoteManager.readRemoteMap();
+            CommitManager.getShallowFromFile();
+        }
     }
 
     /**initialize a Gitlet in the CWR through following steps:
@@ -78,6 +126,28 @@ public class Main {
      * */
     public static void initGitlet() throws IOException {
         checkOperandNum(0);
+        makeGitletDirs();
+        Commit initCommit = new Commit();
+        BranchManager.initBranchManager(initCommit);
+    }
+
+    /**make a copy of an existing gitlet repository in the CWR:
+     * clone PATH, where PATH names the repository or its .gitlet.
+     * objects are shared with the source through hard links where
+     * possible, and the source's active branch is checked out.
+     */
+    public static void cloneGitlet() throws IOException {
+        checkOperandNum(1);
+        File source = CloneManager.sourceGitletDir(_input[1]);
+        CloneManager.checkTarget(source);
+        makeGitletDirs();
+        CloneManager.cloneFrom(source);
+    }
+
+    /**creates all necessary directories and metadata of a new, empty
+     * gitlet repository in the CWR, erroring if one already exists.
+     */
+    static void makeGitletDirs() throws IOException {
         if (GITLET_DIR.exists()) {
             Utils.error("A Gitlet version-control system "
                     + "already exists in the current directory.");
@@ -89,19 +159,20 @@ public class Main {
         BLOB_MAP_DIR.mkdir();
         BLOB_DIR.mkdir();
         ACTIVE_BRANCH_FILE.createNewFile();
-        BRANCH_MAP_FILE.createNewFile();
         REMOTE_REPO_FILE.createNewFile();
         StageManager.initStage();
-        Commit initCommit = new Commit();
-        BranchManager.initBranchManager(initCommit);
         RemoteManager.initRemoteMap();
     }
 
-    /**add a file to the staging area to be committed.
-     * @param fileName name of the file to be added. */
-    public static void add(String fileName) throws IOException {
-        checkOperandNum(1);
-        StageManager.stageAdd(fileName);
+    /**add files to the staging area to be committed: add PATH...,
+     * where each PATH is a file name, "." for every file, or a glob.
+     * @param args arguments to be passed in. */
+    public static void add(String[] args) throws IOException {
+        if (args.length < 2) {
+            wrongOperandInput();
+        }
+        StageManager.stageAll(StageManager.filesNamed(
+                Arrays.asList(args).subList(1, args.length)));
     }
 
     /**make a gitlet commit.
@@ -121,16 +192,54 @@ public class Main {
 
     /** display log of each commit back to the initial commit
      * iff there's a merge, trace the 1st parent commit.
+     * log [-n N] [--since=DATE] [--until=DATE] [--format=FORMAT]
+     *     [REVISION | A..B]
+     * @param args arguments to be passed in.
      */
-    public static void log() {
-        checkOperandNum(0);
-        InfoManager.log();
+    public static void log(String[] args) {
+        String range = null;
+        int limit = 0;
+        long since = Long.MIN_VALUE;
+        long until = Long.MAX_VALUE;
+        String format = null;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-n") && i + 1 < args.length) {
+                limit = parsePositive(args[++i]);
+            } else if (args[i].startsWith(SINCE)) {
+                since = parseDate(args[i].substring(SINCE.length()));
+            } else if (args[i].startsWith(UNTIL)) {
+                until = parseDate(args[i].substring(UNTIL.length()));
+            } else if (args[i].startsWith(FORMAT)) {
+                format = args[i].substring(FORMAT.length());
+                if (format.equals("oneline")) {
+                    format = "%H %s";
+                }
+            } else if (range == null && !args[i].startsWith("-")) {
+                range = args[i];
+            } else {
+                wrongOperandInput();
+            }
+        }
+        InfoManager.log(range, limit, since, until, format);
     }
 
-    /** display info about all commits regardless of ordering.*/
-    public static void logAll() {
-        checkOperandNum(0);
-        InfoManager.logAll();
+    /** display info about all commits, newest first.
+     * global-log [--since=DATE] [--until=DATE]
+     * @param args arguments to be passed in.
+     */
+    public static void logAll(String[] args) {
+        long since = Long.MIN_VALUE;
+        long until = Long.MAX_VALUE;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith(SINCE)) {
+                since = parseDate(args[i].substring(SINCE.length()));
+            } else if (args[i].startsWith(UNTIL)) {
+                until = parseDate(args[i].substring(UNTIL.length()));
+            } else {
+                wrongOperandInput();
+            }
+        }
+        InfoManager.logAll(since, until);
     }
 
     /** print the ID of commit(s) with matching commit message.
@@ -195,13 +304,21 @@ public class Main {
         CheckoutManager.reset(shortCommitSHA);
     }
 
-    /**merge given branch with current branch.
-     * @param branchName name of the branch to be merged.
+    /**merge given branch with current branch: merge BRANCH, or
+     * merge --in-memory BRANCH INTO to merge BRANCH into INTO, another
+     * branch than the current one, in the object store without reading
+     * or writing the working directory or the stage.
+     * @param args arguments to be passed in.
      * */
-    public static void merge(String branchName) throws IOException {
-        checkOperandNum(1);
-        MergeManager merger =
-                new MergeManager(BranchManager.activeBranch(), branchName);
+    public static void merge(String[] args) throws IOException {
+        MergeManager merger;
+        if (args.length == 4 && args[1].equals("--in-memory")) {
+            merger = new MergeManager(args[3], args[2], true);
+        } else {
+            checkOperandNum(1);
+            merger = new MergeManager(BranchManager.activeBranch(),
+                    args[1]);
+        }
         merger.merge();
     }
 
@@ -236,15 +353,35 @@ public class Main {
     }
 
     /**Brings down commits from the remote Gitlet repository
-     * into the local Gitlet repository.
-     * @param remoteStr name of remote repo.
-     * @param branchStr string representation of the remote branch to fetch.
+     * into the local Gitlet repository:
+     * fetch REMOTE BRANCH [--depth N | --deepen N]
+     * [--filter=blobs-over:SIZE].
+     * --depth fetches only the last N commits of the branch, and
+     * --deepen extends a shallow history by N more commits.
+     * --filter leaves blobs over SIZE bytes (k, m and g suffixes allowed)
+     * on the remote until they are needed.
+     * @param args arguments to be passed in.
      */
-    public static void fetchFromRemote(String remoteStr, String branchStr)
-            throws IOException {
-        checkOperandNum(2);
-        RemoteManager manager = new RemoteManager(remoteStr);
-        manager.fetchFromRepo(branchStr);
+    public static void fetchFromRemote(String[] args) throws IOException {
+        if (args.length < 3) {
+            wrongOperandInput();
+        }
+        int depth = 0;
+        int deepen = 0;
+        long blobLimit = -1;
+        for (int i = 3; i < args.length; i++) {
+            if (args[i].equals("--depth") && i + 1 < args.length) {
+                depth = parsePositive(args[++i]);
+            } else if (args[i].equals("--deepen") && i + 1 < args.length) {
+                deepen = parsePositive(args[++i]);
+            } else if (args[i].startsWith(BLOB_FILTER)) {
+                blobLimit = parseSize(args[i].substring(BLOB_FILTER.length()));
+            } else {
+                wrongOperandInput();
+            }
+        }
+        RemoteManager manager = new RemoteManager(args[1]);
+        manager.fetchFromRepo(args[2], depth, deepen, blobLimit);
     }
 
     /**Fetch branch from remote and merges fetch into current branch.
@@ -258,14 +395,140 @@ public class Main {
         manager.pullFromRepo(branchStr);
     }
 
+    /**writes a bundle file: bundle create FILE [BRANCH...].
+     * @param args arguments to be passed in.*/
+    public static void bundle(String[] args) throws IOException {
+        if (args.length < 3 || !args[1].equals("create")) {
+            wrongOperandInput();
+        }
+        BundleManager.createBundle(args[2],
+                Arrays.asList(args).subList(3, args.length));
+    }
+
+    /**reads the objects and refs of a bundle file into this repository.
+     * @param fileName name of the bundle file.*/
+    public static void unbundle(String fileName) throws IOException {
+        checkOperandNum(1);
+        BundleManager.unbundle(fileName);
+    }
+
+    /**deletes unreachable objects: gc [--grace SECONDS].
+     * objects younger than the grace period, two weeks by default,
+     * are kept.
+     * @param args arguments to be passed in.*/
+    public static void gc(String[] args) throws IOException {
+        long grace = GcManager.DEFAULT_GRACE;
+        if (args.length == 3 && args[1].equals("--grace")) {
+            grace = parseNonNegative(args[2]) * 1000;
+        } else {
+            checkOperandNum(0);
+        }
+        GcManager.gc(grace);
+    }
+
+    /**shows where a branch has pointed: reflog [-n N] [BRANCH], for the
+     * active branch by default.
+     * @param args arguments to be passed in.*/
+    public static void reflog(String[] args) {
+        String branch = BranchManager.activeBranch();
+        int limit = 0;
+        boolean branchGiven = false;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-n") && i + 1 < args.length) {
+                limit = parsePositive(args[++i]);
+            } else if (!branchGiven) {
+                branch = args[i];
+                branchGiven = true;
+            } else {
+                wrongOperandInput();
+            }
+        }
+        InfoManager.reflog(branch, limit);
+    }
+
+    /**limits the working directory to files matching glob patterns:
+     * sparse-checkout set PATTERN..., sparse-checkout list, or
+     * sparse-checkout disable to check out every file again.
+     * @param args arguments to be passed in.*/
+    public static void sparseCheckout(String[] args) throws IOException {
+        if (args.length < 2) {
+            wrongOperandInput();
+        }
+        switch (args[1]) {
+        case "set":
+            if (args.length < 3) {
+                wrongOperandInput();
+            }
+            SparseManager.set(Arrays.asList(args).subList(2, args.length));
+            break;
+        case "list": checkOperandNum(1); SparseManager.list(); break;
+        case "disable": checkOperandNum(1); SparseManager.set(List.of());
+            break;
+        default: wrongOperandInput();
+        }
+    }
+
+    /**prints the commit that last changed each line of a file:
+     * blame [REVISION] FILE, where REVISION defaults to the head commit.
+     * @param args arguments to be passed in.*/
+    public static void blame(String[] args) throws IOException {
+        switch (args.length) {
+        case 2: BlameManager.blame("", args[1]); break;
+        case 3: BlameManager.blame(args[1], args[2]); break;
+        default: wrongOperandInput();
+        }
+    }
+
+    /**verifies the repository: fsck [--connectivity-only].
+     * @param args arguments to be passed in.*/
+    public static void fsck(String[] args) throws IOException {
+        boolean connectivityOnly = false;
+        if (args.length == 2 && args[1].equals("--connectivity-only")) {
+            connectivityOnly = true;
+        } else {
+            checkOperandNum(0);
+        }
+        FsckManager.fsck(connectivityOnly);
+    }
+
+    /**serves this repository to tcp:// remotes:
+     * serve --port PORT [--bind ADDRESS]. only this host may connect
+     * unless ADDRESS names another interface, or 0.0.0.0 for all of
+     * them; nobody who connects is asked who they are. runs until
+     * killed and never saves, since pushes update the branches on disk
+     * directly.
+     * @param args arguments to be passed in.*/
+    public static void serve(String[] args) throws IOException {
+        if (args.length != 3 && args.length != 5
+                || !args[1].equals("--port")
+                || args.length == 5 && !args[3].equals("--bind")) {
+            wrongOperandInput();
+        }
+        TransportManager.serve(args[2].equals("0") ? 0
+                : parsePositive(args[2]), args.length == 5 ? args[4] : null);
+    }
+
+    /**watches the working directory so that status, add and the checks
+     * of checkout only look at changed files: fsmonitor. runs until
+     * killed, like serve.*/
+    public static void fsmonitor() throws IOException {
+        checkOperandNum(0);
+        FsMonitor.serve();
+    }
 
     /**save the current changes.*/
+    @SuppressWarnings("try")
     public static void saveGitlet() {
-        StageManager.saveAddStageMapToFile(ADD_STG_FILE);
-        StageManager.saveRmStageMapToFile(RM_STG_FILE);
-        Utils.writeObject(BRANCH_MAP_FILE, BranchManager.branchMap());
-        Utils.writeObject(ACTIVE_BRANCH_FILE, BranchManager.activeBranch());
-        Utils.writeObject(REMOTE_REPO_FILE, RemoteManager.repoMapping());
+        try (Trace.Span span = Trace.span("saveGitlet")) {
+            StageManager.saveAddStageMapToFile(ADD_STG_FILE);
+            StageManager.saveRmStageMapToFile(RM_STG_FILE);
+            Utils.writeObject(ACTIVE_BRANCH_FILE,
+                    BranchManager.activeBranch());
+            Utils.writeObject(REMOTE_REPO_FILE, RemoteManager.repoMapping());
+            CommitManager.saveShallowToFile();
+            RemoteManager.savePromisedToFile();
+            FsMonitor.save();
+        }
     }
 
 
@@ -290,6 +553,81 @@ public class Main {
         Utils.error("Incorrect operands.");
     }
 
+    /**return NUM as a positive integer, erroring if it is not one.*/
+    static int parsePositive(String num) {
+        try {
+            int result = Integer.parseInt(num);
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            wrongOperandInput();
+        }
+        wrongOperandInput();
+        return 0;
+    }
+
+    /**return SIZE, a byte count with an optional k, m or g suffix,
+     * as a number of bytes, erroring if it is not one.*/
+    static long parseSize(String size) {
+        long unit = 1;
+        String lower = size.toLowerCase();
+        if (lower.endsWith("k")) {
+            unit = 1L << 10;
+        } else if (lower.endsWith("m")) {
+            unit = 1L << 20;
+        } else if (lower.endsWith("g")) {
+            unit = 1L << 30;
+        }
+        if (unit != 1) {
+            lower = lower.substring(0, lower.length() - 1);
+        }
+        return parseNonNegative(lower) * unit;
+    }
+
+    /**return NUM as a non-negative long, erroring if it is not one.*/
+    static long parseNonNegative(String num) {
+        try {
+            long result = Long.parseLong(num);
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            wrongOperandInput();
+        }
+        wrongOperandInput();
+        return 0;
+    }
+
+    /**return DATE, a local date like 2021-04-01 with an optional time
+     * like 13:05 or 13:05:30 after a space or a T, as milliseconds since
+     * the epoch, erroring if it is not one.*/
+    static long parseDate(String date) {
+        try {
+            String iso = date.replace(' ', 'T');
+            LocalDateTime time = iso.contains("T")
+                    ? LocalDateTime.parse(iso)
+                    : LocalDate.parse(iso).atStartOfDay();
+            return time.atZone(ZoneId.systemDefault())
+                    .toInstant().toEpochMilli();
+        } catch (DateTimeParseException excp) {
+            wrongOperandInput();
+            return 0;
+        }
+    }
+
+    /**prefix of the log option skipping commits older than a date.*/
+    private static final String SINCE = "--since=";
+
+    /**prefix of the log option skipping commits newer than a date.*/
+    private static final String UNTIL = "--until=";
+
+    /**prefix of the log option choosing what to print per commit.*/
+    private static final String FORMAT = "--format=";
+
+    /**prefix of the fetch option leaving large blobs on the remote.*/
+    private static final String BLOB_FILTER = "--filter=blobs-over:";
+
     /**input from user.*/
     private static String[] _input;
 
@@ -0,0 +1,234 @@
+package gitlet.Manager;
+
+import gitlet.Commit;
+import gitlet.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static gitlet.Const.BLAME_DIR;
+import static gitlet.Const.BLOB_DIR;
+
+/**manager class of blame, which finds the commit that last changed
+ * each line of a file.
+ * history is walked backwards from the blamed commit, newest commit
+ * first, carrying only the lines not yet attributed. a line that a
+ * parent has unchanged moves on to that parent; the rest belong to the
+ * commit. parents whose blob of the file is the same are passed every
+ * line without diffing, and the walk ends once no line is left.
+ * results are cached per (commit, file) in BLAME_DIR, and the walk uses
+ * the cached result of any commit it reaches, so blaming a file again
+ * after a few commits only walks those commits.
+ */
+public class BlameManager {
+
+    /**print each line of FILENAME as of the commit REV names, with the
+     * commit that last changed it.
+     */
+    public static void blame(String rev, String fileName)
+            throws IOException {
+        Commit commit = CommitManager.getCommit(InfoManager.resolve(rev));
+        String blobSHA = commit.getBlobMapping().get(fileName);
+        if (blobSHA == null) {
+            Utils.error("File does not exist in that commit.");
+        }
+        String[] lines = lines(blobSHA);
+        String[] origins = attribute(commit, fileName, blobSHA, lines);
+        HashMap<String, String> dates = new HashMap<>();
+        int width = Integer.toString(lines.length).length();
+        PrintWriter out = InfoManager.writer();
+        for (int i = 0; i < lines.length; i++) {
+            String date = dates.computeIfAbsent(origins[i],
+                    sha -> CommitManager.getCommit(sha).getDate());
+            out.printf("%s (%s %" + width + "d) %s%n",
+                    origins[i].substring(0, InfoManager.SHORT_SHA), date,
+                    i + 1, lines[i]);
+        }
+        out.flush();
+    }
+
+    /**return the SHA-1 value of the commit that last changed each of
+     * LINES, the lines of blob BLOBSHA, FILENAME in COMMIT.
+     */
+    private static String[] attribute(Commit commit, String fileName,
+                                      String blobSHA, String[] lines)
+            throws IOException {
+        String[] origins = cached(commit.getShaVal(), fileName);
+        if (origins != null && origins.length == lines.length) {
+            return origins;
+        }
+        origins = new String[lines.length];
+        HashMap<String, Pending> pending = new HashMap<>();
+        PriorityQueue<Pending> queue = new PriorityQueue<>(
+                Comparator.comparingLong(Pending::time).reversed());
+        Pending start = new Pending(commit, blobSHA);
+        start._lines = lines;
+        for (int i = 0; i < lines.length; i++) {
+            start.add(i, i);
+        }
+        queue.add(start);
+        boolean shallow = false;
+        while (!queue.isEmpty()) {
+            Pending next = queue.poll();
+            pending.remove(next._commit.getShaVal());
+            String[] known = next == start ? null
+                    : cached(next._commit.getShaVal(), fileName);
+            if (known != null) {
+                for (int[] line : next._pairs) {
+                    origins[line[1]] = known[line[0]];
+                }
+                continue;
+            }
+            List<int[]> rest = next._pairs;
+            for (String parentSHA : parents(next._commit)) {
+                if (rest.isEmpty()) {
+                    break;
+                }
+                rest = pass(next, rest, parentSHA, fileName, pending, queue);
+            }
+            shallow |= !rest.isEmpty()
+                    && CommitManager.isShallow(next._commit.getShaVal());
+            for (int[] line : rest) {
+                origins[line[1]] = next._commit.getShaVal();
+            }
+        }
+        if (!shallow) {
+            BLAME_DIR.mkdirs();
+            Utils.writeObjectAtomic(cacheFile(commit.getShaVal(), fileName),
+                    origins);
+        }
+        return origins;
+    }
+
+    /**move the lines of REST, pairs of a line of CHILD and a line of the
+     * blamed file, that the parent PARENTSHA has unchanged to that
+     * parent, as found in or added to PENDING and QUEUE. return the
+     * pairs left.
+     */
+    private static List<int[]> pass(Pending child, List<int[]> rest,
+                                    String parentSHA, String fileName,
+                                    HashMap<String, Pending> pending,
+                                    PriorityQueue<Pending> queue)
+            throws IOException {
+        Commit parent = CommitManager.getCommit(parentSHA);
+        String parentBlob = parent.getBlobMapping().get(fileName);
+        if (parentBlob == null) {
+            return rest;
+        }
+        Pending target = pending.get(parentSHA);
+        if (target == null) {
+            target = new Pending(parent, parentBlob);
+        }
+        List<int[]> left = new ArrayList<>();
+        if (parentBlob.equals(child._blobSHA)) {
+            target._lines = child._lines;
+            target._pairs.addAll(rest);
+        } else {
+            if (child._lines == null) {
+                child._lines = lines(child._blobSHA);
+            }
+            if (target._lines == null) {
+                target._lines = lines(parentBlob);
+            }
+            int[] match = LineDiff.match(target._lines, child._lines);
+            for (int[] line : rest) {
+                if (match[line[0]] >= 0) {
+                    target.add(match[line[0]], line[1]);
+                } else {
+                    left.add(line);
+                }
+            }
+        }
+        if (!target._pairs.isEmpty()
+                && pending.put(parentSHA, target) == null) {
+            queue.add(target);
+        }
+        return left;
+    }
+
+    /**return the SHA-1 values of the parents of COMMIT that can be
+     * walked to, first parent first.
+     */
+    private static List<String> parents(Commit commit) {
+        List<String> parents = new ArrayList<>();
+        if (commit.hasParent()) {
+            parents.add(commit.getParentSHA());
+        }
+        if (commit.hasMergeParent()) {
+            parents.add(commit.getMergeParentSHA());
+        }
+        return parents;
+    }
+
+    /**return the lines of blob BLOBSHA, without their line breaks.*/
+    private static String[] lines(String blobSHA) throws IOException {
+        RemoteManager.ensureBlobs(List.of(blobSHA));
+        String text = Utils.readContentsAsString(new File(BLOB_DIR, blobSHA));
+        if (text.isEmpty()) {
+            return new String[0];
+        }
+        if (text.endsWith("\n")) {
+            text = text.substring(0, text.length() - 1);
+        }
+        return text.split("\n", -1);
+    }
+
+    /**return the cached origins of the lines of FILENAME in commit
+     * COMMITSHA, or null iff there are none.
+     */
+    private static String[] cached(String commitSHA, String fileName) {
+        File file = cacheFile(commitSHA, fileName);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            return Utils.readObject(file, String[].class);
+        } catch (IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    /**return the file caching the origins of FILENAME in COMMITSHA.*/
+    private static File cacheFile(String commitSHA, String fileName) {
+        return new File(BLAME_DIR, Utils.sha1(commitSHA, fileName));
+    }
+
+    /**lines of one commit's version of the blamed file still to be
+     * attributed.
+     */
+    private static class Pending {
+
+        /**lines of the blob BLOBSHA of the file in COMMIT.*/
+        Pending(Commit commit, String blobSHA) {
+            _commit = commit;
+            _blobSHA = blobSHA;
+        }
+
+        /**add line LINE of this version, which is line FINALLINE of the
+         * blamed file.
+         */
+        void add(int line, int finalLine) {
+            _pairs.add(new int[] {line, finalLine});
+        }
+
+        /**return the time of the commit.*/
+        long time() {
+            return _commit.getTimeMillis();
+        }
+
+        /**the commit.*/
+        private final Commit _commit;
+        /**SHA-1 value of the blob of the file in the commit.*/
+        private final String _blobSHA;
+        /**lines of the blob, iff already read.*/
+        private String[] _lines;
+        /**pairs of a line of this version and a line of the blamed file.*/
+        private final List<int[]> _pairs = new ArrayList<>();
+    }
+}
@@ -3,11 +3,12 @@ package gitlet.Manager;
 import gitlet.Commit;
 import gitlet.Utils;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.LinkedHashMap;
+import java.util.function.BiConsumer;
 
 import static gitlet.Const.ACTIVE_BRANCH_FILE;
-import static gitlet.Const.BRANCH_MAP_FILE;
 
 /**the class storing active branch in its metadata, as well
  * as in charge of manipulating branches.
@@ -18,16 +19,18 @@ public class BranchManager implements Serializable {
     /** initialize a branchManager with activeBranch
      * "master" pointing to COMMIT.
      */
-    public static void initBranchManager(Commit commit) {
-        _branchMap = new LinkedHashMap<String, String>();
-        _branchMap.put("master", commit.getShaVal());
-        _activeBranch = "master";
+    public static void initBranchManager(Commit commit) throws IOException {
+        initBranchManager("master", commit.getShaVal(), "init");
     }
 
-    /**read branchMapping from FILE that stores the serialized
-     * mapping. */
-    public static void getBranchMapFromFile() {
-        _branchMap = Utils.readLinkedHashMap(BRANCH_MAP_FILE);
+    /** initialize a branchManager with a single, active branch
+     * BRANCH pointing to commit HEADSHA, because of REASON.
+     */
+    public static void initBranchManager(String branch, String headSHA,
+                                         String reason) throws IOException {
+        REFS.init();
+        REFS.put(branch, headSHA, reason);
+        _activeBranch = branch;
     }
 
     /**read active branch from FILE that stores serialied cctive branch.*/
@@ -36,12 +39,19 @@ public class BranchManager implements Serializable {
     }
 
 
-    /**mapping of branches.*/
-    private static LinkedHashMap<String, String> _branchMap;
+    /**branches of the current repository. every change is written
+     * through at once rather than saved at the end of the command.*/
+    private static final RefStore REFS = RefStore.local();
 
-    /**return mapping of branches. */
+    /**return mapping of every branch to its head, in order of name.
+     * reads every branch; use getBranchHeadSHA for a single one. */
     public static LinkedHashMap<String, String> branchMap() {
-        return _branchMap;
+        return REFS.all();
+    }
+
+    /**call ACTION on every branch and its head, in order of name.*/
+    public static void forEachBranch(BiConsumer<String, String> action) {
+        REFS.forEach(action);
     }
 
     /**change active branch to be BRANCH.*/
@@ -62,7 +72,7 @@ public class BranchManager implements Serializable {
     }
     /**return SHA-1 reference to the head of the branch BRANCH.*/
     public static String getBranchHeadSHA(String branch) {
-        return _branchMap.get(branch);
+        return REFS.get(branch);
     }
     /**return head commit of branch BRANCH.*/
     public static Commit getBranchHead(String branch) {
@@ -70,32 +80,18 @@ public class BranchManager implements Serializable {
     }
 
 
-    /**return all branches except for active branch as an arrayList of String.
-     * order does not matter.*/
-    public static String[] getInactiveBranches() {
-        String[] inActiveBranches = new String[_branchMap.size() - 1];
-        int i = 0;
-        for (String branch : _branchMap.keySet()) {
-            if (!branch.equals(_activeBranch)) {
-                inActiveBranches[i] = branch;
-                i++;
-            }
-        }
-        return inActiveBranches;
-    }
-
-
     /**change active branch head to COMMITHASH, a SHA-1 reference to
-     * a specific commit.
+     * a specific commit, recording REASON in the reflog.
      */
-    public static void setBranchHead(String commitHash) {
-        _branchMap.put(_activeBranch, commitHash);
+    public static void setBranchHead(String commitHash, String reason) {
+        REFS.put(_activeBranch, commitHash, reason);
     }
 
-    /**change active branch head to point to NEWHEADCOMMIT.
+    /**change active branch head to point to NEWHEADCOMMIT, recording
+     * REASON in the reflog.
      */
-    public static void setBranchHead(Commit newHeadCommit) {
-        setBranchHead(newHeadCommit.getShaVal());
+    public static void setBranchHead(Commit newHeadCommit, String reason) {
+        setBranchHead(newHeadCommit.getShaVal(), reason);
     }
 
     /**adds a new branch BRANCHNAME to branch mapping,
@@ -107,15 +103,18 @@ public class BranchManager implements Serializable {
         if (branchExists(branchName)) {
             Utils.error("A branch with that name already exists.");
         }
-        _branchMap.put(branchName, getActiveBranchHeadSHA());
+        REFS.put(branchName, getActiveBranchHeadSHA(),
+                "branch: created from " + _activeBranch);
     }
 
     /**adds a new branch BRANCHNAME to branch mapping,
-     * pointing to commit with HEADSHA; does not activate
+     * pointing to commit with HEADSHA, or moves it there iff it
+     * exists, recording REASON in the reflog; does not activate
      * branch.
      */
-    public static void newBranch(String branchName, String headSHA) {
-        _branchMap.put(branchName, headSHA);
+    public static void newBranch(String branchName, String headSHA,
+                                 String reason) {
+        REFS.put(branchName, headSHA, reason);
     }
 
     /**removes BRANCHNAME from branch mapping.
@@ -128,13 +127,13 @@ public class BranchManager implements Serializable {
         if (branchName.equals(_activeBranch)) {
             Utils.error("Cannot remove the current branch.");
         }
-        _branchMap.remove(branchName);
+        REFS.delete(branchName, "branch: deleted");
     }
 
     /**checks if the branch with name BRANCHNAME exists.
      * @return true if it exists and false otherwise.*/
     public static boolean branchExists(String branchName) {
-        return _branchMap.containsKey(branchName);
+        return REFS.get(branchName) != null;
     }
 
 }
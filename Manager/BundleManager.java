@@ -0,0 +1,654 @@
+package gitlet.Manager;
+
+import gitlet.Commit;
+import gitlet.Const;
+import gitlet.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**class reading and writing bundles, single-stream packs of objects.
+ * layout of a bundle:
+ *   header:   magic, number of refs, then (ref name, commit SHA-1) pairs.
+ *   objects:  (type, SHA-1, compressed length, deflated bytes) records,
+ *             blobs first, then mappings, then commits, ended by END.
+ *             blobs over LARGE_OBJECT bytes are LARGE_BLOB records
+ *             instead: (type, SHA-1) then (compressed length, deflated
+ *             bytes) chunks of at most BUFFER_SIZE bytes each, ended by
+ *             a zero length, so they are never held in memory whole.
+ *   trailer:  SHA-1 digest of everything before it.
+ * objects are ordered so that a reader that stops half way never holds
+ * a commit without its mapping and blobs.
+ */
+public class BundleManager {
+
+    /**writes a bundle of all objects reachable from BRANCHES into
+     * FILENAME. bundles the active branch iff BRANCHES is empty.
+     */
+    public static void createBundle(String fileName, List<String> branches)
+            throws IOException {
+        if (branches.isEmpty()) {
+            branches = List.of(BranchManager.activeBranch());
+        }
+        LinkedHashMap<String, String> refs = new LinkedHashMap<>();
+        for (String branch : branches) {
+            if (!BranchManager.branchExists(branch)) {
+                Utils.error("A branch with that name does not exist.");
+            }
+            refs.put(branch, BranchManager.getBranchHeadSHA(branch));
+        }
+        ObjectStore local = ObjectStore.local();
+        List<String> commits = new ArrayList<>();
+        for (String head : refs.values()) {
+            for (String commitSHA
+                    : RemoteManager.missingCommits(head, local, null)) {
+                if (!commits.contains(commitSHA)) {
+                    commits.add(commitSHA);
+                }
+            }
+        }
+        List<String> blobs = RemoteManager.missingBlobs(commits, local, null);
+        RemoteManager.ensureBlobs(blobs);
+        try (OutputStream out = new FileOutputStream(fileName)) {
+            writeBundle(out, refs, local, blobs, commits);
+        }
+    }
+
+    /**reads the bundle FILENAME into the local repository, creating
+     * a branch bundle/[ref name] for each ref in its header.
+     */
+    public static void unbundle(String fileName) throws IOException {
+        File bundle = new File(fileName);
+        if (!bundle.isFile()) {
+            Utils.error("Bundle file not found.");
+        }
+        LinkedHashMap<String, String> refs;
+        try (InputStream in = new FileInputStream(bundle)) {
+            refs = readBundle(in, ObjectStore.local());
+        }
+        for (Map.Entry<String, String> ref : refs.entrySet()) {
+            BranchManager.newBranch("bundle/" + ref.getKey(), ref.getValue(),
+                    "unbundle: " + fileName);
+            InfoManager.ptln(ref.getValue() + " " + ref.getKey());
+        }
+    }
+
+    /**return the refs in the header of the bundle FILE without reading
+     * any of its objects.
+     */
+    public static LinkedHashMap<String, String> readRefs(File file)
+            throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            return readHeader(in);
+        } catch (IOException excp) {
+            Utils.error(corruptMessage(excp));
+            return null;
+        }
+    }
+
+    /**write a bundle to OUT advertising REFS and carrying BLOBS and the
+     * mappings and commits named COMMITS, all read from FROM.
+     * objects are read and compressed in parallel, and written to the
+     * stream in order.
+     */
+    static void writeBundle(OutputStream out,
+                            LinkedHashMap<String, String> refs,
+                            ObjectStore from, List<String> blobs,
+                            List<String> commits)
+            throws IOException {
+        BufferedOutputStream buffered =
+                new BufferedOutputStream(out, BUFFER_SIZE);
+        DigestOutputStream digester =
+                new DigestOutputStream(buffered, newDigest());
+        DataOutputStream data = new DataOutputStream(digester);
+        data.writeUTF(MAGIC);
+        data.writeInt(refs.size());
+        for (Map.Entry<String, String> ref : refs.entrySet()) {
+            data.writeUTF(ref.getKey());
+            data.writeUTF(ref.getValue());
+        }
+        TransferPipeline<Record> pipeline =
+                new TransferPipeline<>(record -> writeRecord(data, record),
+                        true);
+        for (String blobSHA : blobs) {
+            File blob = new File(from.blobDir(), blobSHA);
+            if (blob.length() > LARGE_OBJECT) {
+                pipeline.submit(() -> {
+                    pipeline.count(blob.length());
+                    return new Record(blobSHA, blob);
+                });
+            } else {
+                pipeline.submit(() ->
+                        compress(pipeline, BLOB, blobSHA, blob));
+            }
+        }
+        for (String commitSHA : commits) {
+            File mapping = new File(from.mappingDir(), commitSHA);
+            pipeline.submit(() ->
+                    compress(pipeline, MAPPING, commitSHA, mapping));
+        }
+        for (String commitSHA : commits) {
+            File commit = new File(from.commitDir(), commitSHA);
+            pipeline.submit(() ->
+                    compress(pipeline, COMMIT, commitSHA, commit));
+        }
+        pipeline.drain();
+        data.writeByte(END);
+        data.flush();
+        buffered.write(digester.getMessageDigest().digest());
+        buffered.flush();
+    }
+
+    /**read a bundle from IN as tryReadBundle does, erroring if it is
+     * not a complete, intact bundle.
+     * @return the refs advertised in the bundle's header.
+     */
+    static LinkedHashMap<String, String> readBundle(InputStream in,
+                                                    ObjectStore to)
+            throws IOException {
+        try {
+            return tryReadBundle(in, to);
+        } catch (IOException excp) {
+            Utils.error(corruptMessage(excp));
+            return null;
+        }
+    }
+
+    /**read a bundle from IN, writing every object TO does not already
+     * have into it. objects are inflated, verified and written in
+     * parallel; each section is finished before the next one starts, so
+     * commits still land after their mappings and blobs.
+     * a bundle may come from anyone, so every record must be named by a
+     * well-formed SHA-1 value, every blob must hash to its name, and
+     * every commit, with its mapping, to its name; a mapping must name
+     * plain files and blobs, and belong to a commit so checked.
+     * if anything does not check out, or the trailing checksum does not
+     * match, objects written by this call are removed again.
+     * @return the refs advertised in the bundle's header.
+     * @throws IOException iff the bundle is truncated or corrupt.
+     */
+    static LinkedHashMap<String, String> tryReadBundle(InputStream in,
+                                                       ObjectStore to)
+            throws IOException {
+        BufferedInputStream buffered =
+                new BufferedInputStream(in, BUFFER_SIZE);
+        DigestInputStream digester =
+                new DigestInputStream(buffered, newDigest());
+        DataInputStream data = new DataInputStream(digester);
+        LinkedHashMap<String, String> refs = readHeader(data);
+        List<File> written = new ArrayList<>();
+        TransferPipeline<File> pipeline =
+                new TransferPipeline<>(written::add, false);
+        Set<String> commits = ConcurrentHashMap.newKeySet();
+        try {
+            byte section = BLOB;
+            for (byte type = data.readByte(); type != END;
+                 type = data.readByte()) {
+                String name = data.readUTF();
+                if (!ObjectStore.isId(name)) {
+                    throw new IOException("bad object name");
+                }
+                if (type == LARGE_BLOB) {
+                    File dest = new File(to.blobDir(), name);
+                    if (storeChunks(pipeline, data, dest)) {
+                        written.add(dest);
+                    }
+                    continue;
+                }
+                byte[] compressed = new byte[data.readInt()];
+                data.readFully(compressed);
+                if (type != section) {
+                    pipeline.drain();
+                    section = type;
+                }
+                File dest = new File(objectDir(to, type), name);
+                if (Utils.touch(dest)) {
+                    continue;
+                }
+                byte recordType = type;
+                pipeline.submit(() -> store(pipeline, compressed, dest,
+                        recordType, to, commits));
+            }
+            pipeline.drain();
+            checkMappings(written, commits, to);
+            byte[] expected = digester.getMessageDigest().digest();
+            byte[] actual = new byte[expected.length];
+            new DataInputStream(buffered).readFully(actual);
+            if (!Arrays.equals(expected, actual)) {
+                throw new IOException("checksum mismatch");
+            }
+        } catch (IOException excp) {
+            pipeline.drainQuietly();
+            discard(written);
+            throw new IOException("Bundle is truncated or corrupt.");
+        }
+        return refs;
+    }
+
+    /**return the message to report for EXCP, raised while reading a
+     * bundle.*/
+    private static String corruptMessage(IOException excp) {
+        if (excp.getMessage() == null) {
+            return "Bundle is truncated or corrupt.";
+        }
+        return excp.getMessage();
+    }
+
+    /**read the magic and the refs from the start of bundle IN.*/
+    private static LinkedHashMap<String, String> readHeader(
+            DataInputStream in) throws IOException {
+        String magic = in.readUTF();
+        if (!magic.equals(MAGIC)) {
+            throw new IOException("Not a gitlet bundle.");
+        }
+        LinkedHashMap<String, String> refs = new LinkedHashMap<>();
+        int refNum = in.readInt();
+        for (int i = 0; i < refNum; i++) {
+            String name = in.readUTF();
+            String head = in.readUTF();
+            if (!ObjectStore.isId(head)) {
+                throw new IOException();
+            }
+            refs.put(name, head);
+        }
+        return refs;
+    }
+
+    /**return FILE read and compressed as a record of TYPE named NAME,
+     * counting it in PIPELINE.
+     */
+    private static Record compress(TransferPipeline<?> pipeline, byte type,
+                                   String name, File file)
+            throws IOException {
+        if (!file.isFile()) {
+            throw new IOException("missing object " + name);
+        }
+        byte[] contents = Utils.readContents(file);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(contents);
+        deflater.finish();
+        ByteArrayOutputStream compressed =
+                new ByteArrayOutputStream(contents.length / 2 + 64);
+        byte[] buf = new byte[BUFFER_SIZE];
+        while (!deflater.finished()) {
+            compressed.write(buf, 0, deflater.deflate(buf));
+        }
+        deflater.end();
+        pipeline.count(contents.length);
+        return new Record(type, name, compressed.toByteArray());
+    }
+
+    /**write RECORD to OUT.*/
+    private static void writeRecord(DataOutputStream out, Record record)
+            throws IOException {
+        out.writeByte(record.type);
+        out.writeUTF(record.name);
+        if (record.type == LARGE_BLOB) {
+            writeChunks(out, record.file);
+            return;
+        }
+        out.writeInt(record.data.length);
+        out.write(record.data);
+    }
+
+    /**write FILE to OUT as deflated chunks, each of at most BUFFER_SIZE
+     * bytes before compression, followed by a zero length. only one
+     * chunk is in memory at a time.
+     */
+    private static void writeChunks(DataOutputStream out, File file)
+            throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        byte[] buf = new byte[BUFFER_SIZE];
+        byte[] deflated = new byte[BUFFER_SIZE];
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream(BUFFER_SIZE);
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            for (int n = in.readNBytes(buf, 0, BUFFER_SIZE); n > 0;
+                 n = in.readNBytes(buf, 0, BUFFER_SIZE)) {
+                deflater.reset();
+                deflater.setInput(buf, 0, n);
+                deflater.finish();
+                chunk.reset();
+                while (!deflater.finished()) {
+                    chunk.write(deflated, 0, deflater.deflate(deflated));
+                }
+                out.writeInt(chunk.size());
+                chunk.writeTo(out);
+            }
+        } finally {
+            deflater.end();
+        }
+        out.writeInt(0);
+    }
+
+    /**read the chunks of a large blob from IN into DEST, counting it in
+     * PIPELINE, or skip them and touch DEST iff it already exists. the blob is
+     * written under a temporary name and moved into place only once
+     * its contents hash to DEST's name.
+     * @return true iff DEST was written.
+     */
+    private static boolean storeChunks(TransferPipeline<?> pipeline,
+                                       DataInputStream in, File dest)
+            throws IOException {
+        if (Utils.touch(dest)) {
+            for (int n = in.readInt(); n != 0; n = in.readInt()) {
+                in.skipNBytes(n);
+            }
+            return false;
+        }
+        Path tmp = Utils.newTempFile(dest.getParentFile().getParentFile());
+        Inflater inflater = new Inflater();
+        try {
+            MessageDigest md = newDigest();
+            byte[] chunk = new byte[MAX_CHUNK];
+            byte[] buf = new byte[BUFFER_SIZE];
+            long size = 0;
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                for (int n = in.readInt(); n != 0; n = in.readInt()) {
+                    if (n < 0 || n > MAX_CHUNK) {
+                        throw new IOException("corrupt chunk");
+                    }
+                    in.readFully(chunk, 0, n);
+                    inflater.reset();
+                    inflater.setInput(chunk, 0, n);
+                    while (!inflater.finished()) {
+                        int inflated = inflater.inflate(buf);
+                        if (inflated == 0 && inflater.needsInput()) {
+                            throw new IOException("truncated object");
+                        }
+                        md.update(buf, 0, inflated);
+                        out.write(buf, 0, inflated);
+                        size += inflated;
+                    }
+                }
+            } catch (DataFormatException excp) {
+                throw new IOException(excp.getMessage());
+            }
+            if (!Utils.toHex(md.digest()).equals(dest.getName())) {
+                throw new IOException("corrupt blob " + dest.getName());
+            }
+            Files.move(tmp, dest.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            pipeline.count(size);
+            return true;
+        } finally {
+            inflater.end();
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**decompress COMPRESSED, an object of TYPE, into DEST in TO,
+     * counting it in PIPELINE. a blob must hash to DEST's name, a
+     * mapping must parse, and a commit must hash, with its mapping
+     * already in TO, to DEST's name, which is then added to COMMITS.
+     * the object is written to a temporary file and moved to DEST, so a
+     * transfer killed midway never leaves a truncated object there.
+     * @return DEST.
+     */
+    private static File store(TransferPipeline<?> pipeline,
+                              byte[] compressed, File dest, byte type,
+                              ObjectStore to, Set<String> commits)
+            throws IOException {
+        byte[] contents = inflate(compressed);
+        String name = dest.getName();
+        if (type == BLOB && !Utils.sha1(contents).equals(name)) {
+            throw new IOException("corrupt blob " + name);
+        } else if (type == MAPPING) {
+            checkMapping(contents);
+        } else if (type == COMMIT) {
+            File mapping = new File(to.mappingDir(), name);
+            if (!mapping.isFile()) {
+                throw new IOException("commit without mapping " + name);
+            }
+            checkCommit(name, contents, Utils.readContents(mapping));
+            commits.add(name);
+        }
+        Path tmp = Utils.newTempFile(to.gitletDir());
+        try {
+            Files.write(tmp, contents);
+            Files.move(tmp, dest.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        pipeline.count(contents.length);
+        return dest;
+    }
+
+    /**throw IOException unless CONTENTS is a serialized commit named
+     * NAME, whose parents are well-formed, and that hashes to NAME with
+     * MAPPING, the contents of its mapping. an initial commit is not
+     * hashed with its mapping, so its mapping must be empty.
+     */
+    private static void checkCommit(String name, byte[] contents,
+                                    byte[] mapping) throws IOException {
+        Commit commit = parse(contents, Commit.class, COMMIT_CLASSES);
+        String parent = commit.getParentSHA();
+        String mergeParent = commit.getMergeParentSHA();
+        if (!name.equals(commit.getShaVal())
+                || parent != null && !ObjectStore.isId(parent)
+                || mergeParent != null && !ObjectStore.isId(mergeParent)
+                || parent == null && !parse(mapping, LinkedHashMap.class,
+                        MAPPING_CLASSES).isEmpty()
+                || !name.equals(commit.hash(mapping))) {
+            throw new IOException("corrupt commit " + name);
+        }
+    }
+
+    /**throw IOException unless CONTENTS is a serialized mapping of
+     * plain file names in the working directory to blob names.
+     */
+    private static void checkMapping(byte[] contents) throws IOException {
+        LinkedHashMap<?, ?> mapping =
+                parse(contents, LinkedHashMap.class, MAPPING_CLASSES);
+        for (Map.Entry<?, ?> entry : mapping.entrySet()) {
+            if (!(entry.getKey() instanceof String)
+                    || !(entry.getValue() instanceof String)
+                    || !isFileName((String) entry.getKey())
+                    || !ObjectStore.isId((String) entry.getValue())) {
+                throw new IOException("corrupt mapping");
+            }
+        }
+    }
+
+    /**throw IOException unless every mapping among WRITTEN belongs to
+     * a commit in COMMITS, those checked while reading, or to a commit
+     * TO already has that hashes to its name with it.
+     */
+    private static void checkMappings(List<File> written,
+                                      Set<String> commits, ObjectStore to)
+            throws IOException {
+        for (File file : written) {
+            String name = file.getName();
+            if (!file.getParentFile().equals(to.mappingDir())
+                    || commits.contains(name)) {
+                continue;
+            }
+            if (!to.hasCommit(name)) {
+                throw new IOException("mapping without commit " + name);
+            }
+            checkCommit(name,
+                    Utils.readContents(new File(to.commitDir(), name)),
+                    Utils.readContents(file));
+        }
+    }
+
+    /**return iff NAME can name a file a commit tracks: a plain file in
+     * the working directory, other than the .gitlet directory.
+     */
+    private static boolean isFileName(String name) {
+        return !name.isEmpty() && !name.equals(".") && !name.equals("..")
+                && !name.equals(Const.GITLET_DIR.getName())
+                && name.indexOf('/') < 0 && name.indexOf('\\') < 0
+                && name.indexOf('\0') < 0;
+    }
+
+    /**return CONTENTS deserialized as an object of TYPE, made of the
+     * classes in ALLOWED only, so that a hostile bundle cannot make us
+     * build any other object.
+     */
+    private static <T> T parse(byte[] contents, Class<T> type,
+                               Set<Class<?>> allowed) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(contents))) {
+            in.setObjectInputFilter(info -> info.serialClass() == null
+                    || allowed.contains(info.serialClass())
+                    ? ObjectInputFilter.Status.ALLOWED
+                    : ObjectInputFilter.Status.REJECTED);
+            return type.cast(in.readObject());
+        } catch (ClassNotFoundException | ClassCastException excp) {
+            throw new IOException("corrupt object");
+        }
+    }
+
+    /**return COMPRESSED decompressed.*/
+    private static byte[] inflate(byte[] compressed) throws IOException {
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        ByteArrayOutputStream contents =
+                new ByteArrayOutputStream(compressed.length * 2);
+        byte[] buf = new byte[BUFFER_SIZE];
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && inflater.needsInput()) {
+                    throw new IOException("truncated object");
+                }
+                contents.write(buf, 0, n);
+            }
+        } catch (DataFormatException excp) {
+            throw new IOException(excp.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return contents.toByteArray();
+    }
+
+    /**return the directory of STORE holding objects of TYPE.*/
+    private static File objectDir(ObjectStore store, byte type)
+            throws IOException {
+        switch (type) {
+        case BLOB: return store.blobDir();
+        case MAPPING: return store.mappingDir();
+        case COMMIT: return store.commitDir();
+        default: throw new IOException("unknown object type");
+        }
+    }
+
+    /**delete every file in WRITTEN, newest first.*/
+    private static void discard(List<File> written) {
+        for (int i = written.size() - 1; i >= 0; i--) {
+            written.get(i).delete();
+        }
+    }
+
+    /**return a fresh SHA-1 digest for bundle checksums.*/
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /**one compressed object as it appears in a bundle.*/
+    private static class Record {
+        /**a record of TYPE named NAME holding compressed DATA.*/
+        Record(byte type, String name, byte[] data) {
+            this.type = type;
+            this.name = name;
+            this.data = data;
+            this.file = null;
+        }
+
+        /**a record of the large blob NAME, to be streamed from FILE as
+         * it is written.*/
+        Record(String name, File file) {
+            this.type = LARGE_BLOB;
+            this.name = name;
+            this.data = null;
+            this.file = file;
+        }
+
+        /**object type, one of BLOB, MAPPING and COMMIT.*/
+        private final byte type;
+
+        /**SHA-1 value naming the object.*/
+        private final String name;
+
+        /**deflated contents of the object, null for a large blob.*/
+        private final byte[] data;
+
+        /**file holding a large blob, null otherwise.*/
+        private final File file;
+    }
+
+    /**classes a serialized commit is made of.*/
+    private static final Set<Class<?>> COMMIT_CLASSES =
+            Set.of(Commit.class, String.class);
+
+    /**classes a serialized mapping is made of; HashMap checks the size
+     * of its table as an array of entries.*/
+    private static final Set<Class<?>> MAPPING_CLASSES = Set.of(
+            LinkedHashMap.class, HashMap.class, Map.Entry[].class,
+            String.class);
+
+    /**first string of every bundle.*/
+    private static final String MAGIC = "gitlet bundle v2";
+
+    /**size in bytes above which a blob is streamed in chunks rather
+     * than compressed whole.*/
+    private static final long LARGE_OBJECT = 1 << 20;
+
+    /**size of stream buffers, large so transfers stay sequential.*/
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**most bytes a deflated chunk may take; deflate can grow
+     * incompressible data slightly.*/
+    private static final int MAX_CHUNK = BUFFER_SIZE + (BUFFER_SIZE >> 4) + 64;
+
+    /**record type ending the object section.*/
+    private static final byte END = 0;
+
+    /**record type of a file blob.*/
+    private static final byte BLOB = 1;
+
+    /**record type of a commit's blob mapping.*/
+    private static final byte MAPPING = 2;
+
+    /**record type of a serialized commit.*/
+    private static final byte COMMIT = 3;
+
+    /**record type of a file blob over LARGE_OBJECT bytes.*/
+    private static final byte LARGE_BLOB = 4;
+}
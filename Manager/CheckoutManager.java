@@ -1,11 +1,13 @@
 package gitlet.Manager;
 
 import gitlet.Commit;
+import gitlet.Events;
 import gitlet.Utils;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.LinkedHashMap;
+import java.util.List;
 
 import static gitlet.Const.*;
 /**manager class mainly dealing with checkout.*/
@@ -38,10 +40,10 @@ public class CheckoutManager {
         if (branch.equals(BranchManager.activeBranch())) {
             Utils.error("No need to checkout the current branch.");
         }
-        if (!BranchManager.branchMap().containsKey(branch)) {
+        String branchHeadSHA = BranchManager.getBranchHeadSHA(branch);
+        if (branchHeadSHA == null) {
             Utils.error("No such branch exists.");
         }
-        String branchHeadSHA = BranchManager.branchMap().get(branch);
         Commit branchHead = CommitManager.getCommit(branchHeadSHA);
         checkCWDTracking(branchHead);
         checkoutCommit(branchHead);
@@ -73,8 +75,18 @@ public class CheckoutManager {
             return false;
         }
         File file = new File(CWD, fileName);
-        File blob = new File(BLOB_DIR, blobMapping.get(fileName));
+        String blobSHA = blobMapping.get(fileName);
+        RemoteManager.ensureBlobs(List.of(blobSHA));
+        File blob = new File(BLOB_DIR, blobSHA);
+        Events.ObjectRead event = new Events.ObjectRead();
+        event.begin();
         Utils.copyContents(blob, file);
+        if (event.shouldCommit()) {
+            event.id = blobSHA;
+            event.type = "blob";
+            event.size = blob.length();
+            event.commit();
+        }
         return true;
     }
 
@@ -87,7 +99,8 @@ public class CheckoutManager {
         Commit commit = CommitManager.fetchCommit(commitSHA);
         checkCWDTracking(commit);
         checkoutCommit(commit);
-        BranchManager.setBranchHead(commit);
+        BranchManager.setBranchHead(commit,
+                "reset: moving to " + commit.getShaVal());
         StageManager.clearStage();
     }
 
@@ -100,7 +113,8 @@ public class CheckoutManager {
     static void checkCWDTracking(Commit commit) {
         LinkedHashMap<String, String> blobMapping = commit.getBlobMapping();
         for (String fileName : InfoManager.untrackedInCWD()) {
-            if (blobMapping.containsKey(fileName)) {
+            if (blobMapping.containsKey(fileName)
+                    && SparseManager.matches(fileName)) {
                 Utils.error("There is an untracked file in the way; "
                         + "delete it, or add and commit it first.");
             }
@@ -111,6 +125,9 @@ public class CheckoutManager {
      * overwring & creating new files as it needs to.
      * Also delete files that are tracked
      * in current commit but not in new commit.
+     * in a sparse checkout, only matching files are written or
+     * deleted; a file outside it is never checked out, so any file of
+     * that name is the user's own.
      * @param commit the commit to be checked out.
      */
     static void checkoutCommit(Commit commit)
@@ -119,6 +136,11 @@ public class CheckoutManager {
                 commit.getBlobMapping();
         LinkedHashMap<String, String> currMapping =
                 CommitManager.headCommit().getBlobMapping();
+        newMapping.keySet().removeIf(fileName ->
+                !SparseManager.matches(fileName));
+        currMapping.keySet().removeIf(fileName ->
+                !SparseManager.matches(fileName));
+        RemoteManager.ensureBlobs(newMapping.values());
         for (String fileName : newMapping.keySet()) {
             copyBlob(fileName, newMapping);
             currMapping.remove(fileName);
@@ -0,0 +1,214 @@
+package gitlet.Manager;
+
+import gitlet.Const;
+import gitlet.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**class making a new repository in CWD out of an existing one.
+ * objects are immutable and named by their contents, so the new
+ * repository shares them with the source through hard links wherever
+ * both live on the same filesystem. metadata is mutable and is always
+ * copied, never linked.
+ */
+public class CloneManager {
+
+    /**return the .gitlet directory of the repository at PATH, which may
+     * name either the working directory or its .gitlet directory.
+     * errors if there is none.
+     */
+    public static File sourceGitletDir(String path) {
+        File dir = new File(path);
+        File gitletDir = new File(dir, Const.GITLET_DIR.getName());
+        if (gitletDir.isDirectory()) {
+            return gitletDir;
+        }
+        if (new File(dir, Const.GITLET_META_DIR.getName()).isDirectory()) {
+            return dir;
+        }
+        Utils.error("Remote directory not found.");
+        return null;
+    }
+
+    /**error iff checking out the active branch of SOURCE, a .gitlet
+     * directory, would overwrite a file in CWD. called before anything
+     * is created, so a refused clone leaves nothing behind.
+     */
+    public static void checkTarget(File source) {
+        ObjectStore from = new ObjectStore(source);
+        String head = readBranchMap(from).get(readActiveBranch(from));
+        for (String fileName : from.mapping(head).keySet()) {
+            if (new File(Const.CWD, fileName).exists()) {
+                Utils.error("There is an untracked file in the way; "
+                        + "delete it, or add and commit it first.");
+            }
+        }
+    }
+
+    /**fill the freshly created, empty repository in CWD from SOURCE, a
+     * .gitlet directory. the source becomes remote "origin", each of its
+     * branches B becomes origin/B, blobs it left on its remotes stay
+     * promised by them, and its active branch is checked out.
+     */
+    public static void cloneFrom(File source) throws IOException {
+        ObjectStore from = new ObjectStore(source);
+        ObjectStore to = ObjectStore.local();
+        Utils.writeObject(Const.CLONE_TIME_FILE, System.currentTimeMillis());
+        linkAll(from.blobDir(), to.blobDir());
+        linkAll(from.mappingDir(), to.mappingDir());
+        linkAll(from.commitDir(), to.commitDir());
+        File shallow = new File(from.metaDir(), Const.SHALLOW_FILE.getName());
+        if (shallow.exists()) {
+            Utils.copyContents(shallow, Const.SHALLOW_FILE);
+            CommitManager.getShallowFromFile();
+        }
+        LinkedHashMap<String, String> branchMap = readBranchMap(from);
+        String active = readActiveBranch(from);
+        String reason = "clone: from " + source.getAbsolutePath();
+        BranchManager.initBranchManager(active, branchMap.get(active),
+                reason);
+        for (Map.Entry<String, String> branch : branchMap.entrySet()) {
+            BranchManager.newBranch("origin/" + branch.getKey(),
+                    branch.getValue(), reason);
+        }
+        RemoteManager.addRemote("origin", source.getAbsolutePath());
+        copyPromised(source, from);
+        checkoutHead();
+    }
+
+    /**carry over the blobs SOURCE, a .gitlet directory read through
+     * FROM, left on its remotes by a partial fetch, so the clone can
+     * still fetch them from there, as the source itself would.
+     */
+    private static void copyPromised(File source, ObjectStore from) {
+        File promised = new File(from.metaDir(),
+                Const.PROMISED_FILE.getName());
+        if (!promised.exists()) {
+            return;
+        }
+        LinkedHashMap<String, String> remotes = Utils.readLinkedHashMap(
+                new File(from.metaDir(), Const.REMOTE_REPO_FILE.getName()));
+        HashMap<String, String> names = new HashMap<>();
+        for (Map.Entry<String, String> entry
+                : Utils.readLinkedHashMap(promised).entrySet()) {
+            String name = names.computeIfAbsent(entry.getValue(),
+                    remote -> addPromisor(source, remote, remotes.get(remote)));
+            RemoteManager.promisedBlobs().put(entry.getKey(), name);
+        }
+    }
+
+    /**add REMOTE of SOURCE, a .gitlet directory, at ADDRESS as seen
+     * from its working directory, to the remotes of the clone, under
+     * its own name unless taken, and return the name it got. a remote
+     * SOURCE no longer has leaves its blobs promised by "origin".
+     */
+    private static String addPromisor(File source, String remote,
+                                      String address) {
+        if (address == null) {
+            return "origin";
+        }
+        String dir = address;
+        if (!dir.startsWith(TransportManager.SCHEME)
+                && !new File(dir).isAbsolute()) {
+            dir = new File(source.getParentFile(), dir).getAbsolutePath();
+        }
+        String name = remote;
+        while (RemoteManager.repoMapping().containsKey(name)) {
+            name = "promisor-" + name;
+        }
+        RemoteManager.addRemote(name, dir);
+        return name;
+    }
+
+    /**return the branch map of STORE.*/
+    private static LinkedHashMap<String, String> readBranchMap(
+            ObjectStore store) {
+        return new RefStore(store.metaDir()).all();
+    }
+
+    /**return the active branch of STORE.*/
+    private static String readActiveBranch(ObjectStore store) {
+        return Utils.readObject(new File(store.metaDir(),
+                Const.ACTIVE_BRANCH_FILE.getName()), String.class);
+    }
+
+    /**make every plain file in FROMDIR available under the same name in
+     * TODIR, in parallel, skipping names TODIR already has. a hard link
+     * shares the modification time of the original, so it is left
+     * alone, and gc counts the grace period from cloneTime() instead.
+     */
+    private static void linkAll(File fromDir, File toDir) throws IOException {
+        List<String> names = Utils.plainFilenamesIn(fromDir);
+        TransferPipeline<File> pipeline =
+                new TransferPipeline<>(f -> { }, false);
+        for (String name : names) {
+            File org = new File(fromDir, name);
+            File dest = new File(toDir, name);
+            pipeline.submit(() -> {
+                if (!dest.exists()) {
+                    linkOrCopy(org, dest);
+                    pipeline.count(org.length());
+                }
+                return dest;
+            });
+        }
+        pipeline.drain();
+    }
+
+    /**return when the repository in CWD was cloned, in milliseconds since
+     * the epoch, or 0 iff it was not made by clone.
+     */
+    public static long cloneTime() {
+        if (!Const.CLONE_TIME_FILE.exists()) {
+            return 0;
+        }
+        return Utils.readObject(Const.CLONE_TIME_FILE, Long.class);
+    }
+
+    /**make DEST a hard link to ORG, or a copy of it iff the two cannot
+     * share a link, e.g. because they are on different filesystems.
+     */
+    private static void linkOrCopy(File org, File dest) throws IOException {
+        try {
+            Files.createLink(dest.toPath(), org.toPath());
+        } catch (IOException | UnsupportedOperationException excp) {
+            try (FileChannel in = FileChannel.open(org.toPath());
+                 FileChannel out = FileChannel.open(dest.toPath(),
+                         StandardOpenOption.CREATE,
+                         StandardOpenOption.TRUNCATE_EXISTING,
+                         StandardOpenOption.WRITE)) {
+                long size = in.size();
+                for (long pos = 0; pos < size; ) {
+                    pos += in.transferTo(pos, size - pos, out);
+                }
+            }
+        }
+    }
+
+    /**write every file tracked by the head commit into CWD, in parallel,
+     * fetching any promised blob first.
+     */
+    private static void checkoutHead() throws IOException {
+        LinkedHashMap<String, String> mapping =
+                CommitManager.headCommit().getBlobMapping();
+        RemoteManager.ensureBlobs(mapping.values());
+        TransferPipeline<File> pipeline = new TransferPipeline<>(f -> { });
+        for (Map.Entry<String, String> entry : mapping.entrySet()) {
+            File blob = new File(Const.BLOB_DIR, entry.getValue());
+            File file = new File(Const.CWD, entry.getKey());
+            pipeline.submit(() -> {
+                Utils.copyContents(blob, file);
+                return file;
+            });
+        }
+        pipeline.drain();
+    }
+}
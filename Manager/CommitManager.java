@@ -1,14 +1,18 @@
 package gitlet.Manager;
 
 import gitlet.Commit;
+import gitlet.Trace;
 import gitlet.Utils;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 
 import static gitlet.Const.COMMIT_DIR;
+import static gitlet.Const.SHALLOW_FILE;
 
 /**helper class the manages commits.*/
 public class CommitManager {
@@ -31,7 +35,7 @@ public class CommitManager {
             Utils.error("No changes added to the commit.");
         }
         Commit newCommit = new Commit(msg, headCommit());
-        BranchManager.setBranchHead(newCommit.getShaVal());
+        BranchManager.setBranchHead(newCommit.getShaVal(), "commit: " + msg);
     }
 
     /**make a merge commit, merging HEAD commit with MERGEHEAD commit,
@@ -39,11 +43,24 @@ public class CommitManager {
      */
     public static void mergeCommit(Commit head, Commit mergeHead,
                                    String mergeBranch) throws IOException {
-        String mergeMsg = "Merged " + mergeBranch
-                + " into " + BranchManager.activeBranch() + ".";
+        mergeCommit(head, mergeHead, mergeBranch,
+                BranchManager.activeBranch(), null);
+    }
+
+    /**make a merge commit, merging HEAD commit, the head of BRANCH, with
+     * MERGEHEAD commit, from MERGEBRANCH, and move BRANCH to it. the
+     * commit tracks the files of BLOBMAPPING, or the staged files iff it
+     * is null.
+     */
+    public static void mergeCommit(Commit head, Commit mergeHead,
+                                   String mergeBranch, String branch,
+                                   LinkedHashMap<String, String> blobMapping)
+            throws IOException {
+        String mergeMsg = "Merged " + mergeBranch + " into " + branch + ".";
         Commit newCommit = new Commit(mergeMsg,
-                head, mergeHead);
-        BranchManager.setBranchHead(newCommit.getShaVal());
+                head, mergeHead, blobMapping);
+        BranchManager.newBranch(branch, newCommit.getShaVal(),
+                "merge " + mergeBranch + ": " + mergeMsg);
     }
 
     /**return commit with CommitSHA matching abbreviated
@@ -76,8 +93,12 @@ public class CommitManager {
     }
 
     /**return commit read from blob COMMITBLOB.*/
+    @SuppressWarnings("try")
     public static Commit getCommit(File commitBlob) {
-        return Utils.readObject(commitBlob, Commit.class);
+        try (Trace.Span span = Trace.span("getCommit")) {
+            Trace.count(Trace.COMMITS_READ, 1);
+            return Utils.readObject(commitBlob, Commit.class);
+        }
     }
 
     /**
@@ -102,4 +123,66 @@ public class CommitManager {
         }
     }
 
+    /**return true iff commit ANCESTORSHA is reachable from COMMITSHA
+     * through parents or merge parents, including COMMITSHA itself.
+     * ANCESTORSHA must exist locally to be found.
+     */
+    public static boolean isAncestor(String ancestorSHA, String commitSHA) {
+        if (!new File(COMMIT_DIR, ancestorSHA).exists()) {
+            return false;
+        }
+        HashSet<String> visited = new HashSet<>();
+        ArrayDeque<String> toVisit = new ArrayDeque<>();
+        toVisit.add(commitSHA);
+        while (!toVisit.isEmpty()) {
+            String sha = toVisit.poll();
+            if (sha.equals(ancestorSHA)) {
+                return true;
+            }
+            if (!visited.add(sha)) {
+                continue;
+            }
+            Commit commit = getCommit(sha);
+            if (commit.hasParent()) {
+                toVisit.add(commit.getParentSHA());
+            }
+            if (commit.hasMergeParent()) {
+                toVisit.add(commit.getMergeParentSHA());
+            }
+        }
+        return false;
+    }
+
+    /**set of shallow boundary commits, whose parents are not present.*/
+    private static HashSet<String> _shallowCommits = new HashSet<>();
+
+    /**return the set of shallow boundary commits.*/
+    public static HashSet<String> shallowCommits() {
+        return _shallowCommits;
+    }
+
+    /**return iff COMMITSHA is a shallow boundary commit.*/
+    public static boolean isShallow(String commitSHA) {
+        return _shallowCommits.contains(commitSHA);
+    }
+
+    /**read the shallow boundary from its file; repositories that were
+     * never fetched shallowly have no such file. */
+    @SuppressWarnings("unchecked")
+    public static void getShallowFromFile() {
+        if (SHALLOW_FILE.exists()) {
+            _shallowCommits = Utils.readObject(SHALLOW_FILE, HashSet.class);
+        }
+    }
+
+    /**write the shallow boundary to its file, removing the file once
+     * the repository is no longer shallow. */
+    public static void saveShallowToFile() {
+        if (!_shallowCommits.isEmpty()) {
+            Utils.writeObject(SHALLOW_FILE, _shallowCommits);
+        } else if (SHALLOW_FILE.exists()) {
+            SHALLOW_FILE.delete();
+        }
+    }
+
 }
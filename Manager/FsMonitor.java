@@ -0,0 +1,359 @@
+package gitlet.Manager;
+
+import gitlet.Trace;
+import gitlet.Utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static gitlet.Const.CWD;
+import static gitlet.Const.FSMONITOR_CACHE_FILE;
+import static gitlet.Const.FSMONITOR_FILE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**file system monitor of the working directory, letting commands look
+ * at only the files changed since they last looked instead of listing
+ * and hashing every file.
+ * the monitor is a long-lived process, started by the fsmonitor
+ * command, that numbers every event of a WatchService on CWD and
+ * answers queries on a local port, written to FSMONITOR_FILE. a query
+ * sends a token, naming the monitor and the last event seen, and the
+ * answer is a new token with the files changed since the old one, or a
+ * request for a full scan iff the events since then were lost to an
+ * overflow or the token is not the monitor's.
+ * before answering, the monitor creates a cookie file and waits for
+ * its event, so every change made before the query is in the answer.
+ * commands keep the file names of CWD, with the hashes they computed,
+ * in FSMONITOR_CACHE_FILE under the token they got. without a running
+ * monitor, CWD is listed and hashed in full, as it always was.
+ */
+public class FsMonitor {
+
+    /**watch CWD and answer queries until the process is killed.
+     * errors iff a monitor already watches this repository.
+     */
+    public static void serve() throws IOException {
+        query("");
+        if (_token != null) {
+            Utils.error("A file system monitor is already running.");
+        }
+        Path dir = CWD.toPath().toAbsolutePath().normalize();
+        WatchService watcher = FileSystems.getDefault().newWatchService();
+        dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        _instance = ProcessHandle.current().pid() + "-"
+                + System.currentTimeMillis();
+        Thread watching = new Thread(() -> watch(watcher));
+        watching.setDaemon(true);
+        watching.start();
+        try (ServerSocket server = new ServerSocket(0, 0,
+                InetAddress.getLoopbackAddress())) {
+            String address = server.getLocalPort() + "\n" + dir + "\n";
+            Utils.writeContents(FSMONITOR_FILE, address);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                if (FSMONITOR_FILE.exists() && address.equals(
+                        Utils.readContentsAsString(FSMONITOR_FILE))) {
+                    FSMONITOR_FILE.delete();
+                }
+            }));
+            InfoManager.ptln("Watching on port " + server.getLocalPort()
+                    + ".");
+            while (true) {
+                answer(server.accept());
+            }
+        }
+    }
+
+    /**number the events of WATCHER until CWD can no longer be watched,
+     * after which every query gets a full scan.
+     */
+    private static void watch(WatchService watcher) {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException excp) {
+                key = null;
+            }
+            synchronized (LOCK) {
+                if (key == null) {
+                    _overflowSeq = Long.MAX_VALUE;
+                    LOCK.notifyAll();
+                    return;
+                }
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    _seq += 1;
+                    if (event.kind() == OVERFLOW) {
+                        _overflowSeq = _seq;
+                        continue;
+                    }
+                    String fileName = event.context().toString();
+                    if (!fileName.startsWith(COOKIE)) {
+                        Long oldSeq = _changed.put(fileName, _seq);
+                        if (oldSeq != null) {
+                            _bySeq.remove(oldSeq);
+                        }
+                        _bySeq.put(_seq, fileName);
+                    } else if (event.kind() == ENTRY_CREATE) {
+                        _cookies.add(fileName);
+                    }
+                }
+                if (!key.reset()) {
+                    _overflowSeq = Long.MAX_VALUE;
+                }
+                LOCK.notifyAll();
+            }
+        }
+    }
+
+    /**answer the single query on CLIENT, then close it. a failed query
+     * only drops its connection; the client then scans in full.
+     */
+    private static void answer(Socket client) {
+        try (Socket socket = client) {
+            socket.setSoTimeout(TIMEOUT);
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream()));
+            String token = in.readUTF();
+            boolean synced = sync();
+            synchronized (LOCK) {
+                long since = since(token);
+                boolean full = !synced || since < _overflowSeq;
+                Collection<String> changed = full ? List.of()
+                        : _bySeq.tailMap(since, false).values();
+                out.writeUTF(_instance + ":" + _seq);
+                out.writeBoolean(full);
+                out.writeInt(changed.size());
+                for (String fileName : changed) {
+                    out.writeUTF(fileName);
+                }
+            }
+            out.flush();
+        } catch (IOException | RuntimeException excp) {
+            return;
+        }
+    }
+
+    /**create a cookie file in CWD and wait for its event. return true
+     * iff it came in time, so every earlier change has been numbered.
+     */
+    private static boolean sync() throws IOException {
+        _cookieNum += 1;
+        String cookie = COOKIE + _cookieNum;
+        File file = new File(CWD, cookie);
+        file.createNewFile();
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        try {
+            synchronized (LOCK) {
+                while (!_cookies.remove(cookie)) {
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        return false;
+                    }
+                    LOCK.wait(wait);
+                }
+                return true;
+            }
+        } catch (InterruptedException excp) {
+            return false;
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**return the last event seen by the holder of TOKEN, or -1 iff the
+     * token was not given out by this monitor.
+     */
+    private static long since(String token) {
+        int split = token.lastIndexOf(':');
+        if (split < 0 || !token.substring(0, split).equals(_instance)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(token.substring(split + 1));
+        } catch (NumberFormatException excp) {
+            return -1;
+        }
+    }
+
+    /**return the names of the plain files in CWD, sorted.*/
+    public static Set<String> cwdFiles() {
+        return Collections.unmodifiableSet(files().keySet());
+    }
+
+    /**return the SHA-1 hash of FILENAME, a file in CWD. with a
+     * monitor, a hash computed since the file last changed is reused.
+     */
+    public static String hash(String fileName) {
+        TreeMap<String, String> files = files();
+        if (_token == null) {
+            return Utils.sha1(new File(CWD, fileName));
+        }
+        String hash = files.get(fileName);
+        if (hash == null) {
+            hash = Utils.sha1(new File(CWD, fileName));
+            files.put(fileName, hash);
+        }
+        return hash;
+    }
+
+    /**return the SHA-1 hash of FILENAME, a file in CWD, iff a monitor
+     * says it has not changed since it was last hashed, or null.
+     */
+    public static String knownHash(String fileName) {
+        TreeMap<String, String> files = files();
+        return _token == null ? null : files.get(fileName);
+    }
+
+    /**write the files of CWD and their hashes, iff a monitor was asked
+     * for them, to be brought up to date by the next command.
+     */
+    public static void save() {
+        if (_token != null) {
+            Utils.writeObjectAtomic(FSMONITOR_CACHE_FILE,
+                    new Snapshot(_token, _files));
+        }
+    }
+
+    /**return the files of CWD mapped to their hashes, null until
+     * computed, as of the first call of this command.
+     */
+    @SuppressWarnings("try")
+    private static TreeMap<String, String> files() {
+        if (_files != null) {
+            return _files;
+        }
+        try (Trace.Span span = Trace.span("fsmonitor")) {
+            Snapshot cache = null;
+            if (FSMONITOR_FILE.exists() && FSMONITOR_CACHE_FILE.exists()) {
+                try {
+                    cache = Utils.readObject(FSMONITOR_CACHE_FILE,
+                            Snapshot.class);
+                } catch (IllegalArgumentException excp) {
+                    cache = null;
+                }
+            }
+            List<String> changed = query(cache == null ? "" : cache._token);
+            if (cache != null && changed != null) {
+                _files = cache._files;
+                for (String fileName : changed) {
+                    if (new File(CWD, fileName).isFile()) {
+                        _files.put(fileName, null);
+                    } else {
+                        _files.remove(fileName);
+                    }
+                }
+            } else {
+                _files = new TreeMap<>();
+                for (String fileName : Utils.plainFilenamesIn(CWD)) {
+                    if (!fileName.startsWith(COOKIE)) {
+                        _files.put(fileName, null);
+                    }
+                }
+            }
+        }
+        return _files;
+    }
+
+    /**ask the monitor of this repository for the files changed since
+     * TOKEN, setting _token to the new token it gives, or to null iff
+     * no monitor answers. return the changed files, or null iff a full
+     * scan is needed instead.
+     */
+    private static List<String> query(String token) {
+        _token = null;
+        if (!FSMONITOR_FILE.exists()) {
+            return null;
+        }
+        String[] address =
+                Utils.readContentsAsString(FSMONITOR_FILE).split("\n");
+        Path dir = CWD.toPath().toAbsolutePath().normalize();
+        if (address.length != 2 || !address[1].equals(dir.toString())) {
+            return null;
+        }
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                Integer.parseInt(address[0]))) {
+            socket.setSoTimeout(2 * TIMEOUT);
+            DataOutputStream out =
+                    new DataOutputStream(socket.getOutputStream());
+            out.writeUTF(token);
+            out.flush();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            String newToken = in.readUTF();
+            boolean full = in.readBoolean();
+            List<String> changed = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i -= 1) {
+                changed.add(in.readUTF());
+            }
+            _token = newToken;
+            return full ? null : changed;
+        } catch (IOException | NumberFormatException excp) {
+            return null;
+        }
+    }
+
+    /**the files of CWD and their hashes, as of a token.*/
+    private static class Snapshot implements Serializable {
+
+        /**a snapshot of FILES as of TOKEN.*/
+        Snapshot(String token, TreeMap<String, String> files) {
+            _token = token;
+            _files = files;
+        }
+
+        /**token of the monitor the files are up to date with.*/
+        private final String _token;
+        /**file names mapped to their hashes, or null iff not computed.*/
+        private final TreeMap<String, String> _files;
+    }
+
+    /**prefix of the names of cookie files.*/
+    private static final String COOKIE = ".gitlet-fsmonitor-cookie-";
+    /**milliseconds the monitor waits for a cookie or a query.*/
+    private static final int TIMEOUT = 1000;
+
+    /**lock guarding the event numbers of the monitor.*/
+    private static final Object LOCK = new Object();
+    /**name of this monitor, different for every run.*/
+    private static String _instance;
+    /**number of the last event.*/
+    private static long _seq;
+    /**number of the last overflow, before which changes are unknown.*/
+    private static long _overflowSeq;
+    /**file name --> number of its last event.*/
+    private static final HashMap<String, Long> _changed = new HashMap<>();
+    /**number of the last event of a file --> its name.*/
+    private static final TreeMap<Long, String> _bySeq = new TreeMap<>();
+    /**cookies created but not yet waited for.*/
+    private static final HashSet<String> _cookies = new HashSet<>();
+    /**number of cookies created.*/
+    private static long _cookieNum;
+
+    /**files of CWD mapped to their hashes, iff already computed.*/
+    private static TreeMap<String, String> _files;
+    /**token the files are up to date with, or null iff no monitor.*/
+    private static String _token;
+}
@@ -0,0 +1,168 @@
+package gitlet.Manager;
+
+import gitlet.Commit;
+import gitlet.Const;
+import gitlet.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+/**class verifying the integrity of the repository: that every object
+ * hashes to its name, and that everything reachable is present.
+ * a commit is rehashed from its fields and mapping as Commit.hash does
+ * when it is made, so a change to either is found.
+ */
+public class FsckManager {
+
+    /**checks the repository and prints one line per problem found.
+     * @param connectivityOnly iff true, only check that reachable objects
+     *                         exist, without reading blob contents.
+     */
+    public static void fsck(boolean connectivityOnly) throws IOException {
+        ObjectStore local = ObjectStore.local();
+        TreeSet<String> problems = new TreeSet<>();
+        HashSet<String> commits = new HashSet<>();
+        HashSet<String> blobs = new HashSet<>();
+        walk(local, commits, blobs, problems);
+        blobs.addAll(StageManager.addStageMap().values());
+        for (String blobSHA : blobs) {
+            if (!local.hasBlob(blobSHA)
+                    && !RemoteManager.promisedBlobs().containsKey(blobSHA)) {
+                problems.add("missing blob " + blobSHA);
+            }
+        }
+        if (!connectivityOnly) {
+            rehashBlobs(problems);
+        }
+        List<String> allCommits = Utils.plainFilenamesIn(Const.COMMIT_DIR);
+        for (String commitSHA : allCommits) {
+            if (!commits.contains(commitSHA)) {
+                problems.add("dangling commit " + commitSHA);
+            }
+        }
+        HashSet<String> named = new HashSet<>(allCommits);
+        for (String mappingSHA
+                : Utils.plainFilenamesIn(Const.BLOB_MAP_DIR)) {
+            if (!named.contains(mappingSHA)) {
+                problems.add("dangling mapping " + mappingSHA);
+            }
+        }
+        for (String blobSHA : Utils.plainFilenamesIn(Const.BLOB_DIR)) {
+            if (!blobs.contains(blobSHA)) {
+                problems.add("dangling blob " + blobSHA);
+            }
+        }
+        for (String problem : problems) {
+            InfoManager.ptln(problem);
+        }
+    }
+
+    /**walk every commit reachable from a branch head, one generation at
+     * a time with the commits of a generation read in parallel, adding
+     * the commits found to COMMITS, the blobs they reference to BLOBS,
+     * and missing commits or mappings to PROBLEMS.
+     */
+    private static void walk(ObjectStore store, HashSet<String> commits,
+                             HashSet<String> blobs, TreeSet<String> problems)
+            throws IOException {
+        List<String> frontier = new ArrayList<>();
+        for (String head : GcManager.roots()) {
+            if (commits.add(head)) {
+                frontier.add(head);
+            }
+        }
+        while (!frontier.isEmpty()) {
+            List<String> next = new ArrayList<>();
+            TransferPipeline<Checked> pipeline = new TransferPipeline<>(
+                    checked -> {
+                        blobs.addAll(checked.blobs);
+                        problems.addAll(checked.problems);
+                        for (String parent : checked.parents) {
+                            if (commits.add(parent)) {
+                                next.add(parent);
+                            }
+                        }
+                    });
+            for (String commitSHA : frontier) {
+                pipeline.submit(() -> new Checked(store, commitSHA));
+            }
+            pipeline.drain();
+            frontier = next;
+        }
+    }
+
+    /**rehash every blob in parallel, streaming its contents, and add
+     * those whose contents do not hash to their name to PROBLEMS.
+     */
+    private static void rehashBlobs(TreeSet<String> problems)
+            throws IOException {
+        TransferPipeline<String> pipeline = new TransferPipeline<>(
+                corrupt -> {
+                    if (corrupt != null) {
+                        problems.add("corrupt blob " + corrupt);
+                    }
+                });
+        for (String blobSHA : Utils.plainFilenamesIn(Const.BLOB_DIR)) {
+            File blob = new File(Const.BLOB_DIR, blobSHA);
+            pipeline.submit(() ->
+                    Utils.sha1(blob).equals(blobSHA) ? null : blobSHA);
+        }
+        pipeline.drain();
+    }
+
+    /**what checking one commit finds.*/
+    private static class Checked {
+        /**check commit COMMITSHA and its mapping in STORE.*/
+        Checked(ObjectStore store, String commitSHA) {
+            if (!store.hasCommit(commitSHA)) {
+                problems.add("missing commit " + commitSHA);
+                return;
+            }
+            Commit commit;
+            try {
+                commit = store.commit(commitSHA);
+            } catch (IllegalArgumentException excp) {
+                problems.add("corrupt commit " + commitSHA);
+                return;
+            }
+            if (commit.hasParent()) {
+                parents.add(commit.getParentSHA());
+            }
+            if (commit.hasMergeParent()) {
+                parents.add(commit.getMergeParentSHA());
+            }
+            if (!new File(store.mappingDir(), commitSHA).exists()) {
+                problems.add("missing mapping " + commitSHA);
+                return;
+            }
+            LinkedHashMap<String, String> mapping;
+            try {
+                mapping = store.mapping(commitSHA);
+            } catch (IllegalArgumentException excp) {
+                problems.add("corrupt mapping " + commitSHA);
+                return;
+            }
+            blobs.addAll(mapping.values());
+            byte[] serialized = Utils.readContents(
+                    new File(store.mappingDir(), commitSHA));
+            if (!commitSHA.equals(commit.getShaVal())
+                    || !commitSHA.equals(commit.hash(serialized))) {
+                problems.add("corrupt commit " + commitSHA);
+            }
+        }
+
+        /**parents that can be walked to.*/
+        private final List<String> parents = new ArrayList<>(2);
+
+        /**blobs referenced by the commit's mapping.*/
+        private final List<String> blobs = new ArrayList<>();
+
+        /**problems found with the commit.*/
+        private final List<String> problems = new ArrayList<>(1);
+    }
+}
@@ -0,0 +1,134 @@
+package gitlet.Manager;
+
+import gitlet.Commit;
+import gitlet.Const;
+import gitlet.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+/**class collecting garbage: commits, mappings and blobs that nothing
+ * can reach any more, e.g. after a reset or a branch deletion.
+ */
+public class GcManager {
+
+    /**deletes every object unreachable from the branch heads (remote
+     * tracking branches included), the reflog and the staging area,
+     * unless it was written less than GRACEMILLIS ago. the grace period
+     * protects objects a concurrent command has written but not yet
+     * referenced. reflog entries older than REFLOG_EXPIRY are dropped
+     * first, so what they alone kept recoverable goes too.
+     */
+    public static void gc(long graceMillis) throws IOException {
+        RefStore.local().expireReflog(
+                System.currentTimeMillis() - REFLOG_EXPIRY);
+        HashSet<String> commits = new HashSet<>();
+        HashSet<String> blobs = new HashSet<>();
+        mark(roots(), ObjectStore.local(), commits, blobs);
+        blobs.addAll(StageManager.addStageMap().values());
+        long cutoff = System.currentTimeMillis() - graceMillis;
+        long cloned = CloneManager.cloneTime();
+        int commitNum = sweep(Const.COMMIT_DIR, commits, cutoff, cloned);
+        sweep(Const.BLOB_MAP_DIR, commits, cutoff, cloned);
+        int blobNum = sweep(Const.BLOB_DIR, blobs, cutoff, cloned);
+        RemoteManager.promisedBlobs().keySet().retainAll(blobs);
+        CommitManager.shallowCommits().retainAll(commits);
+        RefStore.local().pack();
+        InfoManager.ptln("Removed " + commitNum + " commits and "
+                + blobNum + " blobs.");
+    }
+
+    /**return the commits everything reachable hangs off: the branch
+     * heads, and every head the reflog still remembers.
+     */
+    static List<String> roots() {
+        List<String> roots = new ArrayList<>(
+                BranchManager.branchMap().values());
+        roots.addAll(Reflog.local().headsSince(
+                System.currentTimeMillis() - REFLOG_EXPIRY));
+        return roots;
+    }
+
+    /**add every commit in STORE reachable from ROOTS to COMMITS, and
+     * every blob their mappings reference to BLOBS.
+     * the walk goes one generation at a time, reading the commits and
+     * mappings of a generation in parallel.
+     */
+    static void mark(List<String> roots, ObjectStore store,
+                     HashSet<String> commits, HashSet<String> blobs)
+            throws IOException {
+        List<String> frontier = new ArrayList<>();
+        for (String root : roots) {
+            if (store.hasCommit(root) && commits.add(root)) {
+                frontier.add(root);
+            }
+        }
+        while (!frontier.isEmpty()) {
+            List<String> next = new ArrayList<>();
+            TransferPipeline<Marked> pipeline = new TransferPipeline<>(
+                    marked -> {
+                        blobs.addAll(marked.blobs);
+                        for (String parent : marked.parents) {
+                            if (commits.add(parent)) {
+                                next.add(parent);
+                            }
+                        }
+                    });
+            for (String commitSHA : frontier) {
+                pipeline.submit(() -> new Marked(store, commitSHA));
+            }
+            pipeline.drain();
+            frontier = next;
+        }
+    }
+
+    /**delete every object in DIR that is not in LIVE and was last
+     * modified, or came in by a clone at CLONED, before CUTOFF.
+     * @return number of objects deleted.
+     */
+    private static int sweep(File dir, HashSet<String> live, long cutoff,
+                             long cloned) {
+        int deleted = 0;
+        for (String name : Utils.plainFilenamesIn(dir)) {
+            File object = new File(dir, name);
+            if (!live.contains(name)
+                    && Math.max(object.lastModified(), cloned) < cutoff
+                    && object.delete()) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /**what marking one commit finds: its parents and its blobs.*/
+    private static class Marked {
+        /**read commit COMMITSHA and its mapping from STORE.*/
+        Marked(ObjectStore store, String commitSHA) {
+            Commit commit = store.commit(commitSHA);
+            parents = new ArrayList<>(2);
+            if (commit.hasParent()) {
+                parents.add(commit.getParentSHA());
+            }
+            if (commit.hasMergeParent()) {
+                parents.add(commit.getMergeParentSHA());
+            }
+            blobs = store.mapping(commitSHA).values();
+        }
+
+        /**parents that can be walked to.*/
+        private final List<String> parents;
+
+        /**blobs referenced by the commit's mapping.*/
+        private final Collection<String> blobs;
+    }
+
+    /**age at which reflog entries expire, 90 days in milliseconds.*/
+    public static final long REFLOG_EXPIRY = 90L * 24 * 3600 * 1000;
+
+    /**default grace period, two weeks in milliseconds.*/
+    public static final long DEFAULT_GRACE = 14L * 24 * 3600 * 1000;
+}
@@ -3,24 +3,168 @@ package gitlet.Manager;
 import gitlet.Commit;
 import gitlet.Utils;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.util.Calendar;
-import java.util.GregorianCalendar;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Set;
 
 import static gitlet.Const.*;
 
 /**helper class that manages outputting information to the user during runtime.
  * as well as providing useful utility methods for quick extraction of info. */
 public class InfoManager {
-    /**prints out a series of logs starting from
-     * the current commit's parent, back to the initial commit.
+    /**prints out the logs of the first-parent history selected by the
+     * arguments, newest first. the history is walked lazily, so only
+     * commits that may be printed are ever read.
+     * @param range a revision, a range A..B of the commits in B's
+     *              history but not in A's, or null for the head commit;
+     *              either end of a range may be empty to mean the head.
+     * @param limit iff positive, number of logs to print at most.
+     * @param since milliseconds since the epoch of the oldest commit
+     *              to print; the walk ends at the first older commit.
+     * @param until milliseconds since the epoch of the newest commit
+     *              to print.
+     * @param format iff not null, what to print for each commit; see
+     *               formatLog.
      */
-    public static void log() {
-        CommitManager.headCommit().traceLog();
+    public static void log(String range, int limit, long since, long until,
+                           String format) {
+        String start = BranchManager.getActiveBranchHeadSHA();
+        List<String> hidden = List.of();
+        if (range != null && range.contains(RANGE)) {
+            int dots = range.indexOf(RANGE);
+            hidden = List.of(resolve(range.substring(0, dots)));
+            start = resolve(range.substring(dots + RANGE.length()));
+        } else if (range != null) {
+            start = resolve(range);
+        }
+        PrintWriter out = writer();
+        Iterator<Commit> walk = new RevisionWalk(ObjectStore.local(),
+                List.of(start), hidden, true, since);
+        int printed = 0;
+        while ((limit <= 0 || printed < limit) && walk.hasNext()) {
+            Commit commit = walk.next();
+            if (commit.getTimeMillis() > until) {
+                continue;
+            }
+            if (format == null) {
+                commit.printLog(out);
+            } else {
+                out.println(formatLog(commit, format));
+            }
+            printed++;
+        }
+        out.flush();
+    }
+
+    /**prints out the reflog of BRANCH, newest first, reading only the
+     * entries printed.
+     * @param limit iff positive, number of entries to print at most.
+     */
+    public static void reflog(String branch, int limit) {
+        PrintWriter out = writer();
+        Iterator<Reflog.Entry> entries = Reflog.local().newestFirst(branch);
+        for (int i = 0; (limit <= 0 || i < limit) && entries.hasNext(); i++) {
+            Reflog.Entry entry = entries.next();
+            String head = entry.newHead() == null
+                    ? NO_HEAD : entry.newHead().substring(0, SHORT_SHA);
+            out.println(head + " " + branch + "@{" + i + "}: "
+                    + entry.reason());
+        }
+        out.flush();
+    }
+
+    /**return the SHA-1 value of the commit REV names: the head commit
+     * iff REV is empty, else a branch head or an abbreviated SHA-1.
+     */
+    static String resolve(String rev) {
+        if (rev.isEmpty()) {
+            return BranchManager.getActiveBranchHeadSHA();
+        }
+        if (BranchManager.branchExists(rev)) {
+            return BranchManager.getBranchHeadSHA(rev);
+        }
+        return CommitManager.fetchCommit(rev).getShaVal();
+    }
+
+    /**return FORMAT with the placeholders below replaced by what they
+     * stand for in COMMIT, leaving anything else as it is.
+     *   %H  commit SHA-1     %h  abbreviated commit SHA-1
+     *   %P  parent SHA-1s    %p  abbreviated parent SHA-1s
+     *   %s  message          %ad date
+     *   %n  newline          %%  a literal %
+     */
+    static String formatLog(Commit commit, String format) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < format.length(); i++) {
+            char c = format.charAt(i);
+            String rest = format.substring(i + 1);
+            if (c != '%' || rest.isEmpty()) {
+                result.append(c);
+            } else if (rest.startsWith("ad")) {
+                result.append(commit.getDate());
+                i += 2;
+            } else {
+                String expansion = expand(commit, rest.charAt(0));
+                if (expansion == null) {
+                    result.append(c);
+                } else {
+                    result.append(expansion);
+                    i++;
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    /**return what placeholder %C stands for in COMMIT, or null iff it
+     * is none of formatLog's.
+     */
+    private static String expand(Commit commit, char c) {
+        switch (c) {
+        case 'H': return commit.getShaVal();
+        case 'h': return commit.getShaVal().substring(0, SHORT_SHA);
+        case 'P': return parents(commit, Utils.UID_LENGTH);
+        case 'p': return parents(commit, SHORT_SHA);
+        case 's': return commit.getMsg();
+        case 'n': return System.lineSeparator();
+        case '%': return "%";
+        default: return null;
+        }
+    }
+
+    /**return the SHA-1 values of the parents of COMMIT, cut to LENGTH
+     * characters and separated by spaces.
+     */
+    private static String parents(Commit commit, int length) {
+        String result = "";
+        if (commit.getParentSHA() != null) {
+            result = commit.getParentSHA().substring(0, length);
+        }
+        if (commit.getMergeParentSHA() != null) {
+            result += " " + commit.getMergeParentSHA().substring(0, length);
+        }
+        return result;
+    }
+
+    /**return a writer buffering everything printed to standard output
+     * until it is flushed, rather than writing each line on its own.
+     */
+    static PrintWriter writer() {
+        return new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out), Utils.BUFFER_SIZE));
     }
 
     /**returns a list of SHA-1 values of all commits ever made. */
@@ -33,13 +177,16 @@ public class InfoManager {
         return Utils.plainFilenamesIn(dir);
     }
 
-    /**prints out logs for all commits ever made.
+    /**prints out logs for all commits ever made from SINCE to UNTIL,
+     * both in milliseconds since the epoch, newest first. the commits
+     * are found in the time index, so only those printed are read.
      */
-    public static void logAll() {
-        List<String> commitSHAlst = getAllCommitSHA();
-        for (String commitSHA : commitSHAlst) {
-            CommitManager.getCommit(commitSHA).printLog();
+    public static void logAll(long since, long until) {
+        PrintWriter out = writer();
+        for (String commitSHA : TimeIndex.load().between(since, until)) {
+            CommitManager.getCommit(commitSHA).printLog(out);
         }
+        out.flush();
     }
 
     /**prints out SHA-1's for all commits with commit message identical
@@ -60,70 +207,37 @@ public class InfoManager {
         }
     }
 
-    /** Returns a timestamp corresponding to
-     * current time suitable for Gitlet. */
-    public static String gitletTime() {
-        GregorianCalendar now = new GregorianCalendar();
-        String timeZone =
-                timeZoneFormatter(
-                        now.get(Calendar.ZONE_OFFSET) / HOUR_TO_MILISEC);
-        String date = "Date: "
-                + weekdays[now.get(Calendar.DAY_OF_WEEK)]
-                + " "
-                + months[now.get(Calendar.MONTH)]
-                + " "
-                + twoDigitFormatter(now.get(Calendar.DAY_OF_MONTH))
-                + " "
-                + twoDigitFormatter(now.get(Calendar.HOUR_OF_DAY))
-                + ":"
-                + twoDigitFormatter(now.get(Calendar.MINUTE))
-                + ":"
-                + twoDigitFormatter(now.get(Calendar.SECOND))
-                + " "
-                + now.get(Calendar.YEAR)
-                + " "
-                + timeZone;
-        return date;
+    /** Returns the time MILLIS, in milliseconds since the epoch, as
+     * shown in logs, in the time zone OFFSET seconds ahead of UTC. */
+    public static String gitletTime(long millis, int offset) {
+        return DATE_FORMAT.format(Instant.ofEpochMilli(millis)
+                .atOffset(ZoneOffset.ofTotalSeconds(offset)));
     }
 
-    /**return time zone formatted as the course demanded,
-     * based on UNPROCESSEDTZ. */
-    static String timeZoneFormatter(int unprocessedTZ) {
-        boolean negativeTimeZone = unprocessedTZ < 0;
-        String timeZoneStr = Integer.toString(Math.abs(unprocessedTZ));
-        String timeZone1;
-        if (timeZoneStr.length() == 2) {
-            timeZone1 = timeZoneStr;
-        } else {
-            timeZone1 = "0" + timeZoneStr;
-        }
-        timeZone1 += "00";
-        if (negativeTimeZone) {
-            return "-" + timeZone1;
-        } else {
-            return "+" + timeZone1;
-        }
+    /** Returns the time shown in logs as TIME, without the "Date: "
+     * label, with the time zone it was shown in. */
+    public static OffsetDateTime parseGitletTime(String time) {
+        return OffsetDateTime.parse(time, DATE_FORMAT);
     }
 
-    /**return minute, hour, and second as the course demanded,
-     * based on TIME.*/
-    static String twoDigitFormatter(int time) {
-        if (Integer.toString(time).length() == 1) {
-            return "0" + time;
-        }
-        return Integer.toString(time);
+    /** Returns how many seconds ahead of UTC the local time zone is
+     * at time MILLIS, in milliseconds since the epoch. */
+    public static int localOffset(long millis) {
+        return ZoneId.systemDefault().getRules()
+                .getOffset(Instant.ofEpochMilli(millis)).getTotalSeconds();
     }
 
-    /** array of months.*/
-    private static String[] months =  {
-        "Jan", "Feb", "Mar", "Apr", "May", "Jun",
-        "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
-    };
-    /** array of weekdays.*/
-    private static String[] weekdays = {
-        "Poggers", "Sun", "Mon", "Tue", "Wed", "Thu",
-        "Fri", "Sat"
-    };
+    /** separator of the two ends of a range.*/
+    private static final String RANGE = "..";
+    /** length of an abbreviated SHA-1 value.*/
+    static final int SHORT_SHA = 7;
+    /** what the reflog shows as the head of a deleted branch.*/
+    private static final String NO_HEAD = "0000000";
+
+    /** format of timestamps in logs.*/
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy Z",
+                    Locale.US);
 
     /**Displays what branches currently exist,
      * and marks the current branch with a *.
@@ -147,11 +261,13 @@ public class InfoManager {
     }
     /**prints status of branch.*/
     static void branchStatus() {
-        ptln("*" + BranchManager.activeBranch());
-        String[] branchLst = lexiSort(BranchManager.getInactiveBranches());
-        for (int i = 0; i < branchLst.length; i++) {
-            ptln(branchLst[i]);
-        }
+        String active = BranchManager.activeBranch();
+        ptln("*" + active);
+        BranchManager.forEachBranch((branch, head) -> {
+            if (!branch.equals(active)) {
+                ptln(branch);
+            }
+        });
     }
     /**prints status of files staged for addition.*/
     static void stagedFileStatus() {
@@ -172,19 +288,22 @@ public class InfoManager {
      * staged for addition but file in CWD is different.
      * staged for addition but file in CWD is deleted.
      * tracked in the current commit, changed in CWD, not staged for add.
-     * tracked in the current commit, removed in CWD, not staged for removal. */
+     * tracked in the current commit, removed in CWD, not staged for removal.
+     * files outside a sparse checkout are ignored, and only files a
+     * file system monitor reports as changed are hashed again. */
     static void unstagedModificationStatus() {
         LinkedHashMap<String, String> currMap =
                 CommitManager.headCommit().getBlobMapping();
-        List<String> cwdFiles = getDirFileLst(CWD);
+        Set<String> cwdFiles = FsMonitor.cwdFiles();
         for (String fileName : StageManager.addStageMap().keySet()) {
-            if (!cwdFiles.contains(fileName)) {
+            if (!SparseManager.matches(fileName)) {
+                continue;
+            } else if (!cwdFiles.contains(fileName)) {
                 pt(fileName);
                 ptln(" (deleted)");
             } else {
-                File file = new File(CWD, fileName);
                 String blobHash = StageManager.addStageMap().get(fileName);
-                String fileHash = Utils.sha1(file);
+                String fileHash = FsMonitor.hash(fileName);
                 if (!fileHash.equals(blobHash)) {
                     pt(fileName);
                     ptln(" (modified)");
@@ -192,15 +311,17 @@ public class InfoManager {
             }
         }
         for (String fileName : currMap.keySet()) {
-            if (!cwdFiles.contains(fileName)) {
+            if (!SparseManager.matches(fileName)) {
+                continue;
+            } else if (!cwdFiles.contains(fileName)) {
                 if (!StageManager.rmStageMap().containsKey(fileName)) {
                     pt(fileName);
                     ptln(" (deleted)");
                 }
             } else {
-                File file = new File(CWD, fileName);
                 if (!StageManager.addStageMap().containsKey(fileName)
-                        && !Utils.sha1(file).equals(currMap.get(fileName))) {
+                        && !FsMonitor.hash(fileName)
+                        .equals(currMap.get(fileName))) {
                     pt(fileName);
                     ptln(" (modified)");
                 }
@@ -210,10 +331,12 @@ public class InfoManager {
     /**prints status of files that are untracked.
      * the narrow definition:
      * a file is "untracked" iff it's untracked
-     * by broad definition, and not staged for addition.*/
+     * by broad definition, not staged for addition, and in the sparse
+     * checkout, if any.*/
     static void untrackedStatus() {
         for (String fileName : untrackedInCWD()) {
-            if (!StageManager.addStageMap().containsKey(fileName)) {
+            if (!StageManager.addStageMap().containsKey(fileName)
+                    && SparseManager.matches(fileName)) {
                 ptln(fileName);
             }
         }
@@ -229,10 +352,11 @@ public class InfoManager {
 
     /**return a list of untracked file names in CWD.*/
     static List<String> untrackedInCWD() {
-        List<String> cwdFiles = getDirFileLst(CWD);
+        LinkedHashMap<String, String> currMap =
+                CommitManager.headCommit().getBlobMapping();
         List<String> untrackedFiles = new ArrayList<String>();
-        for (String fileName : cwdFiles) {
-            if (!fileTracked(fileName)) {
+        for (String fileName : FsMonitor.cwdFiles()) {
+            if (!currMap.containsKey(fileName)) {
                 untrackedFiles.add(fileName);
             }
         }
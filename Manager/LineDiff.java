@@ -0,0 +1,128 @@
+package gitlet.Manager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**class matching the lines of two versions of a file, by Myers'
+ * O(ND) difference algorithm, where D is the number of lines added
+ * and deleted. lines are numbered before they are compared, and lines
+ * common to the start or end of both versions are matched before the
+ * algorithm runs, so the usual small edit to a large file is cheap.
+ */
+class LineDiff {
+
+    /**return, for each line of NEWLINES, the index of the line of
+     * OLDLINES it is unchanged from, or -1 iff it was added. the
+     * matched lines form a longest common subsequence, unless the
+     * versions differ in more than MAX_EDITS lines, when only the
+     * common start and end are matched.
+     */
+    static int[] match(String[] oldLines, String[] newLines) {
+        HashMap<String, Integer> numbers = new HashMap<>();
+        int[] a = number(oldLines, numbers);
+        int[] b = number(newLines, numbers);
+        int[] match = new int[b.length];
+        Arrays.fill(match, -1);
+        int start = 0;
+        while (start < a.length && start < b.length
+                && a[start] == b[start]) {
+            match[start] = start;
+            start += 1;
+        }
+        int aEnd = a.length;
+        int bEnd = b.length;
+        while (aEnd > start && bEnd > start && a[aEnd - 1] == b[bEnd - 1]) {
+            aEnd -= 1;
+            bEnd -= 1;
+            match[bEnd] = aEnd;
+        }
+        myers(Arrays.copyOfRange(a, start, aEnd),
+                Arrays.copyOfRange(b, start, bEnd), match, start);
+        return match;
+    }
+
+    /**return the number of each of LINES, equal lines getting equal
+     * numbers, as recorded in NUMBERS.
+     */
+    private static int[] number(String[] lines,
+                                HashMap<String, Integer> numbers) {
+        int[] result = new int[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            result[i] = numbers.computeIfAbsent(lines[i],
+                    line -> numbers.size());
+        }
+        return result;
+    }
+
+    /**record in MATCH, offset by OFFSET, a longest common subsequence
+     * of A and B, or nothing iff they differ in more than MAX_EDITS
+     * lines. v[k] is the furthest x reached on diagonal k = x - y, and
+     * the part of v each round reads is kept to walk back the path.
+     */
+    private static void myers(int[] a, int[] b, int[] match, int offset) {
+        int n = a.length;
+        int m = b.length;
+        int max = Math.min(n + m, MAX_EDITS);
+        int[] v = new int[2 * max + 3];
+        int mid = max + 1;
+        List<int[]> trace = new ArrayList<>();
+        for (int d = 0; d <= max; d++) {
+            trace.add(Arrays.copyOfRange(v, mid - d - 1, mid + d + 2));
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[mid + k - 1] < v[mid + k + 1])) {
+                    x = v[mid + k + 1];
+                } else {
+                    x = v[mid + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && a[x] == b[y]) {
+                    x += 1;
+                    y += 1;
+                }
+                v[mid + k] = x;
+                if (x >= n && y >= m) {
+                    backtrack(trace, a.length, b.length, match, offset);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**walk back from the ends of versions of N and M lines along the
+     * rounds in TRACE, recording the diagonal moves in MATCH, offset by
+     * OFFSET.
+     */
+    private static void backtrack(List<int[]> trace, int n, int m,
+                                  int[] match, int offset) {
+        int x = n;
+        int y = m;
+        for (int d = trace.size() - 1; d >= 0; d--) {
+            int[] v = trace.get(d);
+            int mid = d + 1;
+            int k = x - y;
+            int prevK;
+            if (k == -d || (k != d && v[mid + k - 1] < v[mid + k + 1])) {
+                prevK = k + 1;
+            } else {
+                prevK = k - 1;
+            }
+            int prevX = d == 0 ? 0 : v[mid + prevK];
+            int prevY = d == 0 ? 0 : prevX - prevK;
+            while (x > prevX && y > prevY) {
+                x -= 1;
+                y -= 1;
+                match[offset + y] = offset + x;
+            }
+            x = prevX;
+            y = prevY;
+        }
+    }
+
+    /**most lines added and deleted that are searched for a longest
+     * common subsequence; the trace kept grows as its square.
+     */
+    private static final int MAX_EDITS = 2048;
+}
@@ -2,11 +2,22 @@ package gitlet.Manager;
 
 import gitlet.Commit;
 import gitlet.Const;
+import gitlet.Events;
 import gitlet.Utils;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,6 +39,28 @@ public class MergeManager {
      */
     public MergeManager(String primaryBranch, String secondaryBranch)
             throws IOException {
+        this(primaryBranch, secondaryBranch, false);
+    }
+
+    /**
+     * a new merge manager, which works entirely in the object store iff
+     * INMEMORY: the merged files and conflicts are stored as blobs and
+     * committed directly to the primary branch, and neither the working
+     * directory nor the stage is read or written. the primary branch
+     * must then not be the active branch, whose files would no longer
+     * match its head.
+     *
+     * @param primaryBranch
+     * primary branch for merging; the active branch unless INMEMORY.
+     * @param secondaryBranch
+     * secondary branch, to merge into primary.
+     *a.k.a. "given branch".
+     * @param inMemory
+     * whether to merge without a working directory.
+     */
+    public MergeManager(String primaryBranch, String secondaryBranch,
+                        boolean inMemory) throws IOException {
+        _inMemory = inMemory;
         _primaryB = primaryBranch;
         _secondaryB = secondaryBranch;
         mergePreCheck();
@@ -38,19 +71,57 @@ public class MergeManager {
         _fileToAdd = new LinkedHashMap<>();
         _fileToRemove = new LinkedHashMap<>();
         _mergedData = new LinkedHashMap<>();
+        Events.MergePhase event = new Events.MergePhase();
+        event.begin();
         _splitPoint = getSplitPoint(_pHead, _sHead);
+        if (event.shouldCommit()) {
+            event.phase = "split point";
+            event.branch = _secondaryB;
+            event.files = 0;
+            event.commit();
+        }
         _aMap = _splitPoint.getBlobMapping();
 
     }
 
     /**
-     * merge secondary branch into primary branch.
+     * merge secondary branch into primary branch. in memory, only the
+     * blobs of conflicted files are read.
      */
     public void merge() throws IOException {
-        catagorizeFile(_pHead.getBlobMapping(), _sHead.getBlobMapping());
-        mergeCWDCheck();
-        proccessFile();
-        CommitManager.mergeCommit(_pHead, _sHead, _secondaryB);
+        LinkedHashMap<String, String> pMap = _pHead.getBlobMapping();
+        LinkedHashMap<String, String> sMap = _sHead.getBlobMapping();
+        Events.MergePhase event = new Events.MergePhase();
+        event.begin();
+        int files = 0;
+        if (event.isEnabled()) {
+            HashSet<String> names = new HashSet<>(_aMap.keySet());
+            names.addAll(pMap.keySet());
+            names.addAll(sMap.keySet());
+            files = names.size();
+        }
+        catagorizeFile(pMap, sMap);
+        if (event.shouldCommit()) {
+            event.phase = "categorization";
+            event.branch = _secondaryB;
+            event.files = files;
+            event.commit();
+        }
+        if (_inMemory) {
+            CommitManager.mergeCommit(_pHead, _sHead, _secondaryB,
+                    _primaryB, mergedMapping());
+        } else {
+            mergeCWDCheck();
+            ArrayList<String> blobs = conflictBlobs();
+            for (Map.Entry<String, String> entry : _fileToAdd.entrySet()) {
+                if (SparseManager.matches(entry.getKey())) {
+                    blobs.add(entry.getValue());
+                }
+            }
+            RemoteManager.ensureBlobs(blobs);
+            proccessFile();
+            CommitManager.mergeCommit(_pHead, _sHead, _secondaryB);
+        }
     }
 
     /**
@@ -108,48 +179,140 @@ public class MergeManager {
 
     /**
      * process catagorized files.
-     * put files from _filesToAdd into CWD and stage changes.
-     * remove files in _filesToRemove and stage changes.
-     * create/overwrite files using files from _mergedData.
+     * put files from _filesToAdd into CWD and stage changes; files
+     * outside a sparse checkout are staged without being written.
+     * conflicts are always written, so they can be resolved.
+     * remove files in _filesToRemove and stage changes, leaving files
+     * outside a sparse checkout in place.
+     * create/overwrite conflicted files in _mergedData.
      */
     private void proccessFile() throws IOException {
+        LinkedHashMap<String, String> sMap = _sHead.getBlobMapping();
         for (String fileName : _fileToAdd.keySet()) {
-            CheckoutManager.copyBlob(fileName, _sHead.getBlobMapping());
-            StageManager.stageAdd(fileName);
+            if (SparseManager.matches(fileName)) {
+                CheckoutManager.copyBlob(fileName, sMap);
+                StageManager.stageAdd(fileName);
+            } else {
+                StageManager.stageBlob(fileName, sMap.get(fileName));
+            }
         }
         for (String fileName : _fileToRemove.keySet()) {
-            StageManager.stageRemove(fileName);
+            if (SparseManager.matches(fileName)) {
+                StageManager.stageRemove(fileName);
+            } else {
+                StageManager.stageRemoveTracked(fileName);
+            }
         }
         if (!_mergedData.isEmpty()) {
             System.out.println("Encountered a merge conflict.");
-            for (Map.Entry<String, String> entry
+            for (Map.Entry<String, String[]> entry
                     : _mergedData.entrySet()) {
                 String fileName = entry.getKey();
-                String dataStr = entry.getValue();
                 File file = new File(Const.CWD, fileName);
-                file.createNewFile();
-                Utils.writeContents(file, dataStr);
+                try (OutputStream out = new BufferedOutputStream(
+                        Files.newOutputStream(file.toPath()),
+                        Utils.BUFFER_SIZE)) {
+                    writeConflict(fileName, entry.getValue()[0],
+                            entry.getValue()[1], out);
+                }
                 StageManager.stageAdd(fileName);
             }
         }
 
     }
 
+    /**
+     * return the files of the merge commit, made without the working
+     * directory: the primary head's files with catagorized files added
+     * and removed, and conflicted files stored as new blobs.
+     */
+    private LinkedHashMap<String, String> mergedMapping()
+            throws IOException {
+        LinkedHashMap<String, String> merged = _pHead.getBlobMapping();
+        merged.putAll(_fileToAdd);
+        merged.keySet().removeAll(_fileToRemove.keySet());
+        if (!_mergedData.isEmpty()) {
+            System.out.println("Encountered a merge conflict.");
+            RemoteManager.ensureBlobs(conflictBlobs());
+            for (Map.Entry<String, String[]> entry
+                    : _mergedData.entrySet()) {
+                merged.put(entry.getKey(), storeConflict(entry.getKey(),
+                        entry.getValue()[0], entry.getValue()[1]));
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * return the blobs on both sides of every conflict, which are read
+     * to write the conflicted files. with the files written to the
+     * working directory, they are the only blobs a merge reads, so a
+     * partial clone fetches no others.
+     */
+    private ArrayList<String> conflictBlobs() {
+        ArrayList<String> blobs = new ArrayList<>();
+        for (String[] blobSHAs : _mergedData.values()) {
+            for (String blobSHA : blobSHAs) {
+                if (blobSHA != null) {
+                    blobs.add(blobSHA);
+                }
+            }
+        }
+        return blobs;
+    }
+
+    /**
+     * store the conflicted file FILENAME, between blobs PARENTSHA and
+     * SECONDARYSHA, as a blob, hashing it as it is written, and return
+     * its SHA-1 value. it is written under a temporary name and moved
+     * into place, as Utils.writeBlob does.
+     */
+    private String storeConflict(String fileName, String parentSHA,
+                                 String secondarySHA) throws IOException {
+        Path tmp = Utils.newTempFile(Const.BLOB_DIR.getParentFile());
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            try (OutputStream out = new DigestOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp),
+                            Utils.BUFFER_SIZE), md)) {
+                writeConflict(fileName, parentSHA, secondarySHA, out);
+            }
+            String hash = Utils.toHex(md.digest());
+            File blob = new File(Const.BLOB_DIR, hash);
+            if (!Utils.touch(blob)) {
+                Files.move(tmp, blob.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        } finally {
+            tmp.toFile().delete();
+        }
+    }
+
     /**
      * check iff the merging BRANCHNAME is valid. Errors iff:
-     * 1. there are unstaged additions or removals.
+     * 1. there are unstaged additions or removals, unless in memory.
      * 2. primary and secondary are the same branch.
+     * 3. either branch does not exist.
+     * 4. in memory, primary is the active branch.
      */
     private void mergePreCheck() {
-        if (!StageManager.isStageEmpty()) {
+        if (!_inMemory && !StageManager.isStageEmpty()) {
             Utils.error("You have uncommitted changes.");
         }
         if (_primaryB.equals(_secondaryB)) {
             Utils.error("Cannot merge a branch with itself.");
         }
-        if (!BranchManager.branchExists(_secondaryB)) {
+        if (!BranchManager.branchExists(_secondaryB)
+                || !BranchManager.branchExists(_primaryB)) {
             Utils.error("A branch with that name does not exist.");
         }
+        if (_inMemory && _primaryB.equals(BranchManager.activeBranch())) {
+            Utils.error("Cannot merge in memory into the current branch.");
+        }
     }
 
     /**
@@ -161,7 +324,8 @@ public class MergeManager {
         for (String fileName : uncheckedFiles) {
             if (_mergedData.containsKey(fileName)
                     || _fileToRemove.containsKey(fileName)
-                    || _fileToAdd.containsKey(fileName)) {
+                    || (_fileToAdd.containsKey(fileName)
+                    && SparseManager.matches(fileName))) {
                 Utils.error("There is an untracked file in the way;"
                         + " delete it, or add and commit it first.");
             }
@@ -200,6 +364,10 @@ public class MergeManager {
                 minDist = entry.getValue();
             }
         }
+        if (lcaSHA == null) {
+            Utils.error("No common ancestor found in shallow history; "
+                    + "fetch with --deepen first.");
+        }
         Commit splitPoint = CommitManager.getCommit(lcaSHA);
         if (splitPoint.getShaVal().equals(_sHead.getShaVal())) {
             InfoManager.ptln("Given branch is an "
@@ -207,8 +375,14 @@ public class MergeManager {
             System.exit(0);
         }
         if (splitPoint.getShaVal().equals(_pHead.getShaVal())) {
-            CheckoutManager.checkoutBranch(_secondaryB);
-            InfoManager.ptln("Current branch fast-forwarded.");
+            if (_inMemory) {
+                BranchManager.newBranch(_primaryB, _sHead.getShaVal(),
+                        "merge " + _secondaryB + ": Fast-forward");
+                InfoManager.ptln("Branch fast-forwarded.");
+            } else {
+                CheckoutManager.checkoutBranch(_secondaryB);
+                InfoManager.ptln("Current branch fast-forwarded.");
+            }
             System.exit(0);
         }
         return splitPoint;
@@ -227,27 +401,50 @@ public class MergeManager {
         return !Utils.idMapping(_aMap, map, fileName);
     }
 
-    /**merge conflicts from two blobs storing info of the same file.
+    /**record a conflict between two blobs storing the same file.
      * @param fileName name of the file in conflict.
      * @param parentSHA SHA-1 value of blob in current commit.
      * @param secondarySHA SHA-1 value of blob in branch to be merged in.
      */
     private void mergeConflict(String fileName,
                                String parentSHA, String secondarySHA) {
-        String content = "<<<<<<< HEAD\n";
+        _mergedData.put(fileName, new String[] {parentSHA, secondarySHA});
+    }
+
+    /**write the conflicted file FILENAME to OUT: both versions, from
+     * blobs PARENTSHA and SECONDARYSHA, between conflict markers. either
+     * may be null for a deleted file. the blobs are streamed, so files
+     * of any size can conflict.
+     */
+    private void writeConflict(String fileName, String parentSHA,
+                               String secondarySHA, OutputStream out)
+            throws IOException {
+        Events.MergePhase event = new Events.MergePhase();
+        event.begin();
+        out.write("<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8));
         if (parentSHA != null) {
-            content += Utils.readContentsAsString(
-                    new File(Const.BLOB_DIR, parentSHA));
+            Files.copy(new File(Const.BLOB_DIR, parentSHA).toPath(), out);
         }
-        content += "=======\n";
+        out.write("=======\n".getBytes(StandardCharsets.UTF_8));
         if (secondarySHA != null) {
-            content += Utils.readContentsAsString(
-                    new File(Const.BLOB_DIR, secondarySHA));
+            Files.copy(new File(Const.BLOB_DIR, secondarySHA).toPath(), out);
+        }
+        out.write(">>>>>>>\n".getBytes(StandardCharsets.UTF_8));
+        if (event.shouldCommit()) {
+            event.phase = "conflict";
+            event.branch = _secondaryB;
+            event.files = 1;
+            event.file = fileName;
+            event.commit();
         }
-        content += ">>>>>>>\n";
-        _mergedData.put(fileName, content);
     }
 
+    /**
+     * whether to merge in the object store, without the working
+     * directory.
+     */
+    private boolean _inMemory;
+
     /**
      * all SHA-1 values of primary commit's ancestors, and
      * their distance(how many commit it takes to get to C1)
@@ -309,7 +506,8 @@ public class MergeManager {
 
     /**
      * store the mapping:
-     * [File name] --> [merged file contents as String].
+     * [File name] --> [SHA-1 values of its blobs in the current and
+     * given commits, null where deleted].
      */
-    private LinkedHashMap<String, String> _mergedData;
+    private LinkedHashMap<String, String[]> _mergedData;
 }
@@ -0,0 +1,108 @@
+package gitlet.Manager;
+
+import gitlet.Commit;
+import gitlet.Const;
+import gitlet.Utils;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+
+/**the object directories of one .gitlet directory, local or remote.
+ * objects are immutable and named by SHA-1 value, so any two stores
+ * can exchange them by name alone.
+ */
+public class ObjectStore {
+
+    /**a store rooted at GITLETDIR, a directory laid out like GITLET_DIR.*/
+    public ObjectStore(File gitletDir) {
+        _gitletDir = gitletDir;
+        _metaDir = new File(gitletDir, Const.GITLET_META_DIR.getName());
+        File commitMetaDir =
+                new File(gitletDir, Const.COMMIT_META_DIR.getName());
+        _commitDir = new File(commitMetaDir, Const.COMMIT_DIR.getName());
+        _mappingDir = new File(commitMetaDir, Const.BLOB_MAP_DIR.getName());
+        _blobDir = new File(gitletDir, Const.BLOB_DIR.getName());
+    }
+
+    /**return the store of the current repository.*/
+    public static ObjectStore local() {
+        return new ObjectStore(Const.GITLET_DIR);
+    }
+
+    /**return iff NAME can name an object: 40 lowercase hex digits. a
+     * name read from another repository or from the network is checked
+     * before it is used as a file name, so it never leaves its store.
+     */
+    static boolean isId(String name) {
+        if (name == null || name.length() != Utils.UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**return commit COMMITSHA read from this store.*/
+    public Commit commit(String commitSHA) {
+        return CommitManager.getCommit(commitSHA, _commitDir);
+    }
+
+    /**return the blob mapping of commit COMMITSHA read from this store.*/
+    public LinkedHashMap<String, String> mapping(String commitSHA) {
+        return Utils.readLinkedHashMap(new File(_mappingDir, commitSHA));
+    }
+
+    /**return iff this store holds commit COMMITSHA.*/
+    public boolean hasCommit(String commitSHA) {
+        return new File(_commitDir, commitSHA).exists();
+    }
+
+    /**return iff this store holds blob BLOBSHA.*/
+    public boolean hasBlob(String blobSHA) {
+        return new File(_blobDir, blobSHA).exists();
+    }
+
+    /**return the .gitlet directory of this store.*/
+    public File gitletDir() {
+        return _gitletDir;
+    }
+
+    /**return the equivalent of GITLET_META_DIR in this store.*/
+    public File metaDir() {
+        return _metaDir;
+    }
+
+    /**return the equivalent of COMMIT_DIR in this store.*/
+    public File commitDir() {
+        return _commitDir;
+    }
+
+    /**return the equivalent of BLOB_MAP_DIR in this store.*/
+    public File mappingDir() {
+        return _mappingDir;
+    }
+
+    /**return the equivalent of BLOB_DIR in this store.*/
+    public File blobDir() {
+        return _blobDir;
+    }
+
+    /**equivalent of GITLET_DIR.*/
+    private File _gitletDir;
+
+    /**equivalent of GITLET_META_DIR.*/
+    private File _metaDir;
+
+    /**equivalent of COMMIT_DIR.*/
+    private File _commitDir;
+
+    /**equivalent of BLOB_MAP_DIR.*/
+    private File _mappingDir;
+
+    /**equivalent of BLOB_DIR.*/
+    private File _blobDir;
+}
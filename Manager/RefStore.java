@@ -0,0 +1,393 @@
+package gitlet.Manager;
+
+import gitlet.Const;
+import gitlet.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**class storing the branches of a repository, scaling to many of them.
+ * most branches live in one packed file sorted by name: a count, a table
+ * of record offsets, then the records, each a name and a head. a branch
+ * is found by binary search over the offset table, reading O(log n)
+ * records. updates go to small loose files, one per branch, that take
+ * precedence over the packed file; an empty loose file marks a deleted
+ * branch. once there are too many loose files, they are folded into a
+ * new packed file.
+ * every update holds a lock file, so updates by concurrent processes,
+ * such as pushes to a served repository, never interleave, and every
+ * update is recorded in the reflog.
+ */
+public class RefStore {
+
+    /**the branches of the repository whose metadata is in METADIR.*/
+    public RefStore(File metaDir) {
+        _metaDir = metaDir;
+        _packedFile = new File(metaDir, Const.PACKED_REFS_FILE.getName());
+        _looseDir = new File(metaDir, Const.REFS_DIR.getName());
+        _lock = new File(metaDir, Const.REFS_DIR.getName() + ".lock");
+        _reflog = new Reflog(metaDir);
+        if (!_packedFile.exists()) {
+            migrate(new File(metaDir, Const.BRANCH_MAP_FILE.getName()));
+        }
+    }
+
+    /**return the branches of the current repository.*/
+    public static RefStore local() {
+        return new RefStore(Const.GITLET_META_DIR);
+    }
+
+    /**create an empty store.*/
+    public void init() throws IOException {
+        _looseDir.mkdir();
+        writePacked(new TreeMap<>());
+    }
+
+    /**return the head of BRANCH, or null iff there is no such branch.*/
+    public String get(String branch) {
+        File loose = looseFile(branch);
+        if (loose.exists()) {
+            String head = Utils.readContentsAsString(loose);
+            return head.isEmpty() ? null : head;
+        }
+        try (RandomAccessFile packed = new RandomAccessFile(_packedFile,
+                "r")) {
+            int low = 0;
+            int high = packed.readInt();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                packed.seek(HEADER + (long) mid * OFFSET);
+                packed.seek(packed.readLong());
+                int cmp = packed.readUTF().compareTo(branch);
+                if (cmp == 0) {
+                    return packed.readUTF();
+                } else if (cmp < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return null;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**point BRANCH at HEAD because of REASON, which goes in the reflog,
+     * erroring iff another process holds the lock.
+     */
+    public void put(String branch, String head, String reason) {
+        lockOrError();
+        try {
+            _reflog.append(branch, get(branch), head, reason);
+            writeLoose(branch, head);
+            packIfNeeded();
+        } finally {
+            _lock.delete();
+        }
+    }
+
+    /**delete BRANCH because of REASON, which goes in the reflog,
+     * erroring iff another process holds the lock.
+     */
+    public void delete(String branch, String reason) {
+        lockOrError();
+        try {
+            _reflog.append(branch, get(branch), null, reason);
+            writeLoose(branch, "");
+        } finally {
+            _lock.delete();
+        }
+    }
+
+    /**compare-and-swap BRANCH from OLDHEAD to NEWHEAD because of
+     * REASON. the head is re-read under the lock, so a concurrent update
+     * is detected instead of silently overwritten.
+     * @param oldHead expected current head, null for a new branch.
+     * @return true iff the branch was updated, false iff it had moved.
+     * @throws GitletException iff another process holds the lock, in
+     *         which case trying again later may succeed.
+     */
+    public boolean compareAndSwap(String branch, String oldHead,
+                                  String newHead, String reason) {
+        lockOrError();
+        try {
+            String currHead = get(branch);
+            boolean unchanged = currHead == null
+                    ? oldHead == null : currHead.equals(oldHead);
+            if (unchanged) {
+                _reflog.append(branch, currHead, newHead, reason);
+                writeLoose(branch, newHead);
+                packIfNeeded();
+            }
+            return unchanged;
+        } finally {
+            _lock.delete();
+        }
+    }
+
+    /**call ACTION on every branch and its head in order of name,
+     * streaming the packed file rather than reading it whole.
+     */
+    public void forEach(BiConsumer<String, String> action) {
+        TreeMap<String, String> loose = readLoose();
+        Iterator<Map.Entry<String, String>> looseIter =
+                loose.entrySet().iterator();
+        Map.Entry<String, String> nextLoose =
+                looseIter.hasNext() ? looseIter.next() : null;
+        try (DataInputStream in = openPacked()) {
+            int size = in.readInt();
+            in.skipNBytes((long) size * OFFSET);
+            for (int i = 0; i < size; i++) {
+                String branch = in.readUTF();
+                String head = in.readUTF();
+                while (nextLoose != null
+                        && nextLoose.getKey().compareTo(branch) <= 0) {
+                    if (nextLoose.getKey().equals(branch)) {
+                        head = nextLoose.getValue();
+                    } else if (!nextLoose.getValue().isEmpty()) {
+                        action.accept(nextLoose.getKey(),
+                                nextLoose.getValue());
+                    }
+                    nextLoose = looseIter.hasNext() ? looseIter.next() : null;
+                }
+                if (!head.isEmpty()) {
+                    action.accept(branch, head);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        for (; nextLoose != null;
+             nextLoose = looseIter.hasNext() ? looseIter.next() : null) {
+            if (!nextLoose.getValue().isEmpty()) {
+                action.accept(nextLoose.getKey(), nextLoose.getValue());
+            }
+        }
+    }
+
+    /**return a map of every branch to its head, in order of name.*/
+    public LinkedHashMap<String, String> all() {
+        LinkedHashMap<String, String> result = new LinkedHashMap<>();
+        forEach(result::put);
+        return result;
+    }
+
+    /**fold every loose file into a new packed file, erroring iff another
+     * process holds the lock.
+     */
+    public void pack() {
+        lockOrError();
+        try {
+            pack(readLoose());
+        } finally {
+            _lock.delete();
+        }
+    }
+
+    /**drop reflog entries made before CUTOFF, in milliseconds since the
+     * epoch, erroring iff another process holds the lock.
+     */
+    public void expireReflog(long cutoff) throws IOException {
+        lockOrError();
+        try {
+            _reflog.expire(cutoff);
+        } finally {
+            _lock.delete();
+        }
+    }
+
+    /**pack iff there are more loose files than LOOSE_LIMIT. only called
+     * while holding the lock.
+     */
+    private void packIfNeeded() {
+        String[] looseNames = _looseDir.list();
+        if (looseNames != null && looseNames.length > LOOSE_LIMIT) {
+            pack(readLoose());
+        }
+    }
+
+    /**fold LOOSE, the loose files, into a new packed file, then delete
+     * them. only called while holding the lock.
+     */
+    private void pack(TreeMap<String, String> loose) {
+        if (loose.isEmpty()) {
+            return;
+        }
+        TreeMap<String, String> branches = new TreeMap<>();
+        forEach(branches::put);
+        writePacked(branches);
+        for (String branch : loose.keySet()) {
+            looseFile(branch).delete();
+        }
+    }
+
+    /**replace the packed file with one holding BRANCHES, renaming it
+     * into place so readers never see a partial file.
+     */
+    private void writePacked(TreeMap<String, String> branches) {
+        File tmp = new File(_metaDir, _packedFile.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        tmp.toPath()), Utils.BUFFER_SIZE))) {
+            out.writeInt(branches.size());
+            long offset = HEADER + (long) branches.size() * OFFSET;
+            for (Map.Entry<String, String> entry : branches.entrySet()) {
+                out.writeLong(offset);
+                offset += utfLength(entry.getKey())
+                        + utfLength(entry.getValue());
+            }
+            for (Map.Entry<String, String> entry : branches.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), _packedFile.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**return the number of bytes writeUTF writes for STR.*/
+    private static int utfLength(String str) {
+        int length = 2;
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c >= 1 && c <= 0x7f) {
+                length += 1;
+            } else if (c <= 0x7ff) {
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**return a stream reading the packed file from its start.*/
+    private DataInputStream openPacked() throws IOException {
+        return new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(_packedFile.toPath()),
+                Utils.BUFFER_SIZE));
+    }
+
+    /**return a map of every branch with a loose file to its contents,
+     * empty for a deleted branch.
+     */
+    private TreeMap<String, String> readLoose() {
+        TreeMap<String, String> loose = new TreeMap<>();
+        for (String name : Utils.plainFilenamesIn(_looseDir)) {
+            loose.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                    Utils.readContentsAsString(new File(_looseDir, name)));
+        }
+        return loose;
+    }
+
+    /**write CONTENTS to the loose file of BRANCH, renaming it into
+     * place so readers never see a partial file.
+     */
+    private void writeLoose(String branch, String contents) {
+        File tmp = new File(_metaDir, _looseDir.getName() + ".tmp");
+        Utils.writeContents(tmp, contents);
+        try {
+            Files.move(tmp.toPath(), looseFile(branch).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**return the loose file of BRANCH. the name is escaped so that
+     * branches like origin/master make plain files, and so that no
+     * branch name can be "." or "..".
+     */
+    private File looseFile(String branch) {
+        return new File(_looseDir, fileName(branch));
+    }
+
+    /**return BRANCH escaped into a plain file name.*/
+    static String fileName(String branch) {
+        return URLEncoder.encode(branch, StandardCharsets.UTF_8)
+                .replace(".", "%2E").replace("*", "%2A");
+    }
+
+    /**move the branches of LEGACY, a serialized map of every branch
+     * written by older versions, into a new packed file, and remove it.
+     * does nothing iff there is no such file.
+     */
+    private void migrate(File legacy) {
+        if (!legacy.isFile()) {
+            return;
+        }
+        lockOrError();
+        try {
+            if (!_packedFile.exists()) {
+                _looseDir.mkdir();
+                writePacked(new TreeMap<>(Utils.readLinkedHashMap(legacy)));
+            }
+            legacy.delete();
+        } finally {
+            _lock.delete();
+        }
+    }
+
+    /**take the lock, throwing GitletException iff another process
+     * holds it. it does not exit, since a server takes it too.
+     */
+    private void lockOrError() {
+        try {
+            if (_lock.createNewFile()) {
+                return;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        throw Utils.errorWithException("Another gitlet process is updating "
+                + "branches; if none is, delete %s.", _lock.getPath());
+    }
+
+    /**bytes before the offset table of the packed file.*/
+    private static final int HEADER = 4;
+
+    /**bytes per entry of the offset table.*/
+    private static final int OFFSET = 8;
+
+    /**most loose files kept before they are packed.*/
+    private static final int LOOSE_LIMIT = 64;
+
+    /**directory holding the metadata of the repository.*/
+    private final File _metaDir;
+
+    /**file holding the packed branches.*/
+    private final File _packedFile;
+
+    /**directory holding the loose files.*/
+    private final File _looseDir;
+
+    /**lock file held by every update.*/
+    private final File _lock;
+
+    /**log of the heads every branch has had.*/
+    private final Reflog _reflog;
+}
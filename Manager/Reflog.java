@@ -0,0 +1,245 @@
+package gitlet.Manager;
+
+import gitlet.Const;
+import gitlet.Utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**class keeping, for every branch, a log of the heads it has had.
+ * each branch has its own append-only file of records: old head, new
+ * head, time, and the operation that moved it, followed by the length
+ * of the record, so the file can be read backwards one record at a time.
+ * the log of a branch outlives the branch, so a deleted branch can be
+ * recovered too.
+ */
+public class Reflog {
+
+    /**the logs of the repository whose metadata is in METADIR.*/
+    public Reflog(File metaDir) {
+        _dir = new File(metaDir, Const.LOGS_DIR.getName());
+    }
+
+    /**return the logs of the current repository.*/
+    public static Reflog local() {
+        return new Reflog(Const.GITLET_META_DIR);
+    }
+
+    /**record that BRANCH moved from OLDHEAD to NEWHEAD because of
+     * REASON, of which only the first line, cut to MAX_REASON
+     * characters, is kept. either head may be null, for a created or
+     * deleted branch. costs one append, however long the log is.
+     * the log is only a record: failing to write it never fails the
+     * move of the branch.
+     */
+    void append(String branch, String oldHead, String newHead,
+                String reason) {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(record);
+            out.writeUTF(oldHead == null ? NONE : oldHead);
+            out.writeUTF(newHead == null ? NONE : newHead);
+            out.writeLong(System.currentTimeMillis());
+            out.writeUTF(summary(reason));
+            out.writeInt(record.size());
+            _dir.mkdir();
+            try (OutputStream file = Files.newOutputStream(
+                    logFile(branch).toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND)) {
+                record.writeTo(file);
+            }
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /**return the first line of REASON, cut to at most MAX_REASON
+     * characters without splitting a character in two, so it always
+     * fits the 64 KiB a record's string can hold.
+     */
+    private static String summary(String reason) {
+        int end = reason.indexOf('\n');
+        if (end < 0) {
+            end = reason.length();
+        }
+        if (reason.codePointCount(0, end) > MAX_REASON) {
+            end = reason.offsetByCodePoints(0, MAX_REASON);
+        }
+        return reason.substring(0, end);
+    }
+
+    /**return the entries of the log of BRANCH, newest first. entries
+     * are read from the end of the file as the iterator reaches them,
+     * so reading the newest few costs the same however long the log is.
+     */
+    public Iterator<Entry> newestFirst(String branch) {
+        return new Backwards(logFile(branch));
+    }
+
+    /**return every head any log names in an entry made at CUTOFF or
+     * later, in milliseconds since the epoch. a repository made before
+     * logs were kept has none.
+     */
+    List<String> headsSince(long cutoff) {
+        List<String> heads = new ArrayList<>();
+        if (!_dir.isDirectory()) {
+            return heads;
+        }
+        for (String name : Utils.plainFilenamesIn(_dir)) {
+            Iterator<Entry> entries = new Backwards(new File(_dir, name));
+            while (entries.hasNext()) {
+                Entry entry = entries.next();
+                if (entry.time() < cutoff) {
+                    break;
+                }
+                if (entry.oldHead() != null) {
+                    heads.add(entry.oldHead());
+                }
+                if (entry.newHead() != null) {
+                    heads.add(entry.newHead());
+                }
+            }
+        }
+        return heads;
+    }
+
+    /**drop every entry made before CUTOFF, in milliseconds since the
+     * epoch, deleting logs left empty. only called while holding the
+     * lock of the branches, so no append is lost.
+     */
+    void expire(long cutoff) throws IOException {
+        for (String name : Utils.plainFilenamesIn(_dir)) {
+            File log = new File(_dir, name);
+            long keepFrom = log.length();
+            Backwards entries = new Backwards(log);
+            while (entries.hasNext() && entries.next().time() >= cutoff) {
+                keepFrom = entries.position();
+            }
+            if (keepFrom == 0) {
+                continue;
+            } else if (keepFrom == log.length()) {
+                log.delete();
+                continue;
+            }
+            byte[] kept = new byte[(int) (log.length() - keepFrom)];
+            try (RandomAccessFile file = new RandomAccessFile(log, "r")) {
+                file.seek(keepFrom);
+                file.readFully(kept);
+            }
+            File tmp = new File(_dir.getParentFile(),
+                    _dir.getName() + ".tmp");
+            Utils.writeContents(tmp, (Object) kept);
+            Files.move(tmp.toPath(), log.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**return the log file of BRANCH.*/
+    private File logFile(String branch) {
+        return new File(_dir, RefStore.fileName(branch));
+    }
+
+    /**one entry of a log.*/
+    public static class Entry {
+        /**an entry for a move from OLDHEAD to NEWHEAD at TIME, in
+         * milliseconds since the epoch, because of REASON.*/
+        Entry(String oldHead, String newHead, long time, String reason) {
+            _oldHead = oldHead.equals(NONE) ? null : oldHead;
+            _newHead = newHead.equals(NONE) ? null : newHead;
+            _time = time;
+            _reason = reason;
+        }
+
+        /**return the head before the move, null for a created branch.*/
+        public String oldHead() {
+            return _oldHead;
+        }
+
+        /**return the head after the move, null for a deleted branch.*/
+        public String newHead() {
+            return _newHead;
+        }
+
+        /**return the time of the move, in milliseconds since the epoch.*/
+        public long time() {
+            return _time;
+        }
+
+        /**return the operation that made the move.*/
+        public String reason() {
+            return _reason;
+        }
+
+        /**head before the move.*/
+        private final String _oldHead;
+        /**head after the move.*/
+        private final String _newHead;
+        /**time of the move.*/
+        private final long _time;
+        /**operation that made the move.*/
+        private final String _reason;
+    }
+
+    /**iterator reading a log file from its end, one record at a time.*/
+    private static class Backwards implements Iterator<Entry> {
+        /**read LOG, which need not exist.*/
+        Backwards(File log) {
+            _log = log;
+            _position = log.length();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return _position > 0;
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try (RandomAccessFile file = new RandomAccessFile(_log, "r")) {
+                file.seek(_position - Integer.BYTES);
+                _position -= Integer.BYTES + file.readInt();
+                file.seek(_position);
+                String oldHead = file.readUTF();
+                String newHead = file.readUTF();
+                long time = file.readLong();
+                return new Entry(oldHead, newHead, time, file.readUTF());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /**return the offset of the last record returned.*/
+        long position() {
+            return _position;
+        }
+
+        /**file read.*/
+        private final File _log;
+        /**offset just past the next record to return.*/
+        private long _position;
+    }
+
+    /**most characters of a reason kept in a record.*/
+    private static final int MAX_REASON = 1024;
+
+    /**stands for a missing head in a record.*/
+    private static final String NONE = "";
+
+    /**directory holding the logs.*/
+    private final File _dir;
+}
@@ -2,132 +2,489 @@ package gitlet.Manager;
 
 import gitlet.Commit;
 import gitlet.Const;
+import gitlet.Events;
+import gitlet.GitletException;
 import gitlet.Utils;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
 
 /**class managing remote operations.
+ * a remote is another .gitlet directory, a bundle file, or a
+ * tcp://host:port address served by "gitlet serve"; objects travel
+ * between repositories as a single bundle stream.
  */
 public class RemoteManager {
 
     /**a new remote manager managing remote named REMOTENAME.
      */
-    public RemoteManager(String remoteName) {
+    public RemoteManager(String remoteName) throws IOException {
         _remoteName = remoteName;
         String remoteDir = _remoteRepoMap.get(remoteName);
         if (remoteDir == null) {
             Utils.error("A remote with that name does not exist.");
         }
+        if (remoteDir.startsWith(TransportManager.SCHEME)) {
+            _address = remoteDir.substring(TransportManager.SCHEME.length());
+            _remoteBranchMap = TransportManager.requestRefs(_address);
+            return;
+        }
         _remoteDir = new File(remoteDir);
         if (!_remoteDir.exists()) {
             Utils.error("Remote directory not found.");
         }
-        _remoteMetaDir = new File(_remoteDir, ".gitletMeta");
-        _remoteCommitMetaDir = new File(_remoteDir, ".commitMeta");
-        _remoteCommitDir = new File(_remoteCommitMetaDir, ".commits");
-        _remoteBlobMapDir = new File(_remoteCommitMetaDir, ".blobMapping");
-        _remoteBlobDir = new File(_remoteDir, ".blobs");
-        _remoteActiveBranchFile = new File(_remoteMetaDir, ".activeBranch");
-        _remoteActiveBranch = Utils.readObject(
-                _remoteActiveBranchFile, String.class);
-        _remoteBranchMapFile = new File(_remoteMetaDir, ".branchMAP");
-        _remoteBranchMap = Utils.readLinkedHashMap(_remoteBranchMapFile);
+        if (_remoteDir.isFile()) {
+            _remoteBranchMap = BundleManager.readRefs(_remoteDir);
+            return;
+        }
+        _remote = new ObjectStore(_remoteDir);
+        _remoteRefs = new RefStore(_remote.metaDir());
+    }
+
+    /**return the head of BRANCH on THIS remote, or null iff it has no
+     * such branch. a directory remote looks up the one branch instead
+     * of reading all of them.
+     */
+    private String remoteHead(String branch) {
+        return _remoteRefs != null ? _remoteRefs.get(branch)
+                : _remoteBranchMap.get(branch);
     }
 
-    /**pushes file to BRANCH of THIS remote.*/
+    /**pushes the active branch to BRANCH of THIS remote.
+     * only the commits, mappings and blobs the remote lacks are sent,
+     * then the remote ref is moved from its old head to ours.
+     * errors if the remote head is not an ancestor of our head.
+     */
     public void pushToRepo(String branch) throws IOException {
-        String remoteHead = _remoteBranchMap.get(branch);
-        if (remoteHead == null) {
-            _remoteBranchMap.put(branch,
-                    BranchManager.getActiveBranchHeadSHA());
+        if (_remote == null && _address == null) {
+            Utils.error("Cannot push to a bundle remote.");
+        }
+        Events.Transfer event = new Events.Transfer();
+        event.begin();
+        String remoteHead = remoteHead(branch);
+        String localHead = BranchManager.getActiveBranchHeadSHA();
+        if (remoteHead != null
+                && !CommitManager.isAncestor(remoteHead, localHead)) {
+            Utils.error("Please pull down remote changes before pushing.");
+        }
+        ObjectStore local = ObjectStore.local();
+        List<String> commits;
+        if (_address != null) {
+            commits = missingCommits(List.of(localHead),
+                    _remoteBranchMap.values(), local);
         } else {
-            tracePath(CommitManager.headCommit(),
-                    remoteHead, new ArrayList<>());
-            if (_commitPath == null) {
-                Utils.error("Please pull down remote changes before pushing.");
-            } else {
-                for (Commit commit : _commitPath) {
-                    File blob = commit.getCommitBlob();
-                    File remoteBlob =
-                            new File(_remoteCommitDir, commit.getShaVal());
-                    Utils.copyContents(blob, remoteBlob);
-                }
-                _remoteBranchMap.put(_remoteActiveBranch,
-                        CommitManager.headCommit().getShaVal());
+            commits = missingCommits(localHead, local, _remote);
+        }
+        for (String commitSHA : commits) {
+            if (CommitManager.isShallow(commitSHA)) {
+                Utils.error("Cannot push history cut off by a shallow "
+                        + "fetch; fetch with --deepen first.");
             }
         }
-        saveRemote();
+        if (_address != null) {
+            List<String> blobs = missingBlobs(commits, local, null);
+            ensureBlobs(blobs);
+            TransportManager.push(_address, branch, remoteHead, localHead,
+                    blobs, commits);
+            commitTransfer(event, "push", branch, commits.size(),
+                    blobs.size());
+            return;
+        }
+        List<String> blobs = missingBlobs(commits, local, _remote);
+        ensureBlobs(blobs);
+        transferObjects(blobs, commits, local, _remote);
+        updateRemoteRef(branch, remoteHead, localHead);
+        commitTransfer(event, "push", branch, commits.size(), blobs.size());
+    }
+
+    /**fill in and commit EVENT, a transfer in DIRECTION of BRANCH of
+     * COMMITS commits and BLOBS blobs, iff it is enabled.
+     */
+    private void commitTransfer(Events.Transfer event, String direction,
+                                String branch, int commits, int blobs) {
+        if (event.shouldCommit()) {
+            event.direction = direction;
+            event.remote = _remoteName;
+            event.branch = branch;
+            event.commits = commits;
+            event.blobs = blobs;
+            event.commit();
+        }
     }
 
+    /**move BRANCH on the remote from OLDHEAD to NEWHEAD, erroring
+     * if it no longer points at OLDHEAD or another process is updating
+     * the remote's branches.
+     * @param oldHead head we negotiated against, null for a new branch.
+     */
+    private void updateRemoteRef(String branch, String oldHead,
+                                 String newHead) {
+        boolean swapped = false;
+        try {
+            swapped = _remoteRefs.compareAndSwap(branch, oldHead, newHead,
+                    "push");
+        } catch (GitletException excp) {
+            Utils.error(REF_LOCKED);
+        }
+        if (!swapped) {
+            Utils.error(REF_CHANGED);
+        }
+    }
 
     /**copies all commits and blobs from the given BRANCH in
      * the remote repo that are not in the current repo.
      * create a new branch [remote name]/[remote branch name]
      * if it does not exist already.
+     * over tcp, the only head offered as had is that branch's, or the
+     * current head before the first fetch, so the request does not grow
+     * with the number of local branches.
+     * @param depth iff positive, only fetch the last DEPTH commits of
+     *              BRANCH and record where history was cut off.
+     * @param deepen iff positive, also fetch DEEPEN more commits behind
+     *               every shallow boundary commit.
+     * @param blobLimit iff not negative, blobs larger than BLOBLIMIT bytes
+     *                  stay on the remote and are fetched when needed.
      * */
-    public void fetchFromRepo(String branch) throws IOException {
-        if (!_remoteBranchMap.containsKey(branch)) {
+    public void fetchFromRepo(String branch, int depth, int deepen,
+                              long blobLimit) throws IOException {
+        String remoteHead = remoteHead(branch);
+        if (remoteHead == null) {
             Utils.error("That remote does not have that branch.");
         }
-        getAllRepo();
+        Events.Transfer event = new Events.Transfer();
+        event.begin();
+        int commitNum = 0;
+        int blobNum = 0;
+        ObjectStore local = ObjectStore.local();
+        if (_address != null) {
+            String have = BranchManager.getBranchHeadSHA(
+                    _remoteName + "/" + branch);
+            if (have == null) {
+                have = BranchManager.getActiveBranchHeadSHA();
+            }
+            List<String> commits = new ArrayList<>();
+            for (String promised : TransportManager.fetch(_address,
+                    remoteHead, List.of(have), blobLimit, depth, deepen,
+                    commits)) {
+                _promisedBlobs.put(promised, _remoteName);
+            }
+            commitNum = commits.size();
+            updateShallow(shallowBoundary(commits, local), local);
+        } else if (_remote == null) {
+            if (depth > 0 || deepen > 0 || blobLimit >= 0) {
+                Utils.error("Cannot fetch partially from a bundle remote.");
+            }
+            try (InputStream in = new FileInputStream(_remoteDir)) {
+                BundleManager.readBundle(in, local);
+            }
+        } else {
+            List<String> commits = missingCommits(
+                    List.of(remoteHead), _remote, local, depth);
+            if (deepen > 0) {
+                for (String commitSHA : missingCommits(shallowParents(),
+                        _remote, local, deepen)) {
+                    if (!commits.contains(commitSHA)) {
+                        commits.add(commitSHA);
+                    }
+                }
+            }
+            HashSet<String> boundary = shallowBoundary(commits, local);
+            List<String> blobs = missingBlobs(commits, _remote, local);
+            if (blobLimit >= 0) {
+                blobs = promiseLargeBlobs(blobs, blobLimit);
+            }
+            transferObjects(blobs, commits, _remote, local);
+            commitNum = commits.size();
+            blobNum = blobs.size();
+            updateShallow(boundary, local);
+        }
         String newBranchName = _remoteName + "/" + branch;
-        BranchManager.newBranch(newBranchName, _remoteBranchMap.get(branch));
+        BranchManager.newBranch(newBranchName, remoteHead,
+                "fetch: " + _remoteName + " " + branch);
+        commitTransfer(event, "fetch", branch, commitNum, blobNum);
+    }
+
+    /**fetch BRANCH in full; see fetchFromRepo(String, int, int, long).*/
+    public void fetchFromRepo(String branch) throws IOException {
+        fetchFromRepo(branch, 0, 0, -1);
     }
 
-    /**simply downloads the entire remote repository to local.
+    /**record every blob in BLOBS larger than LIMIT bytes as promised by
+     * this remote instead of fetching it.
+     * @return the blobs that should be fetched now.
      */
-    private void getAllRepo() throws IOException {
-        Utils.copyAll(_remoteCommitDir, Const.COMMIT_DIR);
-        Utils.copyAll(_remoteBlobMapDir, Const.BLOB_MAP_DIR);
-        Utils.copyAll(_remoteBlobDir, Const.BLOB_DIR);
+    private List<String> promiseLargeBlobs(List<String> blobs, long limit) {
+        List<String> toFetch = new ArrayList<>();
+        for (String blobSHA : blobs) {
+            if (new File(_remote.blobDir(), blobSHA).length() > limit) {
+                _promisedBlobs.put(blobSHA, _remoteName);
+            } else {
+                toFetch.add(blobSHA);
+            }
+        }
+        return toFetch;
     }
 
-    /**pull files from BRANCH in the remote repository. */
-    public void pullFromRepo(String branch) throws IOException {
-        fetchFromRepo(branch);
-        String newBranchName = _remoteName + "/" + branch;
-        MergeManager merger = new MergeManager(BranchManager.activeBranch(),
-                newBranchName);
-        merger.merge();
+    /**make sure every blob in BLOBSHAS is present locally. blobs left
+     * behind by a partial fetch are pulled from the remote that promised
+     * them, in one transfer per remote, so callers that will need many
+     * blobs should pass them all at once. the promises left are saved
+     * straight away, as commands such as a fast-forward merge exit
+     * without saving.
+     */
+    public static void ensureBlobs(Collection<String> blobSHAs)
+            throws IOException {
+        if (_promisedBlobs.isEmpty()) {
+            return;
+        }
+        ObjectStore local = ObjectStore.local();
+        LinkedHashMap<String, List<String>> byRemote = new LinkedHashMap<>();
+        for (String blobSHA : blobSHAs) {
+            String remote = _promisedBlobs.get(blobSHA);
+            if (remote != null && !local.hasBlob(blobSHA)) {
+                byRemote.computeIfAbsent(remote, r -> new ArrayList<>())
+                        .add(blobSHA);
+            }
+        }
+        for (Map.Entry<String, List<String>> entry : byRemote.entrySet()) {
+            RemoteManager manager = new RemoteManager(entry.getKey());
+            List<String> blobs = new ArrayList<>(
+                    new LinkedHashSet<>(entry.getValue()));
+            if (manager._address != null) {
+                TransportManager.fetchBlobs(manager._address, blobs);
+            } else if (manager._remote != null) {
+                transferObjects(blobs, List.of(), manager._remote, local);
+            } else {
+                Utils.error("Promised blobs cannot come from a bundle remote.");
+            }
+            _promisedBlobs.keySet().removeAll(blobs);
+            savePromisedToFile();
+        }
     }
 
-    /**list of commits that leads from local branch head to
-     * remote branch head, including local branch head.
+    /**add BOUNDARY, commits fetched without some parent, to the local
+     * shallow boundary, and drop from it every commit whose parents
+     * are all in LOCAL by now.
      */
-    private ArrayList<Commit> _commitPath;
+    private void updateShallow(HashSet<String> boundary,
+                               ObjectStore local) {
+        CommitManager.shallowCommits().addAll(boundary);
+        CommitManager.shallowCommits().removeIf(commitSHA ->
+                shallowBoundary(List.of(commitSHA), local).isEmpty());
+    }
 
-    /**recursively back trace a commit's head commits
-     * util it reaches a commit with right SHA value.
-     * when it reaches the right commit, path of commits is saved
-     * to _commitPath.
-     * @param head beginning commit of the trace.
-     * @param targetSHA SHA value of the traget commit.
-     * @param path list of commits leading to the beginning of the trace.
-     * */
-    private void tracePath(Commit head, String targetSHA,
-                              ArrayList<Commit> path) {
-        path.add(head);
-        if (targetSHA.equals(head.getParentSHA())
-                || targetSHA.equals(head.getMergeParentSHA())) {
-            _commitPath = path;
-        } else {
-            if (head.hasParent()) {
-                tracePath(head.getParentCommit(), targetSHA, path);
+    /**return the parents of the local shallow boundary commits,
+     * which are exactly the commits a deepening fetch starts from.
+     */
+    static List<String> shallowParents() {
+        List<String> parents = new ArrayList<>();
+        for (String commitSHA : CommitManager.shallowCommits()) {
+            Commit commit = CommitManager.getCommit(commitSHA);
+            if (commit.getParentSHA() != null) {
+                parents.add(commit.getParentSHA());
+            }
+            if (commit.getMergeParentSHA() != null) {
+                parents.add(commit.getMergeParentSHA());
+            }
+        }
+        return parents;
+    }
+
+    /**return the commits among COMMITS that have a parent which is
+     * neither in COMMITS nor already in STORE; read from STORE iff the
+     * commit is there, from this remote otherwise. a fetch makes these
+     * shallow whether or not it was asked to: a shallow remote sends
+     * none of its missing history, and a remote told a head we have
+     * takes us to have its history, which our shallow boundary may
+     * cut off.
+     */
+    private HashSet<String> shallowBoundary(List<String> commits,
+                                            ObjectStore store) {
+        HashSet<String> boundary = new HashSet<>();
+        HashSet<String> incoming = new HashSet<>(commits);
+        for (String commitSHA : commits) {
+            Commit commit = store.hasCommit(commitSHA)
+                    ? store.commit(commitSHA) : _remote.commit(commitSHA);
+            for (String parent : new String[] {
+                commit.getParentSHA(), commit.getMergeParentSHA()}) {
+                if (parent != null && !incoming.contains(parent)
+                        && !store.hasCommit(parent)) {
+                    boundary.add(commitSHA);
+                }
             }
-            if (head.hasMergeParent()) {
-                tracePath(head.getMergeParentCommit(), targetSHA, path);
+        }
+        return boundary;
+    }
+
+    /**sends BLOBS, and the mappings and commits named COMMITS, from FROM
+     * to TO as one bundle stream, written on a transfer thread while
+     * this one reads it. the writer is waited for before returning.
+     * @throws IOException iff the writer failed, with its error; the
+     *         truncated stream it leaves is not reported as corrupt.
+     */
+    static void transferObjects(List<String> blobs,
+                                        List<String> commits,
+                                        ObjectStore from, ObjectStore to)
+            throws IOException {
+        if (blobs.isEmpty() && commits.isEmpty()) {
+            return;
+        }
+        PipedInputStream in = new PipedInputStream(PIPE_SIZE);
+        PipedOutputStream out = new PipedOutputStream(in);
+        AtomicBoolean abandoned = new AtomicBoolean();
+        Future<Void> producer = TransferPipeline.start(() -> {
+            try {
+                BundleManager.writeBundle(out, new LinkedHashMap<>(),
+                        from, blobs, commits);
+            } catch (IOException excp) {
+                if (!abandoned.get()) {
+                    throw excp;
+                }
+            } finally {
+                out.close();
             }
+            return null;
+        });
+        IOException failure = null;
+        try {
+            BundleManager.tryReadBundle(in, to);
+        } catch (IOException excp) {
+            failure = excp;
+            abandoned.set(true);
+        } finally {
+            in.close();
+        }
+        TransferPipeline.await(producer);
+        if (failure != null) {
+            Utils.error(failure.getMessage());
+        }
+    }
+
+    /**walk back from HEADSHA through both parents of every commit in
+     * FROM, stopping at commits TO already has and at the edge of FROM's
+     * history, past which a shallow FROM has nothing to send.
+     * a commit TO has is taken to come with its ancestors, so the walk
+     * only visits history the other side is missing. that does not hold
+     * past TO's shallow boundary, but TO does not want that history: the
+     * commits it gets without their parents are found by
+     * shallowBoundary and become shallow there.
+     * @param to the receiving store, null iff it has nothing.
+     * @return SHA-1 values of the missing commits, newest first.
+     */
+    static List<String> missingCommits(String headSHA, ObjectStore from,
+                                       ObjectStore to) {
+        return missingCommits(List.of(headSHA), from, to, 0);
+    }
+
+    /**walk back from every commit in STARTS as missingCommits does,
+     * but no further than DEPTH commits from where it started.
+     * @param depth maximum number of generations, unlimited iff 0.
+     * @return SHA-1 values of the missing commits, nearest first.
+     */
+    static List<String> missingCommits(List<String> starts, ObjectStore from,
+                                       ObjectStore to, int depth) {
+        if (to == null) {
+            return missingCommits(starts, from, commitSHA -> false, depth);
         }
+        return missingCommits(starts, from, to::hasCommit, depth);
     }
 
-    /**save changes made to remote to metadata blobs. */
-    private void saveRemote() {
-        Utils.writeObject(_remoteActiveBranchFile, _remoteActiveBranch);
-        Utils.writeObject(_remoteBranchMapFile, _remoteBranchMap);
+    /**walk back from every commit in STARTS as missingCommits does,
+     * treating the commits PRESENT accepts as the ones the other side has.
+     */
+    static List<String> missingCommits(List<String> starts, ObjectStore from,
+                                       Predicate<String> present,
+                                       int depth) {
+        List<String> missing = new ArrayList<>();
+        HashSet<String> visited = new HashSet<>();
+        ArrayDeque<String> toVisit = new ArrayDeque<>(starts);
+        ArrayDeque<Integer> generations = new ArrayDeque<>();
+        for (int i = 0; i < starts.size(); i++) {
+            generations.add(1);
+        }
+        while (!toVisit.isEmpty()) {
+            String commitSHA = toVisit.poll();
+            int generation = generations.poll();
+            if (!visited.add(commitSHA) || present.test(commitSHA)
+                    || !from.hasCommit(commitSHA)) {
+                continue;
+            }
+            missing.add(commitSHA);
+            if (depth > 0 && generation >= depth) {
+                continue;
+            }
+            Commit commit = from.commit(commitSHA);
+            if (commit.hasParent()) {
+                toVisit.add(commit.getParentSHA());
+                generations.add(generation + 1);
+            }
+            if (commit.hasMergeParent()) {
+                toVisit.add(commit.getMergeParentSHA());
+                generations.add(generation + 1);
+            }
+        }
+        return missing;
     }
 
+    /**return the commits in STORE reachable from WANTS but not from
+     * HAVES, heads the other side has, newest first. both sides are
+     * walked together by commit time, and the walk ends where the want
+     * side has run into the have side, so it costs only the history the
+     * other side is missing, however long the whole history is.
+     * heads STORE does not have are ignored.
+     */
+    static List<String> missingCommits(List<String> wants,
+                                       Collection<String> haves,
+                                       ObjectStore store) {
+        List<String> missing = new ArrayList<>();
+        RevisionWalk walk = new RevisionWalk(store, wants, haves, false,
+                Long.MIN_VALUE);
+        while (walk.hasNext()) {
+            missing.add(walk.next().getShaVal());
+        }
+        return missing;
+    }
+
+    /**return SHA-1 values of all blobs referenced by the mappings of
+     * COMMITS, read from FROM, that TO does not have.
+     * @param to the receiving store, null iff it has nothing.
+     */
+    static List<String> missingBlobs(List<String> commits, ObjectStore from,
+                                     ObjectStore to) {
+        LinkedHashSet<String> missing = new LinkedHashSet<>();
+        for (String commitSHA : commits) {
+            for (String blobSHA : from.mapping(commitSHA).values()) {
+                if (!missing.contains(blobSHA)
+                        && (to == null || !to.hasBlob(blobSHA))) {
+                    missing.add(blobSHA);
+                }
+            }
+        }
+        return new ArrayList<>(missing);
+    }
+
+    /**pull files from BRANCH in the remote repository. */
+    public void pullFromRepo(String branch) throws IOException {
+        fetchFromRepo(branch);
+        String newBranchName = _remoteName + "/" + branch;
+        MergeManager merger = new MergeManager(BranchManager.activeBranch(),
+                newBranchName);
+        merger.merge();
+    }
 
     /**stores all remote repositories.
      * maps repository name to string representation of repository's
@@ -146,6 +503,30 @@ public class RemoteManager {
     /**read remoteRepoMap from its metadata blob.*/
     public static void readRemoteMap() {
         _remoteRepoMap = Utils.readLinkedHashMap(Const.REMOTE_REPO_FILE);
+        if (Const.PROMISED_FILE.exists()) {
+            _promisedBlobs = Utils.readLinkedHashMap(Const.PROMISED_FILE);
+        }
+    }
+
+    /**write the promised blobs to their file, removing the file once
+     * no blob is promised any more.
+     */
+    public static void savePromisedToFile() {
+        if (!_promisedBlobs.isEmpty()) {
+            Utils.writeObject(Const.PROMISED_FILE, _promisedBlobs);
+        } else if (Const.PROMISED_FILE.exists()) {
+            Const.PROMISED_FILE.delete();
+        }
+    }
+
+    /**blobs left on a remote by a partial fetch.
+     * mapping: blob SHA-1 value --> name of the remote promising it.*/
+    private static LinkedHashMap<String, String> _promisedBlobs =
+            new LinkedHashMap<>();
+
+    /**return mapping of promised blobs to the remotes promising them.*/
+    public static LinkedHashMap<String, String> promisedBlobs() {
+        return _promisedBlobs;
     }
 
     /**add remote to this gitlet's remote mapping for future use.
@@ -170,36 +551,33 @@ public class RemoteManager {
         }
     }
 
-    /** remote equivalent of GITLET_DIR.*/
+    /**location of the remote, a .gitlet directory or a bundle file.*/
     private File _remoteDir;
 
-    /** remote equivalent of BLOB_DIR.*/
-    private File _remoteBlobDir;
-
-    /** remote equivalent of GITLET_META_DIR.*/
-    private File _remoteMetaDir;
+    /**host:port of the remote iff it is served over tcp.*/
+    private String _address;
 
-    /**remote equivalent of ACTIVE_BRANCH_FILE. */
-    private File _remoteActiveBranchFile;
+    /**object store of the remote, null iff the remote is a bundle.*/
+    private ObjectStore _remote;
 
-    /**remote equivalent of BRANCH_MAP_FILE. */
-    private File _remoteBranchMapFile;
+    /**branches of the remote, iff it is a .gitlet directory. */
+    private RefStore _remoteRefs;
 
-    /**remote equivalent of COMMIT_META_DIR. */
-    private File _remoteCommitMetaDir;
-
-    /**remote equivalent of COMMIT_DIR. */
-    private File _remoteCommitDir;
-
-    /**remote equivalent of BLOB_MAP_DIR. */
-    private File _remoteBlobMapDir;
-
-    /**remote equivalent of BRANCH_MAP_FILE. */
+    /**every branch of a tcp or bundle remote mapped to its head. */
     private LinkedHashMap<String, String> _remoteBranchMap;
 
-    /**remote equivalent of ACTIVE_BRANCH_FILE. */
-    private String _remoteActiveBranch;
-
     /**name of remote manager currently manages.*/
     private String _remoteName;
+
+    /**error when a remote ref moved while we were pushing.*/
+    static final String REF_CHANGED = "Remote branch has changed; "
+            + "pull down remote changes before pushing.";
+
+    /**error when another process held the remote's branches while we
+     * were pushing.*/
+    static final String REF_LOCKED = "Remote branches are locked by "
+            + "another update; try pushing again.";
+
+    /**bytes buffered between the two ends of a transfer.*/
+    private static final int PIPE_SIZE = 1 << 20;
 }
@@ -0,0 +1,200 @@
+package gitlet.Manager;
+
+import gitlet.Commit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**class walking the history of some commits, newest first, leaving out
+ * the history of others.
+ * commits are read one at a time as the walk reaches them, so a caller
+ * that stops early never reads the rest of the history. the commits to
+ * leave out, the hidden ones, are walked alongside in commit time order
+ * and mark their parents hidden as they go, so every hidden commit newer
+ * than the next one returned has been reached before it is returned. the
+ * walk ends once only hidden commits are left to walk, so it costs the
+ * history since the two sides met, not the whole history.
+ */
+class RevisionWalk implements Iterator<Commit> {
+
+    /**walk the history in STORE of the commits STARTS, leaving out the
+     * commits reachable from those in HIDDEN that STORE has, and ending
+     * at the first commit older than SINCE.
+     * @param firstParent iff true, only first parents of the commits
+     *                    returned are walked; hidden history is always
+     *                    walked through both parents.
+     * @param since milliseconds since the epoch, or Long.MIN_VALUE.
+     */
+    RevisionWalk(ObjectStore store, Collection<String> starts,
+                 Collection<String> hidden, boolean firstParent,
+                 long since) {
+        _store = store;
+        _firstParent = firstParent;
+        _since = since;
+        for (String commitSHA : hidden) {
+            if (store.hasCommit(commitSHA)) {
+                hide(commitSHA);
+            }
+        }
+        for (String commitSHA : starts) {
+            push(commitSHA, false);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (_next == null && !_queued.isEmpty()) {
+            Entry entry = _queue.poll();
+            boolean hidden = entry._hidden;
+            if ((!hidden && _queued.remove(entry._sha) == null)
+                    || !_walked.add(entry._sha)) {
+                continue;
+            }
+            Commit commit = entry._commit;
+            List<String> parents = new ArrayList<>();
+            if (commit.hasParent()) {
+                parents.add(commit.getParentSHA());
+            }
+            if (commit.hasMergeParent() && (hidden || !_firstParent)) {
+                parents.add(commit.getMergeParentSHA());
+            }
+            _parents.put(entry._sha, parents);
+            if (hidden) {
+                for (String parentSHA : parents) {
+                    hide(parentSHA);
+                }
+            } else if (commit.getTimeMillis() < _since) {
+                _queued.clear();
+            } else {
+                for (String parentSHA : parents) {
+                    push(parentSHA, false);
+                }
+                _next = commit;
+            }
+        }
+        return _next != null;
+    }
+
+    @Override
+    public Commit next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Commit commit = _next;
+        _next = null;
+        return commit;
+    }
+
+    /**queue commit COMMITSHA to be walked as HIDDEN or not, unless it
+     * already is or the store does not have it, as past a shallow
+     * boundary.
+     */
+    private void push(String commitSHA, boolean hidden) {
+        if (_walked.contains(commitSHA) || !_store.hasCommit(commitSHA)) {
+            return;
+        }
+        if (!hidden && (_hidden.contains(commitSHA)
+                || _queued.containsKey(commitSHA))) {
+            return;
+        }
+        Commit commit = _store.commit(commitSHA);
+        if (!hidden) {
+            _queued.put(commitSHA, commit);
+        }
+        _queue.add(new Entry(commitSHA, commit, hidden, _order++));
+    }
+
+    /**mark commit COMMITSHA and, iff it has already been walked, the
+     * commits behind it that were walked too, as hidden.
+     */
+    private void hide(String commitSHA) {
+        List<String> toHide = new ArrayList<>(List.of(commitSHA));
+        while (!toHide.isEmpty()) {
+            String sha = toHide.remove(toHide.size() - 1);
+            if (!_hidden.add(sha)) {
+                continue;
+            }
+            Commit queued = _queued.remove(sha);
+            if (_walked.contains(sha)) {
+                toHide.addAll(_parents.get(sha));
+            } else if (queued != null) {
+                _queue.add(new Entry(sha, queued, true, _order++));
+            } else {
+                push(sha, true);
+            }
+        }
+    }
+
+    /**a commit waiting to be walked.*/
+    private static class Entry {
+
+        /**commit COMMIT, SHA-1 value SHA, to be walked as HIDDEN or not,
+         * the ORDERth commit queued.
+         */
+        Entry(String sha, Commit commit, boolean hidden, long order) {
+            _sha = sha;
+            _commit = commit;
+            _hidden = hidden;
+            _order = order;
+        }
+
+        /**SHA-1 value of the commit.*/
+        private final String _sha;
+        /**the commit.*/
+        private final Commit _commit;
+        /**iff the commit was hidden when queued.*/
+        private final boolean _hidden;
+        /**number of commits queued before this one.*/
+        private final long _order;
+    }
+
+    /**newest commits first; of commits made at the same time, hidden
+     * ones first, so a parent is never walked before a hidden child,
+     * then the one queued first.
+     */
+    private static final Comparator<Entry> NEWEST_FIRST =
+            Comparator.comparingLong((Entry entry) ->
+                    -entry._commit.getTimeMillis())
+                    .thenComparing(entry -> !entry._hidden)
+                    .thenComparingLong(entry -> entry._order);
+
+    /**store the commits are read from.*/
+    private final ObjectStore _store;
+
+    /**iff only first parents of returned commits are walked.*/
+    private final boolean _firstParent;
+
+    /**time the walk stops before.*/
+    private final long _since;
+
+    /**commits waiting to be walked.*/
+    private final PriorityQueue<Entry> _queue =
+            new PriorityQueue<>(NEWEST_FIRST);
+
+    /**commits queued to be returned, and not hidden since --> the
+     * commits themselves, so hiding one does not read it again.
+     */
+    private final HashMap<String, Commit> _queued = new HashMap<>();
+
+    /**commits known to be hidden.*/
+    private final HashSet<String> _hidden = new HashSet<>();
+
+    /**commits walked.*/
+    private final HashSet<String> _walked = new HashSet<>();
+
+    /**commit walked --> its parents that were queued.*/
+    private final HashMap<String, List<String>> _parents = new HashMap<>();
+
+    /**number of commits queued so far.*/
+    private long _order;
+
+    /**commit next returns, iff already read.*/
+    private Commit _next;
+}
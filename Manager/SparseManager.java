@@ -0,0 +1,142 @@
+package gitlet.Manager;
+
+import gitlet.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static gitlet.Const.CWD;
+import static gitlet.Const.SPARSE_FILE;
+
+/**manager class of sparse checkouts, where only the files matching
+ * some glob patterns, such as *.java or src-*, are in the working
+ * directory. the patterns are kept in SPARSE_FILE, one per line, and
+ * no file means every file matches. checkout, reset and merge only
+ * write matching files, status ignores the rest, and commits carry
+ * the rest over from their parent unchanged.
+ */
+public class SparseManager {
+
+    /**return true iff FILENAME is in the sparse checkout.*/
+    public static boolean matches(String fileName) {
+        return matches(fileName, matchers());
+    }
+
+    /**return true iff FILENAME matches one of MATCHERS, or there are
+     * none.*/
+    private static boolean matches(String fileName,
+                                   List<PathMatcher> matchers) {
+        if (matchers.isEmpty()) {
+            return true;
+        }
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(Paths.get(fileName))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**make PATTERNS the patterns of the sparse checkout, or check out
+     * every file iff PATTERNS is empty. files of the head commit that
+     * now match are written, and those that no longer do are deleted.
+     * errors if anything is staged, or if a file to delete has changes
+     * that are not committed, before changing anything.
+     */
+    public static void set(List<String> patterns) throws IOException {
+        if (!StageManager.isStageEmpty()) {
+            Utils.error("You have uncommitted changes.");
+        }
+        List<PathMatcher> newMatchers = compile(patterns);
+        List<String> toDelete = new ArrayList<>();
+        LinkedHashMap<String, String> toWrite = new LinkedHashMap<>();
+        LinkedHashMap<String, String> mapping =
+                CommitManager.headCommit().getBlobMapping();
+        for (Map.Entry<String, String> entry : mapping.entrySet()) {
+            String fileName = entry.getKey();
+            File file = new File(CWD, fileName);
+            boolean matched = matches(fileName, matchers());
+            boolean matching = matches(fileName, newMatchers);
+            if (matched && !matching && file.exists()) {
+                if (!Utils.sha1(file).equals(entry.getValue())) {
+                    Utils.error(fileName + " has uncommitted changes; "
+                            + "commit or discard them first.");
+                }
+                toDelete.add(fileName);
+            } else if (matching && !file.exists()) {
+                toWrite.put(fileName, entry.getValue());
+            }
+        }
+        if (patterns.isEmpty()) {
+            SPARSE_FILE.delete();
+        } else {
+            Utils.writeContents(SPARSE_FILE,
+                    String.join("\n", patterns) + "\n");
+        }
+        _matchers = newMatchers;
+        RemoteManager.ensureBlobs(toWrite.values());
+        for (String fileName : toWrite.keySet()) {
+            CheckoutManager.copyBlob(fileName, toWrite);
+        }
+        for (String fileName : toDelete) {
+            Utils.cwdDel(fileName);
+        }
+    }
+
+    /**print the patterns of the sparse checkout, one per line.*/
+    public static void list() {
+        for (String pattern : patterns()) {
+            System.out.println(pattern);
+        }
+    }
+
+    /**return the patterns of the sparse checkout, empty iff every file
+     * is checked out.
+     */
+    private static List<String> patterns() {
+        List<String> patterns = new ArrayList<>();
+        if (SPARSE_FILE.exists()) {
+            for (String line
+                    : Utils.readContentsAsString(SPARSE_FILE).split("\n")) {
+                if (!line.isBlank()) {
+                    patterns.add(line.strip());
+                }
+            }
+        }
+        return patterns;
+    }
+
+    /**return matchers of the patterns, read once per command.*/
+    private static List<PathMatcher> matchers() {
+        if (_matchers == null) {
+            _matchers = compile(patterns());
+        }
+        return _matchers;
+    }
+
+    /**return matchers of the glob PATTERNS, erroring iff one is not a
+     * valid glob.
+     */
+    private static List<PathMatcher> compile(List<String> patterns) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        for (String pattern : patterns) {
+            try {
+                matchers.add(FileSystems.getDefault()
+                        .getPathMatcher("glob:" + pattern));
+            } catch (IllegalArgumentException excp) {
+                Utils.error("Invalid pattern: " + pattern);
+            }
+        }
+        return matchers;
+    }
+
+    /**matchers of the patterns, iff already read.*/
+    private static List<PathMatcher> _matchers;
+}
@@ -4,33 +4,144 @@ import gitlet.Utils;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 import static gitlet.Const.*;
 /**helper class to process staging and unstaging of files. */
 public class StageManager {
 
     /**adds FILENAME file to the addition stage.
-     * copy it to .gitlet/.stagedAdd as a blob named after FILENAME's SHA-1,
-     * and register it to ADDSTSGMAP
+     * hash it first; a file unchanged from the head commit is only
+     * unstaged, and any other is stored in the object store as a blob
+     * named after its SHA-1 unless already there, and the name is
+     * registered to ADDSTAGEMAP. the stage only ever records names;
+     * blobs nothing ends up committing are left for gc.
      */
     public static void stageAdd(String fileName) throws IOException {
         File orgFile = new File(CWD, fileName);
         if (!orgFile.exists()) {
             Utils.error("File does not exist.");
         }
-        String blobHash = Utils.sha1(orgFile);
-        File blobToStage = new File(ADD_BLOB_DIR, blobHash);
+        stageBlob(fileName, storeBlob(orgFile, FsMonitor.knownHash(fileName),
+                headMapping().get(fileName)));
+    }
+    /**stage FILENAME for addition as the existing blob BLOBHASH,
+     * without reading the working directory. used by merges for files
+     * outside a sparse checkout.
+     */
+    public static void stageBlob(String fileName, String blobHash) {
         unstageFromRm(fileName);
-        LinkedHashMap currMap = CommitManager.headCommit().getBlobMapping();
-        if (currMap.containsKey(fileName)
-                && currMap.get(fileName).equals(blobHash)) {
+        if (blobHash.equals(headMapping().get(fileName))) {
             unstageFromAdd(fileName);
             return;
         }
-        Utils.copyContents(orgFile, blobToStage);
         _addStageMap.put(fileName, blobHash);
     }
+    /**stage every file of FILENAMES for addition, as stageAdd would.
+     * the head mapping is read once, the files are hashed and, unless
+     * unchanged from the head commit or already stored, copied into the
+     * object store in parallel, and the stage is only updated once every
+     * blob is stored. a file a file system monitor knows is unchanged
+     * since it was hashed is not hashed again.
+     */
+    public static void stageAll(Collection<String> fileNames)
+            throws IOException {
+        for (String fileName : fileNames) {
+            if (!new File(CWD, fileName).isFile()) {
+                Utils.error("File does not exist.");
+            }
+        }
+        HashMap<String, String> head = headMapping();
+        HashMap<String, String> blobHashes = new HashMap<>();
+        TransferPipeline<String[]> pipeline = new TransferPipeline<>(
+                staged -> blobHashes.put(staged[0], staged[1]));
+        for (String fileName : fileNames) {
+            File file = new File(CWD, fileName);
+            String knownHash = FsMonitor.knownHash(fileName);
+            String headHash = head.get(fileName);
+            pipeline.submit(() -> new String[] {
+                fileName, storeBlob(file, knownHash, headHash)
+            });
+        }
+        pipeline.drain();
+        for (String fileName : fileNames) {
+            stageBlob(fileName, blobHashes.get(fileName));
+        }
+    }
+
+    /**return the SHA-1 hash of FILE, hashed unless KNOWNHASH is not
+     * null, and store it as a blob unless that hash is HEADHASH, its
+     * blob in the head commit, or the blob is already stored.
+     */
+    private static String storeBlob(File file, String knownHash,
+                                    String headHash) {
+        String blobHash = knownHash != null ? knownHash : Utils.sha1(file);
+        if (blobHash.equals(headHash)) {
+            return blobHash;
+        }
+        return Utils.writeBlob(file, BLOB_DIR, blobHash);
+    }
+
+    /**return the files in CWD that PATHS name, in order and without
+     * repeats. a path is a file name, "." for every file, or a glob
+     * such as *.txt. in a sparse checkout, only matching files are
+     * returned, and a file name outside it is an error, as is a glob
+     * matching no file or not a valid glob.
+     */
+    public static Set<String> filesNamed(List<String> paths) {
+        LinkedHashSet<String> fileNames = new LinkedHashSet<>();
+        for (String path : paths) {
+            if (!path.equals(".") && !isGlob(path)) {
+                if (!SparseManager.matches(path)) {
+                    Utils.error("File is outside the sparse checkout.");
+                }
+                fileNames.add(path);
+                continue;
+            }
+            PathMatcher matcher = null;
+            try {
+                if (!path.equals(".")) {
+                    matcher = FileSystems.getDefault()
+                            .getPathMatcher("glob:" + path);
+                }
+            } catch (IllegalArgumentException excp) {
+                Utils.error("Invalid pattern: " + path);
+            }
+            boolean matched = false;
+            for (String fileName : FsMonitor.cwdFiles()) {
+                if (matcher == null || matcher.matches(Paths.get(fileName))) {
+                    matched = true;
+                    if (SparseManager.matches(fileName)) {
+                        fileNames.add(fileName);
+                    }
+                }
+            }
+            if (!matched && matcher != null) {
+                Utils.error("File does not exist.");
+            }
+        }
+        return fileNames;
+    }
+
+    /**return true iff PATH has any of the special characters of a glob.
+     */
+    private static boolean isGlob(String path) {
+        for (char c : "*?[{".toCharArray()) {
+            if (path.indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /** stage FILENAME file to be removed.
      * 1. unstage file iff the file is staged for add.
      * 2. iff the file is tracked, stage for removal
@@ -42,7 +153,7 @@ public class StageManager {
             unstageFromAdd(fileName);
             opSuccess = true;
         }
-        if (CommitManager.headCommit().getBlobMapping().containsKey(fileName)) {
+        if (headMapping().containsKey(fileName)) {
             Utils.cwdDel(fileName);
             _removeStageMap.put(fileName, "placeholder");
             opSuccess = true;
@@ -53,23 +164,21 @@ public class StageManager {
     }
 
 
-    /**simply unstage FILENAME from add stage area
-     * does two things:
-     * 1. remove the ORGFILENAME from ADDSTGMAP.
-     * 2. delete the BLOBNAME from ADD_BLOB_DIR.
-     * */
+    /**stage FILENAME, tracked by the head commit, for removal without
+     * deleting it from CWD. used by merges for files outside a sparse
+     * checkout, which were never written.
+     */
+    public static void stageRemoveTracked(String fileName) {
+        unstageFromAdd(fileName);
+        _removeStageMap.put(fileName, "placeholder");
+    }
+
+    /**simply unstage FILENAME from add stage area.
+     * its blob stays in the object store, where other commits may share
+     * it; gc deletes it iff nothing does.
+     */
     public static void unstageFromAdd(String orgFileName) {
-        String blobName = _addStageMap.get(orgFileName);
-        File blobToUnstage = null;
-        if (blobName != null) {
-            blobToUnstage = new File(ADD_BLOB_DIR, blobName);
-        }
-        if (_addStageMap.containsKey(orgFileName)) {
-            _addStageMap.remove(orgFileName);
-        }
-        if (blobToUnstage != null && blobToUnstage.exists()) {
-            blobToUnstage.delete();
-        }
+        _addStageMap.remove(orgFileName);
     }
 
     /**simply unstage FILENAME from removal stage area.
@@ -80,16 +189,28 @@ public class StageManager {
         }
     }
 
-    /**wipes ADDSTGMAP and RMSTGMAP, as well as
-     * the directory storing blobs that contain
-     * data of staged files.
+    /**wipes ADDSTGMAP and RMSTGMAP, and forgets the head mapping,
+     * which is about to change.
      */
     public static void clearStage() {
         _addStageMap.clear();
-        Utils.wipeDir(ADD_BLOB_DIR);
         _removeStageMap.clear();
+        _headMapping = null;
+    }
+
+    /**return the mapping of the head commit, read once per command
+     * rather than once per file staged.
+     */
+    private static LinkedHashMap<String, String> headMapping() {
+        if (_headMapping == null) {
+            _headMapping = CommitManager.headCommit().getBlobMapping();
+        }
+        return _headMapping;
     }
 
+    /**mapping of the head commit, iff already read.*/
+    private static LinkedHashMap<String, String> _headMapping;
+
     /**return a list of file names that are staged
      * for addition.
      */
@@ -118,7 +239,6 @@ public class StageManager {
 
     /**initiate staging area.*/
     public static void initStage() throws IOException {
-        ADD_BLOB_DIR.mkdir();
         ADD_STG_FILE.createNewFile();
         RM_STG_FILE.createNewFile();
         _addStageMap = new LinkedHashMap<String, String>();
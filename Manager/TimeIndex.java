@@ -0,0 +1,265 @@
+package gitlet.Manager;
+
+import gitlet.Const;
+import gitlet.Trace;
+import gitlet.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**class keeping a secondary index of every commit sorted by time, so
+ * that a time range finds its commits by binary search instead of by
+ * reading every commit.
+ * the index is a cache of the commit directory, stamped with the
+ * modification time the directory had when the index was last brought
+ * up to date. loading it reads the sorted arrays straight in and, as
+ * long as the stamp still matches, does nothing else. otherwise it is
+ * reconciled with the commits on disk by name alone, reading only the
+ * commits it has not seen, so commits that fetch, push or clone add and
+ * that gc removes need no bookkeeping of their own.
+ * a directory modified within RACY_MILLIS of being stamped may change
+ * again without its time changing, so such a stamp is not written and
+ * the next load reconciles again.
+ */
+class TimeIndex {
+
+    /**return the index of the commits in the current repository,
+     * bringing the one on disk up to date first.
+     */
+    static TimeIndex load() {
+        long stamp = stamp();
+        TimeIndex index = read();
+        if (index != null && stamp != UNKNOWN && index._stamp == stamp) {
+            return index;
+        }
+        TimeIndex reconciled =
+                reconcile(index == null ? EMPTY : index, stamp);
+        if (reconciled != index) {
+            reconciled.save();
+        }
+        return reconciled;
+    }
+
+    /**an index of the commits COMMITSHAS made at TIMES, both sorted by
+     * time, then SHA-1 value, as of STAMP.
+     */
+    private TimeIndex(long[] times, String[] commitSHAs, long stamp) {
+        _times = times;
+        _commitSHAs = commitSHAs;
+        _stamp = stamp;
+    }
+
+    /**return SHA-1 values of the commits made from SINCE to UNTIL, both
+     * inclusive and in milliseconds since the epoch, newest first.
+     */
+    List<String> between(long since, long until) {
+        List<String> result = new ArrayList<>();
+        int from = countBefore(since, false);
+        for (int i = countBefore(until, true) - 1; i >= from; i--) {
+            result.add(_commitSHAs[i]);
+        }
+        return result;
+    }
+
+    /**return the number of commits made before TIME, or at TIME too iff
+     * INCLUSIVE, found by binary search.
+     */
+    private int countBefore(long time, boolean inclusive) {
+        int low = 0;
+        int high = _times.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (_times[mid] < time || inclusive && _times[mid] == time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**return INDEX with the commits no longer on disk dropped and those
+     * it lacks added, stamped STAMP, or INDEX itself iff that changes
+     * nothing. the new commits are sorted on their own and merged in, so
+     * the commits already indexed are not sorted again.
+     */
+    private static TimeIndex reconcile(TimeIndex index, long stamp) {
+        String[] names = Const.COMMIT_DIR.list();
+        Trace.count(Trace.DIRS_LISTED, 1);
+        HashSet<String> onDisk = new HashSet<>(Arrays.asList(
+                names == null ? new String[0] : names));
+        HashSet<String> indexed = new HashSet<>();
+        int size = index._times.length;
+        long[] times = new long[onDisk.size()];
+        String[] commitSHAs = new String[onDisk.size()];
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (onDisk.contains(index._commitSHAs[i])) {
+                times[kept] = index._times[i];
+                commitSHAs[kept] = index._commitSHAs[i];
+                indexed.add(commitSHAs[kept]);
+                kept += 1;
+            }
+        }
+        List<String> added = new ArrayList<>();
+        for (String commitSHA : onDisk) {
+            if (!indexed.contains(commitSHA)) {
+                added.add(commitSHA);
+            }
+        }
+        if (kept == size && added.isEmpty()) {
+            return index._stamp == stamp ? index
+                    : new TimeIndex(index._times, index._commitSHAs, stamp);
+        }
+        long[] addedTimes = new long[added.size()];
+        Integer[] order = new Integer[added.size()];
+        for (int i = 0; i < order.length; i++) {
+            addedTimes[i] = CommitManager.getCommit(added.get(i))
+                    .getTimeMillis();
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingLong(
+                n -> addedTimes[n]).thenComparing(added::get));
+        int i = kept - 1;
+        int j = order.length - 1;
+        for (int k = kept + order.length - 1; j >= 0; k--) {
+            if (i >= 0 && before(addedTimes[order[j]],
+                    added.get(order[j]), times[i], commitSHAs[i])) {
+                times[k] = times[i];
+                commitSHAs[k] = commitSHAs[i];
+                i -= 1;
+            } else {
+                times[k] = addedTimes[order[j]];
+                commitSHAs[k] = added.get(order[j]);
+                j -= 1;
+            }
+        }
+        return new TimeIndex(times, commitSHAs, stamp);
+    }
+
+    /**return iff the commit SHA1 made at TIME1 is indexed before the
+     * commit SHA2 made at TIME2.
+     */
+    private static boolean before(long time1, String sha1,
+                                  long time2, String sha2) {
+        return time1 < time2 || time1 == time2 && sha1.compareTo(sha2) < 0;
+    }
+
+    /**return the modification time of the commit directory in
+     * nanoseconds, or UNKNOWN iff it cannot be trusted to change with
+     * the next commit, having changed within the last RACY_MILLIS.
+     */
+    private static long stamp() {
+        try {
+            long stamp = Files.getLastModifiedTime(Const.COMMIT_DIR.toPath())
+                    .to(TimeUnit.NANOSECONDS);
+            long age = TimeUnit.MILLISECONDS.toNanos(
+                    System.currentTimeMillis()) - stamp;
+            return age < TimeUnit.MILLISECONDS.toNanos(RACY_MILLIS)
+                    ? UNKNOWN : stamp;
+        } catch (IOException excp) {
+            return UNKNOWN;
+        }
+    }
+
+    /**return the index on disk, or null iff there is none or it cannot
+     * be read.
+     */
+    private static TimeIndex read() {
+        if (!Const.TIME_INDEX_FILE.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(Const.TIME_INDEX_FILE.toPath())))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            long stamp = in.readLong();
+            int size = in.readInt();
+            long[] times = new long[size];
+            for (int i = 0; i < size; i++) {
+                times[i] = in.readLong();
+            }
+            byte[] sha = new byte[Utils.UID_LENGTH];
+            String[] commitSHAs = new String[size];
+            for (int i = 0; i < size; i++) {
+                in.readFully(sha);
+                commitSHAs[i] = new String(sha, StandardCharsets.US_ASCII);
+            }
+            return new TimeIndex(times, commitSHAs, stamp);
+        } catch (IOException | NegativeArraySizeException excp) {
+            return null;
+        }
+    }
+
+    /**write this index to disk, replacing the old one in one step,
+     * through a temporary file of its own so concurrent commands never
+     * write the same file. an index that cannot be written is simply
+     * rebuilt next time.
+     */
+    private void save() {
+        Path tmp = null;
+        try {
+            tmp = Utils.newTempFile(Const.TIME_INDEX_FILE.getParentFile(),
+                    Const.TIME_INDEX_FILE.getName());
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeLong(_stamp);
+                out.writeInt(_times.length);
+                for (long time : _times) {
+                    out.writeLong(time);
+                }
+                for (String commitSHA : _commitSHAs) {
+                    out.write(commitSHA.getBytes(StandardCharsets.US_ASCII));
+                }
+            }
+            Files.move(tmp, Const.TIME_INDEX_FILE.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            if (tmp != null) {
+                tmp.toFile().delete();
+            }
+        }
+    }
+
+    /**first int of an index file, naming its format.*/
+    private static final int MAGIC = 0x54494458;
+
+    /**stamp of an index that must be reconciled when next loaded.*/
+    private static final long UNKNOWN = -1;
+
+    /**milliseconds within which a directory may be modified twice
+     * without its modification time changing.
+     */
+    private static final long RACY_MILLIS = 2000;
+
+    /**an index of no commits.*/
+    private static final TimeIndex EMPTY =
+            new TimeIndex(new long[0], new String[0], UNKNOWN);
+
+    /**commit times in milliseconds since the epoch, ascending.*/
+    private final long[] _times;
+
+    /**SHA-1 values of the commits, in the same order as _TIMES.*/
+    private final String[] _commitSHAs;
+
+    /**modification time of the commit directory this index is up to
+     * date with, in nanoseconds, or UNKNOWN.
+     */
+    private final long _stamp;
+}
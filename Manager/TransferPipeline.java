@@ -0,0 +1,157 @@
+package gitlet.Manager;
+
+import gitlet.Trace;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**runs the per-object work of a transfer (reading, compressing,
+ * verifying, writing) on a pool of threads, while the bundle stream
+ * itself stays sequential. results are handed to a sink in submission
+ * order, and at most WINDOW tasks are in flight, so a slow sink holds
+ * back the producer instead of buffering the whole transfer.
+ * @param <T> type of the per-object result.
+ */
+class TransferPipeline<T> {
+
+    /**a unit of per-object work.
+     * @param <T> type of its result.*/
+    interface Task<T> {
+        /**do the work and return its result.*/
+        T run() throws IOException;
+    }
+
+    /**consumer of results, called on the submitting thread.
+     * @param <T> type of the results.*/
+    interface Sink<T> {
+        /**take RESULT.*/
+        void accept(T result) throws IOException;
+    }
+
+    /**a pipeline handing results to SINK, for work that moves no
+     * objects between repositories and so counts nothing.
+     */
+    TransferPipeline(Sink<T> sink) {
+        _sink = sink;
+        _window = new ArrayDeque<>();
+        _objectsCounter = null;
+        _bytesCounter = null;
+    }
+
+    /**a pipeline handing results to SINK, counting the objects it
+     * moves as sent iff SENDING, and as received otherwise.
+     */
+    TransferPipeline(Sink<T> sink, boolean sending) {
+        _sink = sink;
+        _window = new ArrayDeque<>();
+        _objectsCounter = sending ? Trace.OBJECTS_SENT
+                : Trace.OBJECTS_RECEIVED;
+        _bytesCounter = sending ? Trace.BYTES_SENT : Trace.BYTES_RECEIVED;
+    }
+
+    /**queue TASK, first passing the oldest result to the sink iff
+     * the window is full.
+     */
+    void submit(Task<T> task) throws IOException {
+        if (_window.size() >= WINDOW) {
+            _sink.accept(await(_window.poll()));
+        }
+        _window.add(pool().submit(task::run));
+    }
+
+    /**wait for every queued task, passing results to the sink in order.*/
+    void drain() throws IOException {
+        while (!_window.isEmpty()) {
+            _sink.accept(await(_window.poll()));
+        }
+    }
+
+    /**wait for every queued task after a failure, passing on the results
+     * of those that succeeded so they can be cleaned up.
+     */
+    void drainQuietly() {
+        while (!_window.isEmpty()) {
+            try {
+                _sink.accept(await(_window.poll()));
+            } catch (IOException excp) {
+                continue;
+            }
+        }
+    }
+
+    /**record one object of BYTES bytes as transferred in the trace.
+     * safe to call from tasks.*/
+    void count(long bytes) {
+        if (_objectsCounter == null) {
+            return;
+        }
+        Trace.count(_objectsCounter, 1);
+        Trace.count(_bytesCounter, bytes);
+    }
+
+    /**start TASK on the transfer threads and return its future, to be
+     * passed to await. used for the sending end of a transfer within
+     * one process, whose failure must reach the receiving end.
+     */
+    static <R> Future<R> start(Task<R> task) {
+        return pool().submit(task::run);
+    }
+
+    /**return the result of FUTURE, unwrapping task failures.*/
+    static <R> R await(Future<R> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IOException(excp);
+        }
+    }
+
+    /**return the pool shared by all pipelines, creating it if needed.
+     * threads are daemons so an early exit never waits on them.
+     */
+    private static synchronized ExecutorService pool() {
+        if (_pool == null) {
+            _pool = Executors.newFixedThreadPool(THREADS, task -> {
+                Thread thread = new Thread(task, "gitlet-transfer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return _pool;
+    }
+
+    /**number of transfer threads. object I/O mostly waits on the
+     * filesystem, so this is well above the number of cores.
+     */
+    private static final int THREADS =
+            Math.max(8, 4 * Runtime.getRuntime().availableProcessors());
+
+    /**most tasks in flight per pipeline.*/
+    private static final int WINDOW = 4 * THREADS;
+
+    /**pool shared by all pipelines.*/
+    private static ExecutorService _pool;
+
+    /**consumer of results.*/
+    private Sink<T> _sink;
+
+    /**tasks in flight, oldest first.*/
+    private ArrayDeque<Future<T>> _window;
+
+    /**trace counter of the objects moved, null iff none is kept.*/
+    private final String _objectsCounter;
+
+    /**trace counter of the bytes moved, null iff none is kept.*/
+    private final String _bytesCounter;
+}
@@ -0,0 +1,351 @@
+package gitlet.Manager;
+
+import gitlet.GitletException;
+import gitlet.Utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**class speaking gitlet's smart transport over tcp.
+ * the serving side works on its own repository and computes object sets
+ * itself, so each side only does disk I/O on its own .gitlet directory.
+ * every connection carries exactly one request, named by its first
+ * string:
+ *   refs:   server answers with its branch map.
+ *   fetch:  client sends the head it wants, a blob size limit, a
+ *           depth, the commits to deepen from and how far, and the
+ *           heads it has; server answers with the commits it will
+ *           send, the blobs it leaves out and the blobs it would send;
+ *           client names the blobs it lacks; server streams a bundle.
+ *   blobs:  client names blobs; server streams a bundle of them.
+ *   push:   client sends branch, old head, new head and the blobs it
+ *           would send; server names the blobs it lacks; client streams
+ *           a bundle; server moves the branch and answers with a status.
+ */
+public class TransportManager {
+
+    /**prefix of remote locations served over tcp.*/
+    public static final String SCHEME = "tcp://";
+
+    /**serve the current repository on PORT until the process is killed.
+     * each connection is handled on its own thread.
+     * @param bind address of the interface to listen on; null for the
+     *             loopback interface, so only this host can connect.
+     */
+    public static void serve(int port, String bind) throws IOException {
+        InetAddress address = InetAddress.getLoopbackAddress();
+        if (bind != null) {
+            try {
+                address = InetAddress.getByName(bind);
+            } catch (UnknownHostException excp) {
+                Utils.error("Unknown address.");
+            }
+        }
+        try (ServerSocket server = new ServerSocket(port, 0, address)) {
+            InfoManager.ptln("Serving on port " + server.getLocalPort() + ".");
+            while (true) {
+                Socket client = server.accept();
+                Thread handler = new Thread(() -> handle(client));
+                handler.setDaemon(true);
+                handler.start();
+            }
+        }
+    }
+
+    /**answer the single request on CLIENT, then close it. a failed
+     * request only drops its connection and the client reports the
+     * error, so nothing a request reaches may call Utils.error, which
+     * would end the server: it throws IOException or GitletException
+     * instead, which are caught here.
+     */
+    private static void handle(Socket client) {
+        try (Socket socket = client) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream()));
+            switch (in.readUTF()) {
+            case "refs": writeMap(out, RefStore.local().all()); break;
+            case "fetch": serveFetch(in, out); break;
+            case "blobs": serveBlobs(in, out); break;
+            case "push": servePush(in, out); break;
+            default: break;
+            }
+            out.flush();
+        } catch (IOException | RuntimeException excp) {
+            return;
+        }
+    }
+
+    /**answer a fetch request read from IN on OUT.*/
+    private static void serveFetch(DataInputStream in, DataOutputStream out)
+            throws IOException {
+        String want = readId(in);
+        long blobLimit = in.readLong();
+        int depth = in.readInt();
+        List<String> deepenFrom = readIds(in);
+        int deepen = in.readInt();
+        List<String> haves = readIds(in);
+        ObjectStore local = ObjectStore.local();
+        Predicate<String> had = new HashSet<>(haves)::contains;
+        List<String> commits = depth > 0
+                ? RemoteManager.missingCommits(List.of(want), local, had,
+                        depth)
+                : RemoteManager.missingCommits(List.of(want), haves, local);
+        if (deepen > 0) {
+            for (String commitSHA : RemoteManager.missingCommits(
+                    deepenFrom, local, had, deepen)) {
+                if (!commits.contains(commitSHA)) {
+                    commits.add(commitSHA);
+                }
+            }
+        }
+        writeList(out, commits);
+        List<String> promised = new ArrayList<>();
+        List<String> offered = new ArrayList<>();
+        for (String blobSHA
+                : RemoteManager.missingBlobs(commits, local, null)) {
+            File blob = new File(local.blobDir(), blobSHA);
+            if (blobLimit >= 0 && blob.length() > blobLimit) {
+                promised.add(blobSHA);
+            } else {
+                offered.add(blobSHA);
+            }
+        }
+        writeList(out, promised);
+        writeList(out, offered);
+        out.flush();
+        List<String> blobs = readIds(in);
+        BundleManager.writeBundle(out, new LinkedHashMap<>(), local,
+                blobs, commits);
+    }
+
+    /**answer a blob request read from IN on OUT.*/
+    private static void serveBlobs(DataInputStream in, DataOutputStream out)
+            throws IOException {
+        List<String> blobs = readIds(in);
+        BundleManager.writeBundle(out, new LinkedHashMap<>(),
+                ObjectStore.local(), blobs, List.of());
+    }
+
+    /**answer a push request read from IN on OUT.*/
+    private static void servePush(DataInputStream in, DataOutputStream out)
+            throws IOException {
+        String branch = in.readUTF();
+        String oldHead = in.readUTF();
+        if (!oldHead.isEmpty() && !ObjectStore.isId(oldHead)) {
+            throw new IOException(BAD_ID);
+        }
+        String newHead = readId(in);
+        ObjectStore local = ObjectStore.local();
+        List<String> wanted = new ArrayList<>();
+        for (String blobSHA : readIds(in)) {
+            if (!local.hasBlob(blobSHA)) {
+                wanted.add(blobSHA);
+            }
+        }
+        writeList(out, wanted);
+        out.flush();
+        String status;
+        try {
+            BundleManager.tryReadBundle(in, local);
+            if (!local.hasCommit(newHead)) {
+                status = "Remote is missing the pushed commit.";
+            } else if (RefStore.local().compareAndSwap(branch,
+                    oldHead.isEmpty() ? null : oldHead, newHead, "push")) {
+                status = OK;
+            } else {
+                status = RemoteManager.REF_CHANGED;
+            }
+        } catch (GitletException excp) {
+            status = RemoteManager.REF_LOCKED;
+        } catch (IOException excp) {
+            status = excp.getMessage();
+        }
+        out.writeUTF(status);
+    }
+
+    /**return the branch map of the remote at ADDRESS.*/
+    static LinkedHashMap<String, String> requestRefs(String address)
+            throws IOException {
+        try (Socket socket = connect(address)) {
+            DataOutputStream out = request(socket, "refs");
+            out.flush();
+            return readMap(new DataInputStream(socket.getInputStream()));
+        }
+    }
+
+    /**fetch commit WANT and its history from the remote at ADDRESS,
+     * given that we have HAVES and everything behind them, adding the
+     * commits fetched to COMMITS.
+     * @param blobLimit iff not negative, largest blob to fetch now.
+     * @param depth iff positive, fetch only the last DEPTH commits.
+     * @param deepen iff positive, also fetch DEEPEN more commits behind
+     *               every local shallow boundary commit.
+     * @return blobs the remote left out because of BLOBLIMIT.
+     */
+    static List<String> fetch(String address, String want,
+                              List<String> haves, long blobLimit,
+                              int depth, int deepen, List<String> commits)
+            throws IOException {
+        ObjectStore local = ObjectStore.local();
+        try (Socket socket = connect(address)) {
+            DataOutputStream out = request(socket, "fetch");
+            out.writeUTF(want);
+            out.writeLong(blobLimit);
+            out.writeInt(depth);
+            writeList(out, deepen > 0 ? RemoteManager.shallowParents()
+                    : List.of());
+            out.writeInt(deepen);
+            writeList(out, haves);
+            out.flush();
+            InputStream raw = socket.getInputStream();
+            DataInputStream in = new DataInputStream(raw);
+            commits.addAll(readIds(in));
+            List<String> promised = readIds(in);
+            List<String> wanted = new ArrayList<>();
+            for (String blobSHA : readIds(in)) {
+                if (!local.hasBlob(blobSHA)) {
+                    wanted.add(blobSHA);
+                }
+            }
+            writeList(out, wanted);
+            out.flush();
+            BundleManager.readBundle(raw, local);
+            return promised;
+        }
+    }
+
+    /**fetch BLOBS from the remote at ADDRESS.*/
+    static void fetchBlobs(String address, List<String> blobs)
+            throws IOException {
+        try (Socket socket = connect(address)) {
+            DataOutputStream out = request(socket, "blobs");
+            writeList(out, blobs);
+            out.flush();
+            BundleManager.readBundle(socket.getInputStream(),
+                    ObjectStore.local());
+        }
+    }
+
+    /**push BLOBS and COMMITS to the remote at ADDRESS and move its
+     * BRANCH from OLDHEAD to NEWHEAD, erroring if the remote refuses.
+     * @param oldHead head we negotiated against, null for a new branch.
+     */
+    static void push(String address, String branch, String oldHead,
+                     String newHead, List<String> blobs,
+                     List<String> commits) throws IOException {
+        try (Socket socket = connect(address)) {
+            DataOutputStream out = request(socket, "push");
+            out.writeUTF(branch);
+            out.writeUTF(oldHead == null ? "" : oldHead);
+            out.writeUTF(newHead);
+            writeList(out, blobs);
+            out.flush();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            List<String> wanted = readIds(in);
+            BundleManager.writeBundle(out, new LinkedHashMap<>(),
+                    ObjectStore.local(), wanted, commits);
+            String status = in.readUTF();
+            if (!status.equals(OK)) {
+                Utils.error(status);
+            }
+        }
+    }
+
+    /**return a socket connected to ADDRESS, a host:port string.*/
+    private static Socket connect(String address) {
+        int colon = address.lastIndexOf(':');
+        try {
+            return new Socket(address.substring(0, colon),
+                    Integer.parseInt(address.substring(colon + 1)));
+        } catch (IOException | RuntimeException excp) {
+            Utils.error("Remote server not reachable.");
+            return null;
+        }
+    }
+
+    /**start request COMMAND on SOCKET, returning its output stream.*/
+    private static DataOutputStream request(Socket socket, String command)
+            throws IOException {
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+        out.writeUTF(command);
+        return out;
+    }
+
+    /**write the strings in LST to OUT, preceded by their number.*/
+    private static void writeList(DataOutputStream out, List<String> lst)
+            throws IOException {
+        out.writeInt(lst.size());
+        for (String str : lst) {
+            out.writeUTF(str);
+        }
+    }
+
+    /**return a list of object names written to IN by writeList.*/
+    private static List<String> readIds(DataInputStream in)
+            throws IOException {
+        int size = in.readInt();
+        List<String> lst = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            lst.add(readId(in));
+        }
+        return lst;
+    }
+
+    /**return an object name read from IN. names come from the other
+     * side of the connection, so one that is not a SHA-1 value is
+     * refused before it can be used as a file name.
+     */
+    private static String readId(DataInputStream in) throws IOException {
+        String id = in.readUTF();
+        if (!ObjectStore.isId(id)) {
+            throw new IOException(BAD_ID);
+        }
+        return id;
+    }
+
+    /**write the pairs in MAP to OUT, preceded by their number.*/
+    private static void writeMap(DataOutputStream out,
+                                 LinkedHashMap<String, String> map)
+            throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+    }
+
+    /**return a map of names to object names written to IN by
+     * writeMap.*/
+    private static LinkedHashMap<String, String> readMap(DataInputStream in)
+            throws IOException {
+        int size = in.readInt();
+        LinkedHashMap<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            String key = in.readUTF();
+            map.put(key, readId(in));
+        }
+        return map;
+    }
+
+    /**status of a successful push.*/
+    private static final String OK = "ok";
+
+    /**message for an object name that is not a SHA-1 value.*/
+    private static final String BAD_ID = "Bad object name.";
+}
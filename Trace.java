@@ -0,0 +1,279 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Tracing of where the time of a command goes, enabled by setting
+ *  the environment variable GITLET_TRACE to the name of a file.
+ *  Code to be traced opens a span, in a try-with-resources statement,
+ *  and spans opened inside it become its children; spans of the same
+ *  name under the same parent are merged, counting their calls and
+ *  summing their times.  Counters, such as bytes read, are added to the
+ *  innermost open span.  Spans opened by other threads hang off the
+ *  command itself, so the times of parallel work are summed over
+ *  threads.  At the end of each command, its tree is appended to the
+ *  file as one line of JSON, so a file may hold the traces of many
+ *  commands.  When tracing is disabled, every method returns at once.
+ */
+public final class Trace {
+
+    /** True iff tracing is enabled. */
+    public static final boolean ENABLED =
+        System.getenv("GITLET_TRACE") != null;
+
+    /** Counter of bytes read from files. */
+    public static final String BYTES_READ = "bytesRead";
+    /** Counter of bytes written to files. */
+    public static final String BYTES_WRITTEN = "bytesWritten";
+    /** Counter of objects deserialized. */
+    public static final String OBJECTS_READ = "objectsRead";
+    /** Counter of commits read. */
+    public static final String COMMITS_READ = "commitsRead";
+    /** Counter of files hashed. */
+    public static final String FILES_HASHED = "filesHashed";
+    /** Counter of bytes hashed. */
+    public static final String BYTES_HASHED = "bytesHashed";
+    /** Counter of directories listed. */
+    public static final String DIRS_LISTED = "dirsListed";
+    /** Counter of objects written to a bundle stream. */
+    public static final String OBJECTS_SENT = "objectsSent";
+    /** Counter of bytes of objects written to a bundle stream. */
+    public static final String BYTES_SENT = "bytesSent";
+    /** Counter of objects read from a bundle stream and stored. */
+    public static final String OBJECTS_RECEIVED = "objectsReceived";
+    /** Counter of bytes of objects read from a bundle stream and
+     *  stored. */
+    public static final String BYTES_RECEIVED = "bytesReceived";
+
+    /** Start tracing the command with arguments ARGS, dropping the
+     *  trace of any earlier command run in this process. */
+    public static void start(String... args) {
+        if (!ENABLED) {
+            return;
+        }
+        synchronized (Trace.class) {
+            if (!_hooked) {
+                Runtime.getRuntime().addShutdownHook(
+                    new Thread(Trace::finish));
+                _hooked = true;
+            }
+            _command = String.join(" ", args);
+            _startMillis = System.currentTimeMillis();
+            _startNanos = System.nanoTime();
+            _root = new Node(args[0]);
+            CURRENT.remove();
+        }
+    }
+
+    /** Finish tracing the current command, if any, appending its trace
+     *  to the trace file.  Also called as the process exits, so the
+     *  commands that stop by System.exit are traced too. */
+    public static void finish() {
+        if (!ENABLED) {
+            return;
+        }
+        String json;
+        synchronized (Trace.class) {
+            if (_root == null) {
+                return;
+            }
+            _root._calls = 1;
+            _root._nanos = System.nanoTime() - _startNanos;
+            Map<String, Long> totals = new TreeMap<>();
+            _root.total(totals);
+            StringBuilder out = new StringBuilder();
+            out.append("{\"command\": ");
+            quote(out, _command);
+            out.append(", \"start\": ").append(_startMillis)
+                .append(", \"totals\": ");
+            counters(out, totals);
+            out.append(", \"tree\": ");
+            _root.toJson(out);
+            json = out.append("}\n").toString();
+            _root = null;
+        }
+        try {
+            Files.write(Paths.get(System.getenv("GITLET_TRACE")),
+                json.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            System.err.println("Cannot write trace: " + excp.getMessage());
+        }
+    }
+
+    /** Returns a new span named NAME, under the innermost span open in
+     *  this thread, to be closed when the work it times is done. */
+    public static Span span(String name) {
+        if (!ENABLED) {
+            return Span.NONE;
+        }
+        synchronized (Trace.class) {
+            if (_root == null) {
+                return Span.NONE;
+            }
+            Node parent = current();
+            Node node = parent._children.computeIfAbsent(name, Node::new);
+            CURRENT.set(node);
+            return new Span(parent, node);
+        }
+    }
+
+    /** Add AMOUNT to COUNTER of the innermost span open in this
+     *  thread. */
+    public static void count(String counter, long amount) {
+        if (!ENABLED) {
+            return;
+        }
+        synchronized (Trace.class) {
+            if (_root != null) {
+                current()._counters.merge(counter, amount, Long::sum);
+            }
+        }
+    }
+
+    /** Returns the innermost span open in this thread, or the command
+     *  if there is none. */
+    private static Node current() {
+        Node node = CURRENT.get();
+        return node == null ? _root : node;
+    }
+
+    /** A span being timed. */
+    public static final class Span implements AutoCloseable {
+
+        /** The span returned when tracing is disabled. */
+        private static final Span NONE = new Span(null, null);
+
+        /** A span timing NODE, opened under PARENT. */
+        private Span(Node parent, Node node) {
+            _parent = parent;
+            _node = node;
+            _start = node == null ? 0 : System.nanoTime();
+        }
+
+        /** Stop timing this span. */
+        @Override
+        public void close() {
+            if (_node == null) {
+                return;
+            }
+            long elapsed = System.nanoTime() - _start;
+            synchronized (Trace.class) {
+                _node._calls += 1;
+                _node._nanos += elapsed;
+                CURRENT.set(_parent == _root ? null : _parent);
+            }
+        }
+
+        /** Span open when this one was opened. */
+        private final Node _parent;
+        /** Node accumulating this span. */
+        private final Node _node;
+        /** Time this span was opened, in nanoseconds. */
+        private final long _start;
+    }
+
+    /** A node of the tree of a command: every span of one name under
+     *  the same parent. */
+    private static final class Node {
+
+        /** A node for spans named NAME. */
+        Node(String name) {
+            _name = name;
+        }
+
+        /** Add the counters of this node and its descendants to
+         *  TOTALS. */
+        void total(Map<String, Long> totals) {
+            _counters.forEach((key, val) -> totals.merge(key, val,
+                Long::sum));
+            for (Node child : _children.values()) {
+                child.total(totals);
+            }
+        }
+
+        /** Append this node and its descendants to OUT as JSON. */
+        void toJson(StringBuilder out) {
+            out.append("{\"name\": ");
+            quote(out, _name);
+            out.append(", \"calls\": ").append(_calls)
+                .append(", \"ms\": ")
+                .append(String.format("%.3f", _nanos / 1e6));
+            if (!_counters.isEmpty()) {
+                out.append(", \"counters\": ");
+                counters(out, _counters);
+            }
+            if (!_children.isEmpty()) {
+                out.append(", \"children\": [");
+                String sep = "";
+                for (Node child : _children.values()) {
+                    out.append(sep);
+                    child.toJson(out);
+                    sep = ", ";
+                }
+                out.append("]");
+            }
+            out.append("}");
+        }
+
+        /** Name of the spans. */
+        private final String _name;
+        /** Number of spans closed. */
+        private long _calls;
+        /** Total time of the spans, in nanoseconds. */
+        private long _nanos;
+        /** Counters added inside the spans but not their children. */
+        private final Map<String, Long> _counters = new TreeMap<>();
+        /** Nodes of spans opened inside these spans, by name. */
+        private final Map<String, Node> _children = new LinkedHashMap<>();
+    }
+
+    /** Append COUNTERS to OUT as a JSON object. */
+    private static void counters(StringBuilder out,
+                                 Map<String, Long> counters) {
+        out.append("{");
+        String sep = "";
+        for (Map.Entry<String, Long> entry : counters.entrySet()) {
+            out.append(sep);
+            quote(out, entry.getKey());
+            out.append(": ").append(entry.getValue());
+            sep = ", ";
+        }
+        out.append("}");
+    }
+
+    /** Append STR to OUT as a JSON string. */
+    private static void quote(StringBuilder out, String str) {
+        out.append('"');
+        for (char c : str.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < ' ') {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    /** Innermost span open in each thread, null for the command. */
+    private static final ThreadLocal<Node> CURRENT = new ThreadLocal<>();
+
+    /** Root of the tree of the command being traced, or null. */
+    private static Node _root;
+    /** Arguments of the command being traced. */
+    private static String _command;
+    /** Time the command started, in milliseconds since the epoch. */
+    private static long _startMillis;
+    /** Time the command started, in nanoseconds. */
+    private static long _startNanos;
+    /** True iff the shutdown hook has been added. */
+    private static boolean _hooked;
+}
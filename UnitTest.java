@@ -4,6 +4,30 @@ import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+
 /** The suite of all JUnit tests for the gitlet package.
  *  @author
  */
@@ -20,6 +44,1353 @@ public class UnitTest {
     public void placeholderTest() {
     }
 
+    /** Commits, checks out, merges with a conflict and fetches a file
+     *  larger than the heap of the gitlet processes doing so, which only
+     *  works if file contents are streamed rather than read whole. */
+    @Test
+    public void largeFileTest() throws IOException, InterruptedException {
+        File root = Files.createTempDirectory("gitlet-large").toFile();
+        try {
+            File repo = new File(root, "repo");
+            File copy = new File(root, "copy");
+            repo.mkdir();
+            copy.mkdir();
+            File big = new File(repo, "big.bin");
+            gitlet(repo, "init");
+            writeRandom(big, 1);
+            String masterSHA = Utils.sha1(big);
+            gitlet(repo, "add", "big.bin");
+            gitlet(repo, "commit", "big");
+            gitlet(repo, "branch", "other");
+            gitlet(repo, "checkout", "other");
+            writeRandom(big, 2);
+            gitlet(repo, "add", "big.bin");
+            gitlet(repo, "commit", "other big");
+            gitlet(repo, "checkout", "master");
+            assertEquals(masterSHA, Utils.sha1(big));
+            writeRandom(big, 3);
+            gitlet(repo, "add", "big.bin");
+            gitlet(repo, "commit", "master big");
+            gitlet(repo, "merge", "other");
+            assertEquals(2 * LARGE_SIZE + "<<<<<<< HEAD\n=======\n>>>>>>>\n"
+                    .length(), big.length());
+
+            gitlet(copy, "init");
+            gitlet(copy, "add-remote", "origin",
+                    new File(repo, ".gitlet").getPath());
+            gitlet(copy, "fetch", "origin", "master");
+            gitlet(copy, "checkout", "origin/master");
+            assertEquals(Utils.sha1(big),
+                    Utils.sha1(new File(copy, "big.bin")));
+        } finally {
+            delete(root);
+        }
+    }
+
+    /** A sparse checkout only writes and deletes matching files, so
+     *  checkout, reset and merge leave a file of the user's alone when
+     *  its name is tracked but outside the patterns. */
+    @Test
+    public void sparseCheckoutTest()
+            throws IOException, InterruptedException {
+        File root = Files.createTempDirectory("gitlet-sparse").toFile();
+        try {
+            File repo = repo(root, "repo", "A.java", "a1\n",
+                    "README.txt", "r1\n", "gone.txt", "g\n");
+            quiet(repo, "branch", "other");
+            quiet(repo, "checkout", "other");
+            commit(repo, "other", "A.java", "a2\n", "README.txt", "r2\n");
+            quiet(repo, "rm", "gone.txt");
+            quiet(repo, "commit", "remove gone");
+            quiet(repo, "checkout", "master");
+            quiet(repo, "sparse-checkout", "set", "*.java");
+            assertEquals("*.java\n", run(repo, "sparse-checkout", "list"));
+            assertFalse(new File(repo, "README.txt").exists());
+            assertFalse(new File(repo, "gone.txt").exists());
+            write(repo, "README.txt", "mine\n");
+            write(repo, "gone.txt", "mine too\n");
+            assertTrue(run(repo, "status").endsWith(
+                    "=== Untracked Files ===\n\n"));
+
+            quiet(repo, "checkout", "other");
+            assertEquals("a2\n", read(repo, "A.java"));
+            assertEquals("mine\n", read(repo, "README.txt"));
+            String otherHead =
+                    run(repo, "log", "-n", "1", "--format=%H").trim();
+            quiet(repo, "checkout", "master");
+            assertEquals("a1\n", read(repo, "A.java"));
+            assertEquals("mine\n", read(repo, "README.txt"));
+            quiet(repo, "branch", "scratch");
+            quiet(repo, "checkout", "scratch");
+            quiet(repo, "reset", otherHead);
+            assertEquals("a2\n", read(repo, "A.java"));
+            assertEquals("mine\n", read(repo, "README.txt"));
+            quiet(repo, "checkout", "master");
+            commit(repo, "master", "B.java", "b\n");
+            assertEquals("Merged other into master.\n",
+                    run(repo, "merge", "other")
+                    + run(repo, "log", "-n", "1", "--format=%s"));
+            assertEquals("a2\n", read(repo, "A.java"));
+            assertEquals("mine too\n", read(repo, "gone.txt"));
+            assertEquals("mine\n", read(repo, "README.txt"));
+
+            new File(repo, "README.txt").delete();
+            new File(repo, "gone.txt").delete();
+            quiet(repo, "sparse-checkout", "disable");
+            assertEquals("r2\n", read(repo, "README.txt"));
+            assertFalse(new File(repo, "gone.txt").exists());
+        } finally {
+            delete(root);
+        }
+    }
+
+    /** An in-memory merge commits to the branch it is given, not the
+     *  current one, leaving the working directory and stage alone, and
+     *  refuses to merge into the current branch. */
+    @Test
+    public void inMemoryMergeTest()
+            throws IOException, InterruptedException {
+        File root = Files.createTempDirectory("gitlet-inmem").toFile();
+        try {
+            File repo = repo(root, "repo", "keep", "k\n", "mod", "m\n",
+                    "del", "d\n", "conf", "c\n");
+            String base = run(repo, "log", "-n", "1", "--format=%H");
+            quiet(repo, "branch", "release");
+            quiet(repo, "branch", "feature");
+            quiet(repo, "branch", "ff");
+            quiet(repo, "checkout", "release");
+            commit(repo, "release", "mod", "m2\n", "conf", "c1\n",
+                    "pnew", "p\n");
+            quiet(repo, "checkout", "feature");
+            quiet(repo, "rm", "del");
+            commit(repo, "feature", "conf", "c2\n", "snew", "s\n");
+            quiet(repo, "checkout", "master");
+            write(repo, "staged", "x\n");
+            quiet(repo, "add", "staged");
+
+            assertEquals("Cannot merge in memory into the current branch.\n",
+                    run(repo, "merge", "--in-memory", "feature", "master"));
+            assertEquals("Encountered a merge conflict.\n",
+                    run(repo, "merge", "--in-memory", "feature", "release"));
+            assertEquals("Merged feature into release.\n",
+                    run(repo, "log", "-n", "1", "--format=%s", "release"));
+            assertEquals(base, run(repo, "log", "-n", "1", "--format=%H"));
+            assertEquals("d\n", read(repo, "del"));
+            assertEquals("c\n", read(repo, "conf"));
+            assertFalse(new File(repo, "snew").exists());
+            assertTrue(run(repo, "status").contains(
+                    "=== Staged Files ===\nstaged\n"));
+
+            assertEquals("Branch fast-forwarded.\n",
+                    run(repo, "merge", "--in-memory", "release", "ff"));
+            assertEquals(run(repo, "log", "-n", "1", "--format=%H",
+                    "release"), run(repo, "log", "-n", "1", "--format=%H",
+                    "ff"));
+            quiet(repo, "commit", "staged");
+            quiet(repo, "checkout", "release");
+            assertEquals("m2\n", read(repo, "mod"));
+            assertEquals("<<<<<<< HEAD\nc1\n=======\nc2\n>>>>>>>\n",
+                    read(repo, "conf"));
+            assertEquals("p\n", read(repo, "pnew"));
+            assertEquals("s\n", read(repo, "snew"));
+            assertFalse(new File(repo, "del").exists());
+        } finally {
+            delete(root);
+        }
+    }
+
+    /** The reflog records every move of a branch, keeps only the first
+     *  line of a reason, cut short, and a commit message too long for a
+     *  record still commits. */
+    @Test
+    public void reflogTest() throws IOException, InterruptedException {
+        File root = Files.createTempDirectory("gitlet-reflog").toFile();
+        try {
+            File repo = repo(root, "repo", "a", "a\n");
+            String msg = "x".repeat(70000);
+            write(repo, "a", "b\n");
+            quiet(repo, "add", "a");
+            quiet(repo, "commit", msg);
+            assertEquals(msg + "\n",
+                    run(repo, "log", "-n", "1", "--format=%s"));
+            String head = run(repo, "log", "-n", "1", "--format=%H");
+            commit(repo, "two\nlines", "a", "c\n");
+            quiet(repo, "branch", "b");
+            quiet(repo, "rm-branch", "b");
+
+            String[] log = run(repo, "reflog").split("\n");
+            assertEquals(4, log.length);
+            assertEquals(head.substring(0, 7) + " master@{1}: "
+                    + ("commit: " + msg).substring(0, 1024), log[1]);
+            assertTrue(log[0].endsWith(" master@{0}: commit: two"));
+            assertTrue(log[3].endsWith(" master@{3}: init"));
+            assertEquals(log[0].substring(0, 7) + " master@{0}: commit: two"
+                    + "\n", run(repo, "reflog", "-n", "1"));
+            assertEquals("0000000 b@{0}: branch: deleted\n"
+                    + log[0].substring(0, 7)
+                    + " b@{1}: branch: created from master\n",
+                    run(repo, "reflog", "b"));
+        } finally {
+            delete(root);
+        }
+    }
+
+    /** Blobs, and the files checked out of them, get the default
+     *  permissions, not the owner-only ones of a temporary file. */
+    @Test
+    public void permissionsTest() throws IOException, InterruptedException {
+        File root = Files.createTempDirectory("gitlet-perms").toFile();
+        try {
+            File repo = repo(root, "repo", "a", "a\n");
+            String first = run(repo, "log", "-n", "1", "--format=%H").trim();
+            commit(repo, "second", "a", "b\n");
+            quiet(repo, "checkout", first, "--", "a");
+            write(repo, "plain", "p\n");
+            Object expected = Files.getPosixFilePermissions(
+                    new File(repo, "plain").toPath());
+            assertEquals(expected, Files.getPosixFilePermissions(
+                    new File(repo, "a").toPath()));
+            File blobs = new File(repo, ".gitlet/.blobs");
+            for (File blob : blobs.listFiles()) {
+                assertEquals(blob.getName(), expected,
+                        Files.getPosixFilePermissions(blob.toPath()));
+            }
+        } finally {
+            delete(root);
+        }
+    }
+
+    /** A fetch and a push over tcp, against serve on a free port, send
+     *  the new commits and only walk the history since the two sides
+     *  met; a request naming a file rather than an object gets nothing,
+     *  a fetch killed midway leaves only whole objects, and of two
+     *  pushes racing to move a branch exactly one wins. */
+    @Test
+    public void serveTest() throws IOException, InterruptedException {
+        File root = Files.createTempDirectory("gitlet-serve").toFile();
+        Process server = null;
+        try {
+            File remote = repo(root, "remote", "f", "0\n");
+            for (int i = 1; i < HISTORY; i++) {
+                commit(remote, "c" + i, "f", i + "\n");
+            }
+            File local = new File(root, "local");
+            local.mkdirs();
+            run(local, "clone", remote.getPath());
+            File trace = new File(root, "trace");
+            server = start(remote, null, trace, "serve", "--port", "0");
+            String banner = new BufferedReader(new InputStreamReader(
+                    server.getInputStream(), StandardCharsets.UTF_8))
+                    .readLine();
+            assertTrue(banner, banner.startsWith("Serving on port "));
+            String port = banner.replaceAll("\\D", "");
+            quiet(local, "add-remote", "tcp", "tcp://127.0.0.1:" + port);
+
+            commit(remote, "fetched", "f", "fetched\n");
+            String fetched = run(remote, "log", "-n", "1", "--format=%H");
+            run(local, "fetch", "tcp", "master");
+            assertEquals(fetched,
+                    run(local, "log", "-n", "1", "--format=%H",
+                            "tcp/master"));
+            quiet(local, "reset", fetched.trim());
+            assertEquals("fetched\n", read(local, "f"));
+
+            try (Socket socket = new Socket(
+                    InetAddress.getLoopbackAddress(), Integer.parseInt(port))) {
+                DataOutputStream out =
+                        new DataOutputStream(socket.getOutputStream());
+                out.writeUTF("blobs");
+                out.writeInt(1);
+                out.writeUTF("../../f");
+                out.flush();
+                assertEquals(-1, socket.getInputStream().read());
+            }
+
+            commit(local, "pushed", "f", "pushed\n");
+            String pushed = run(local, "log", "-n", "1", "--format=%H");
+            File clientTrace = new File(root, "client");
+            traced(local, clientTrace, "push", "tcp", "master");
+            assertEquals(pushed,
+                    run(remote, "log", "-n", "1", "--format=%H"));
+            assertTrue(total(clientTrace, "commitsRead") < HISTORY / 2);
+
+            server.destroy();
+            server.waitFor();
+            assertTrue(total(trace, "commitsRead") < HISTORY / 2);
+            quiet(remote, "fsck");
+
+            Random random = new Random(0);
+            for (int i = 0; i < HISTORY; i++) {
+                StringBuilder lines = new StringBuilder();
+                while (lines.length() < BLOB_SIZE) {
+                    lines.append(random.nextLong()).append('\n');
+                }
+                write(remote, "r" + i, lines.toString());
+                quiet(remote, "add", "r" + i);
+            }
+            quiet(remote, "commit", "random");
+            String random0 = read(remote, "r0");
+            File blobs = new File(local, ".gitlet/.blobs");
+            int before = blobs.list().length;
+            server = start(remote, null, null, "serve", "--port", "0");
+            port = new BufferedReader(new InputStreamReader(
+                    server.getInputStream(), StandardCharsets.UTF_8))
+                    .readLine().replaceAll("\\D", "");
+            try (ServerSocket cut = new ServerSocket(0, 0,
+                    InetAddress.getLoopbackAddress())) {
+                relay(cut, Integer.parseInt(port), BLOB_SIZE * 2);
+                quiet(local, "add-remote", "cut",
+                        "tcp://127.0.0.1:" + cut.getLocalPort());
+                Process fetch = start(local, null, null, "fetch", "cut",
+                        "master");
+                for (int i = 0; i < 10 * SETTLE_MILLIS && fetch.isAlive()
+                        && blobs.list().length < before + 2; i += 10) {
+                    Thread.sleep(10);
+                }
+                assertTrue(fetch.isAlive());
+                fetch.destroyForcibly().waitFor();
+            }
+            assertTrue(blobs.list().length >= before + 2);
+            assertEquals("", run(local, "fsck")
+                    .replaceAll("dangling blob \\w+\n", ""));
+            quiet(local, "add-remote", "again", "tcp://127.0.0.1:" + port);
+            run(local, "fetch", "again", "master");
+            quiet(local, "reset", run(remote, "log", "-n", "1",
+                    "--format=%H").trim());
+            assertEquals(random0, read(local, "r0"));
+            quiet(local, "fsck");
+
+            File lock = new File(remote, ".gitlet/.gitletMeta/.refs.lock");
+            commit(local, "locked", "f", "locked\n");
+            assertTrue(lock.createNewFile());
+            for (String name : List.of("origin", "again")) {
+                assertTrue(run(local, "push", name, "master").contains(
+                        "Remote branches are locked by another update; "
+                        + "try pushing again.\n"));
+            }
+            assertTrue(lock.delete());
+            File other = new File(root, "other");
+            other.mkdirs();
+            run(other, "clone", remote.getPath());
+            commit(other, "other", "f", "other\n");
+            quiet(other, "add-remote", "again", "tcp://127.0.0.1:" + port);
+            List<Process> pushes = List.of(
+                    start(local, null, null, "push", "again", "master"),
+                    start(other, null, null, "push", "again", "master"));
+            String winner = null;
+            for (int i = 0; i < pushes.size(); i++) {
+                String output = new String(pushes.get(i).getInputStream()
+                        .readAllBytes(), StandardCharsets.UTF_8);
+                pushes.get(i).waitFor();
+                String head = run(i == 0 ? local : other, "log", "-n", "1",
+                        "--format=%H");
+                if (head.equals(run(remote, "log", "-n", "1",
+                        "--format=%H"))) {
+                    assertNull(winner);
+                    winner = head;
+                } else {
+                    assertTrue(output, output.contains(
+                            "pull down remote changes")
+                            || output.contains("try pushing again"));
+                }
+            }
+            assertNotNull(winner);
+            assertEquals("", run(remote, "fsck")
+                    .replaceAll("dangling \\w+ \\w+\n", ""));
+        } finally {
+            if (server != null) {
+                server.destroy();
+            }
+            delete(root);
+        }
+    }
+
+    /** log A..B leaves out everything reachable from A, merged history
+     *  included, reading only the commits since A and B met, and -n,
+     *  --since and --until select commits of the range. */
+    @Test
+    public void logTest() throws IOException, InterruptedException {
+        File root = Files.createTempDirectory("gitlet-log").toFile();
+        try {
+            File repo = repo(root, "repo", "f", "0\n");
+            for (int i = 1; i < HISTORY; i++) {
+                commit(repo, "m" + i, "f", i + "\n");
+            }
+            quiet(repo, "branch", "b");
+            commit(repo, "master", "f", "master\n");
+            quiet(repo, "checkout", "b");
+            commit(repo, "b1", "g", "b1\n");
+            quiet(repo, "merge", "master");
+            commit(repo, "b2", "g", "b2\n");
+
+            File trace = new File(root, "trace");
+            assertEquals("b2\nMerged master into b.\nb1\n",
+                    traced(repo, trace, "log", "--format=%s", "master..b"));
+            assertTrue(total(trace, "commitsRead") < HISTORY / 2);
+            assertEquals("", run(repo, "log", "b..master"));
+            String b1 = run(repo, "log", "--format=%H", "master..b")
+                    .split("\n")[2];
+            assertEquals("master\n",
+                    run(repo, "log", "--format=%s", b1 + "..master"));
+            assertEquals("b2\nMerged master into b.\n",
+                    run(repo, "log", "-n", "2", "--format=%s", "master.."));
+            assertEquals("initial commit\n",
+                    run(repo, "log", "--format=%s", "--until=1971-01-01"));
+            assertEquals(HISTORY + 3, run(repo, "log", "--format=%s",
+                    "--since=2000-01-01").split("\n").length);
+        } finally {
+            delete(root);
+        }
+    }
+
+    /** global-log finds commits through the time index, which takes in
+     *  new commits at once and, once the commit directory has settled,
+     *  is used without reading any commit it does not print. */
+    @Test
+    public void globalLogTest() throws IOException, InterruptedException {
+        File root = Files.createTempDirectory("gitlet-global").toFile();
+        try {
+            File repo = repo(root, "repo", "f", "0\n");
+            commit(repo, "second", "f", "1\n");
+            assertEquals(3, count(run(repo, "global-log"), "==="));
+            quiet(repo, "branch", "b");
+            quiet(repo, "checkout", "b");
+            commit(repo, "third", "f", "2\n");
+            String log = run(repo, "global-log");
+            assertEquals(4, count(log, "==="));
+            assertTrue(log.indexOf("third") < log.indexOf("second"));
+            assertTrue(log.endsWith("initial commit\n\n"));
+
+            Thread.sleep(SETTLE_MILLIS);
+            run(repo, "global-log");
+            File trace = new File(root, "trace");
+            assertEquals(1, count(traced(repo, trace, "global-log",
+                    "--until=1971-01-01"), "==="));
+            assertEquals(1, total(trace, "commitsRead"));
+            assertEquals(0, total(trace, "dirsListed"));
+            assertEquals(0, count(run(repo, "global-log",
+                    "--since=2999-01-01"), "==="));
+        } finally {
+            delete(root);
+        }
+    }
+
+    /** Returns the number of times PART occurs in TEXT. */
+    private static int count(String text, String part) {
+        return text.split(Pattern.quote(part), -1).length - 1;
+    }
+
+    /** gc deletes unreachable objects older than the grace period, and
+     *  an old object that add or unbundle finds already there is
+     *  touched, so it gets the grace period of a new one. */
+    @Test
+    public void gcTest() throws IOException, InterruptedException {
+        File root = Files.createTempDirectory("gitlet-gc").toFile();
+        try {
+            File repo = repo(root, "repo", "f", "f\n");
+            File blobs = new File(repo, ".gitlet/.blobs");
+            File old = new File(blobs, Utils.sha1(new File(repo, "f")));
+            run(repo, "bundle", "create", "../all.bundle", "master");
+            write(repo, "g", "old\n");
+            quiet(repo, "add", "g");
+            File orphan = new File(blobs, Utils.sha1(new File(repo, "g")));
+            write(repo, "g", "new\n");
+            quiet(repo, "add", "g");
+            long hourAgo = System.currentTimeMillis() - 3600 * 1000;
+            orphan.setLastModified(hourAgo);
+            assertEquals("Removed 0 commits and 1 blobs.\n",
+                    run(repo, "gc", "--grace", "60"));
+            assertFalse(orphan.exists());
+
+            write(repo, "g", "old\n");
+            quiet(repo, "add", "g");
+            write(repo, "g", "new\n");
+            quiet(repo, "add", "g");
+            orphan.setLastModified(hourAgo);
+            write(repo, "g", "old\n");
+            quiet(repo, "add", "g");
+            assertTrue(orphan.lastModified() > hourAgo);
+            write(repo, "g", "newer\n");
+            quiet(repo, "add", "g");
+            assertEquals("Removed 0 commits and 0 blobs.\n",
+                    run(repo, "gc", "--grace", "60"));
+            assertTrue(orphan.exists());
+
+            old.setLastModified(hourAgo);
+            run(repo, "unbundle", "../all.bundle");
+            assertTrue(old.lastModified() > hourAgo);
+        } finally {
+            delete(root);
+        }
+    }
+
+    /** fsck passes every kind of commit, and finds a commit whose
+     *  mapping was changed, a corrupt blob and a mapping no commit
+     *  names. */
+    @Test
+    public void fsckTest() throws IOException, InterruptedException {
+        File root = Files.createTempDirectory("gitlet-fsck").toFile();
+        try {
+            File repo = repo(root, "repo", "f", "f\n");
+            quiet(repo, "branch", "other");
+            quiet(repo, "branch", "target");
+            commit(repo, "master", "g", "g\n");
+            quiet(repo, "checkout", "target");
+            commit(repo, "target", "t", "t\n");
+            quiet(repo, "checkout", "other");
+            commit(repo, "other", "h", "h\n");
+            quiet(repo, "merge", "master");
+            quiet(repo, "merge", "--in-memory", "master", "target");
+            quiet(repo, "fsck");
+
+            File mappings = new File(repo,
+                    ".gitlet/.commitMeta/.blobMapping");
+            String head = run(repo, "log", "-n", "1", "--format=%H").trim();
+            String parent = run(repo, "log", "-n", "2", "--format=%H")
+                    .split("\n")[1];
+            File mapping = new File(mappings, head);
+            byte[] original = Files.readAllBytes(mapping.toPath());
+            Files.copy(new File(mappings, parent).toPath(), mapping.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            assertEquals("corrupt commit " + head + "\n",
+                    run(repo, "fsck", "--connectivity-only"));
+            Files.write(mapping.toPath(), original);
+
+            String stray = "0".repeat(40);
+            Files.copy(mapping.toPath(), new File(mappings, stray).toPath());
+            String blob = Utils.sha1(new File(repo, "h"));
+            write(new File(repo, ".gitlet/.blobs"), blob, "changed\n");
+            assertEquals("corrupt blob " + blob + "\ndangling mapping "
+                    + stray + "\n", run(repo, "fsck"));
+        } finally {
+            delete(root);
+        }
+    }
+
+    /** a commit written before the timestamp was split, here one made
+     *  on master of a repository holding f, is read with its time and
+     *  keeps its name, as does the initial commit, and naming a commit
+     *  leaves it as it was. */
+    @Test
+    public void commitFormatTest() throws IOException, InterruptedException {
+        File root = Files.createTempDirectory("gitlet-format").toFile();
+        try {
+            File repo = repo(root, "repo", "f", "legacy\n");
+            assertEquals(LEGACY_INITIAL + "\n", run(repo, "log",
+                    "--format=%H", "--until=1971-01-01"));
+            File commits = new File(repo, ".gitlet/.commitMeta/.commits");
+            File mappings = new File(repo,
+                    ".gitlet/.commitMeta/.blobMapping");
+            Files.write(new File(commits, LEGACY).toPath(),
+                    HexFormat.of().parseHex(LEGACY_COMMIT));
+            Files.write(new File(mappings, LEGACY).toPath(),
+                    HexFormat.of().parseHex(LEGACY_MAPPING));
+            quiet(repo, "reset", LEGACY);
+            assertEquals("===\ncommit " + LEGACY
+                    + "\nDate: Mon Oct 19 10:05:16 2026 +0000\nlegacy\n\n",
+                    run(repo, "log", "-n", "1"));
+            commit(repo, "after", "g", "g\n");
+            assertEquals("after\nlegacy\ninitial commit\n",
+                    run(repo, "log", "--format=%s"));
+            assertEquals("", run(repo, "fsck").replaceAll(
+                    "dangling \\w+ \\w+\n", ""));
+
+            Commit legacy = Utils.readObject(new File(commits, LEGACY),
+                    Commit.class);
+            byte[] mapping =
+                    Files.readAllBytes(new File(mappings, LEGACY).toPath());
+            assertNotEquals(LEGACY, legacy.hash(new byte[0]));
+            assertEquals(LEGACY, legacy.getShaVal());
+            assertEquals(LEGACY, legacy.hash(mapping));
+            Commit initial = Utils.readObject(
+                    new File(commits, LEGACY_INITIAL), Commit.class);
+            assertEquals(0, initial.getTimeMillis());
+            assertEquals(LEGACY_INITIAL,
+                    initial.hash(Utils.serialize(new LinkedHashMap<>())));
+            assertEquals(LEGACY_INITIAL, initial.getShaVal());
+        } finally {
+            delete(root);
+        }
+    }
+
+    /** fetch, push and pull against a directory remote look up the
+     *  branch they move, create it when missing and refuse a push that
+     *  would lose remote commits; a fetch from a remote missing an
+     *  object fails with the sender's error and moves nothing. */
+    @Test
+    public void remoteTest() throws IOException, InterruptedException {
+        File root = Files.createTempDirectory("gitlet-remote").toFile();
+        try {
+            File remote = repo(root, "remote", "f", "0\n");
+            File local = new File(root, "local");
+            local.mkdirs();
+            run(local, "clone", remote.getPath());
+            quiet(remote, "branch", "side");
+            commit(remote, "remote", "f", "1\n");
+
+            assertEquals("That remote does not have that branch.\n",
+                    run(local, "fetch", "origin", "none"));
+            run(local, "fetch", "origin", "master");
+            assertEquals(run(remote, "log", "-n", "1", "--format=%H"),
+                    run(local, "log", "-n", "1", "--format=%H",
+                            "origin/master"));
+            commit(local, "local", "g", "g\n");
+            assertEquals("Please pull down remote changes before pushing.\n",
+                    run(local, "push", "origin", "master"));
+            run(local, "pull", "origin", "master");
+            assertEquals("1\n", read(local, "f"));
+            run(local, "push", "origin", "master");
+            run(local, "push", "origin", "fresh");
+            String head = run(local, "log", "-n", "1", "--format=%H");
+            assertEquals(head, run(remote, "log", "-n", "1", "--format=%H"));
+            assertEquals(head, run(remote, "log", "-n", "1", "--format=%H",
+                    "fresh"));
+            quiet(remote, "fsck");
+
+            String fetched = run(local, "log", "-n", "1", "--format=%H",
+                    "origin/master");
+            commit(remote, "lost", "h", "h\n");
+            delete(new File(remote, ".gitlet/.blobs/" + Utils.sha1("h\n")));
+            String failed = run(local, "fetch", "origin", "master");
+            assertTrue(failed.contains("missing object " + Utils.sha1("h\n")));
+            assertFalse(failed.contains("truncated"));
+            assertEquals(fetched, run(local, "log", "-n", "1",
+                    "--format=%H", "origin/master"));
+        } finally {
+            delete(root);
+        }
+    }
+
+    /** add stages "." and globs, hashes a file before copying it, and
+     *  copies no blob for a file unchanged from HEAD or already
+     *  stored. */
+    @Test
+    public void addTest() throws IOException, InterruptedException {
+        File root = Files.createTempDirectory("gitlet-add").toFile();
+        try {
+            String big = "x".repeat(BLOB_SIZE);
+            File repo = repo(root, "repo", "a.txt", "a\n", "big", big);
+            File trace = new File(root, "trace");
+            write(repo, "b.txt", "b\n");
+            write(repo, "c.md", "c\n");
+            quiet(repo, "add", "*.txt");
+            assertTrue(run(repo, "status").contains(
+                    "=== Staged Files ===\nb.txt\n\n"));
+            assertEquals("", traced(repo, trace, "add", "."));
+            assertTrue(total(trace, "bytesWritten") < BLOB_SIZE);
+            assertTrue(run(repo, "status").contains(
+                    "=== Staged Files ===\nb.txt\nc.md\n\n"));
+
+            write(repo, "big", big + "y");
+            assertEquals("", traced(repo, trace, "add", "big"));
+            assertTrue(total(trace, "bytesWritten") > BLOB_SIZE);
+            write(repo, "big", big);
+            assertEquals("", traced(repo, trace, "add", "big"));
+            assertTrue(total(trace, "bytesWritten") < BLOB_SIZE);
+            assertFalse(run(repo, "status").contains("\nbig\n"));
+            write(repo, "big", big + "y");
+            assertEquals("", traced(repo, trace, "add", "big"));
+            assertTrue(total(trace, "bytesWritten") < BLOB_SIZE);
+            assertTrue(run(repo, "status").contains("\nbig\n"));
+        } finally {
+            delete(root);
+        }
+    }
+
+    /** clone checks out the source's active branch, names its branches
+     *  origin/B, and keeps the blobs a partial fetch left on the
+     *  source's remote promised by that remote; an old object it links
+     *  keeps its age in the source and the grace period in the clone. */
+    @Test
+    public void cloneTest() throws IOException, InterruptedException {
+        File root = Files.createTempDirectory("gitlet-clone").toFile();
+        try {
+            String big = "x".repeat(BLOB_SIZE);
+            File up = repo(root, "up", "small", "s\n", "big", big);
+            write(up, "g", "old\n");
+            quiet(up, "add", "g");
+            write(up, "g", "new\n");
+            quiet(up, "add", "g");
+            File orphan = new File(up, ".gitlet/.blobs/" + Utils.sha1("old\n"));
+            long hourAgo = System.currentTimeMillis() - 3600 * 1000;
+            orphan.setLastModified(hourAgo);
+            long aged = orphan.lastModified();
+            File mid = repo(root, "mid");
+            quiet(mid, "add-remote", "up",
+                    new File(up, ".gitlet").getAbsolutePath());
+            run(mid, "fetch", "up", "master", "--filter=blobs-over:1k");
+
+            File copy = new File(root, "copy");
+            copy.mkdirs();
+            run(copy, "clone", up.getAbsolutePath());
+            assertEquals(big, read(copy, "big"));
+            assertEquals(run(up, "log", "--format=%H"),
+                    run(copy, "log", "--format=%H", "origin/master"));
+            assertEquals(aged, orphan.lastModified());
+            assertEquals("Removed 0 commits and 0 blobs.\n",
+                    run(copy, "gc", "--grace", "60"));
+            assertTrue(new File(copy, ".gitlet/.blobs/" + orphan.getName())
+                    .exists());
+
+            File partial = new File(root, "partial");
+            partial.mkdirs();
+            run(partial, "clone", mid.getAbsolutePath());
+            assertFalse(new File(partial, "big").exists());
+            String head = run(partial, "log", "-n", "1", "--format=%H",
+                    "origin/up/master").trim();
+            run(partial, "reset", head);
+            assertEquals(big, read(partial, "big"));
+            quiet(partial, "fsck");
+        } finally {
+            delete(root);
+        }
+    }
+
+    /** A bundle carries branches between repositories, unbundled or
+     *  fetched from as a remote, and a damaged bundle changes nothing. */
+    @Test
+    public void bundleTest() throws IOException, InterruptedException {
+        File root = Files.createTempDirectory("gitlet-bundle").toFile();
+        try {
+            File src = repo(root, "src", "f", "1\n");
+            quiet(src, "branch", "side");
+            StringBuilder lines = new StringBuilder();
+            Random random = new Random(0);
+            for (int i = 0; i < HISTORY * 100; i++) {
+                lines.append(random.nextLong()).append('\n');
+            }
+            commit(src, "two", "g", lines.toString());
+            run(src, "bundle", "create", "../all.bundle", "master", "side");
+            String master = run(src, "log", "-n", "1", "--format=%H");
+
+            File dst = repo(root, "dst");
+            String refs = run(dst, "unbundle", "../all.bundle");
+            assertTrue(refs.contains(master.trim() + " master\n"));
+            assertEquals(run(src, "log", "--format=%H"),
+                    run(dst, "log", "--format=%H", "bundle/master"));
+            run(dst, "reset", master.trim());
+            assertEquals(lines.toString(), read(dst, "g"));
+            quiet(dst, "fsck");
+
+            File remote = repo(root, "remote");
+            quiet(remote, "add-remote", "b", "../all.bundle");
+            run(remote, "fetch", "b", "side");
+            assertEquals(run(src, "log", "--format=%H", "side"),
+                    run(remote, "log", "--format=%H", "b/side"));
+            assertEquals("Cannot push to a bundle remote.\n",
+                    run(remote, "push", "b", "master"));
+
+            byte[] bytes = Files.readAllBytes(
+                    new File(root, "all.bundle").toPath());
+            bytes[bytes.length - 100] ^= (byte) 0xff;
+            Files.write(new File(root, "bad.bundle").toPath(), bytes);
+            Files.write(new File(root, "half.bundle").toPath(),
+                    Arrays.copyOf(bytes, bytes.length / 2));
+            File damaged = repo(root, "damaged");
+            for (String bundle : List.of("../bad.bundle", "../half.bundle")) {
+                assertEquals("Bundle is truncated or corrupt.\n",
+                        run(damaged, "unbundle", bundle));
+            }
+            assertFalse(run(damaged, "status").contains("bundle/"));
+            quiet(damaged, "fsck");
+
+            File meta = new File(src, ".gitlet/.commitMeta");
+            byte[] commit = Files.readAllBytes(
+                    new File(meta, ".commits/" + master.trim()).toPath());
+            byte[] mapping = Files.readAllBytes(
+                    new File(meta, ".blobMapping/" + master.trim()).toPath());
+            byte[] other = Files.readAllBytes(new File(meta, ".blobMapping/"
+                    + run(src, "log", "-n", "1", "--format=%H", "side")
+                    .trim()).toPath());
+            writeBundle(new File(root, "evil.bundle"),
+                    3, "../../../../pwned.txt", commit);
+            writeBundle(new File(root, "forged.bundle"),
+                    2, master.trim(), other, 3, master.trim(), commit);
+            writeBundle(new File(root, "orphan.bundle"),
+                    2, master.trim(), mapping);
+            for (String bundle : List.of("../evil.bundle",
+                    "../forged.bundle", "../orphan.bundle")) {
+                assertEquals("Bundle is truncated or corrupt.\n",
+                        run(damaged, "unbundle", bundle));
+            }
+            assertFalse(new File(root, "pwned.txt").exists());
+            for (String dir : List.of(".commits/", ".blobMapping/")) {
+                assertFalse(new File(damaged, ".gitlet/.commitMeta/" + dir
+                        + master.trim()).exists());
+            }
+            quiet(damaged, "fsck");
+        } finally {
+            delete(root);
+        }
+    }
+
+    /** fetch --depth brings only the newest commits, --deepen extends
+     *  them, and a merge needing the missing history asks for more;
+     *  over tcp too, where history merged in from below the shallow
+     *  boundary is cut off there as well. */
+    @Test
+    public void shallowTest() throws IOException, InterruptedException {
+        File root = Files.createTempDirectory("gitlet-shallow").toFile();
+        Process server = null;
+        try {
+            File src = repo(root, "src");
+            for (int i = 0; i < HISTORY; i++) {
+                commit(src, "c" + i, "f", i + "\n");
+                if (i == 1) {
+                    quiet(src, "branch", "old");
+                }
+            }
+            File local = repo(root, "local");
+            quiet(local, "add-remote", "o",
+                    new File(src, ".gitlet").getAbsolutePath());
+            run(local, "fetch", "o", "master", "--depth", "2");
+            assertEquals("c" + (HISTORY - 1) + "\nc" + (HISTORY - 2) + "\n",
+                    run(local, "log", "--format=%s", "o/master"));
+            quiet(local, "fsck");
+            assertEquals("No common ancestor found in shallow history; "
+                    + "fetch with --deepen first.\n",
+                    run(local, "merge", "o/master"));
+
+            run(local, "fetch", "o", "master", "--deepen", "3");
+            assertEquals(5, count(run(local, "log", "--format=%s",
+                    "o/master"), "\n"));
+            run(local, "fetch", "o", "master", "--deepen", "" + HISTORY);
+            assertEquals(run(src, "log", "--format=%H"),
+                    run(local, "log", "--format=%H", "o/master"));
+            assertFalse(new File(local, ".gitlet/.gitletMeta/.shallow")
+                    .exists());
+            run(local, "merge", "o/master");
+            assertEquals((HISTORY - 1) + "\n", read(local, "f"));
+            quiet(local, "fsck");
+
+            server = start(src, null, null, "serve", "--port", "0");
+            String port = new BufferedReader(new InputStreamReader(
+                    server.getInputStream(), StandardCharsets.UTF_8))
+                    .readLine().replaceAll("\\D", "");
+            File far = repo(root, "far");
+            quiet(far, "add-remote", "t", "tcp://127.0.0.1:" + port);
+            run(far, "fetch", "t", "master", "--depth", "2");
+            assertEquals("c" + (HISTORY - 1) + "\nc" + (HISTORY - 2) + "\n",
+                    run(far, "log", "--format=%s", "t/master"));
+            quiet(far, "fsck");
+            quiet(src, "checkout", "old");
+            commit(src, "side", "g", "g\n");
+            quiet(src, "checkout", "master");
+            run(src, "merge", "old");
+            run(far, "fetch", "t", "master");
+            assertTrue(run(far, "log", "--format=%s", "t/master")
+                    .startsWith("Merged old into master.\n"));
+            quiet(far, "fsck");
+            run(far, "fetch", "t", "master", "--deepen", "" + HISTORY);
+            assertEquals(run(src, "log", "--format=%H"),
+                    run(far, "log", "--format=%H", "t/master"));
+            assertFalse(new File(far, ".gitlet/.gitletMeta/.shallow")
+                    .exists());
+            quiet(far, "fsck");
+        } finally {
+            if (server != null) {
+                server.destroy();
+            }
+            delete(root);
+        }
+    }
+
+    /** fetch --filter leaves large blobs on the remote, promised, and
+     *  the first command to need one fetches it; a merge fetches only
+     *  the blobs of files it writes. */
+    @Test
+    public void partialFetchTest() throws IOException, InterruptedException {
+        File root = Files.createTempDirectory("gitlet-partial").toFile();
+        try {
+            String big = "x".repeat(BLOB_SIZE);
+            File src = repo(root, "src", "small", "s\n", "big", big);
+            File local = repo(root, "local");
+            File bigBlob = new File(local, ".gitlet/.blobs/"
+                    + Utils.sha1(new File(src, "big")));
+            quiet(local, "add-remote", "o",
+                    new File(src, ".gitlet").getAbsolutePath());
+            run(local, "fetch", "o", "master", "--filter=blobs-over:1k");
+            assertFalse(bigBlob.exists());
+            File promised = new File(local, ".gitlet/.gitletMeta/.promised");
+            assertTrue(promised.exists());
+            quiet(local, "fsck");
+            run(local, "gc");
+            quiet(local, "fsck");
+
+            File trace = new File(root, "trace");
+            assertEquals("Current branch fast-forwarded.\n",
+                    traced(local, trace, "merge", "o/master"));
+            assertEquals(1, total(trace, "objectsReceived"));
+            assertTrue(bigBlob.exists());
+            assertEquals(big, read(local, "big"));
+            assertFalse(promised.exists());
+            quiet(local, "fsck");
+
+            quiet(local, "sparse-checkout", "set", "small*");
+            commit(local, "local", "small", "local\n");
+            commit(src, "outside", "big", big + "y");
+            commit(src, "inside", "small2", big + "z");
+            run(local, "fetch", "o", "master", "--filter=blobs-over:1k");
+            run(local, "merge", "o/master");
+            assertEquals(big + "z", read(local, "small2"));
+            assertFalse(new File(local, ".gitlet/.blobs/"
+                    + Utils.sha1(big + "y")).exists());
+            assertTrue(promised.exists());
+            quiet(local, "fsck");
+        } finally {
+            delete(root);
+        }
+    }
+
+    /** Branches, any name included, survive being folded into the
+     *  packed refs file, can be deleted there, and all reach a clone;
+     *  none is made while another process holds the lock, and those of
+     *  a repository from before the packed file are moved into it. */
+    @Test
+    public void refsTest() throws IOException, InterruptedException {
+        File root = Files.createTempDirectory("gitlet-refs").toFile();
+        try {
+            File src = repo(root, "src", "f", "f\n");
+            File loose = new File(src, ".gitlet/.gitletMeta/.refs");
+            List<String> branches = new ArrayList<>();
+            for (int i = 0; i < REFS; i++) {
+                branches.add(String.format("topic/%02d x", i));
+                quiet(src, "branch", branches.get(i));
+            }
+            assertTrue(loose.list().length < REFS);
+            String status = run(src, "status");
+            for (String branch : branches) {
+                assertTrue(status.contains("\n" + branch + "\n"));
+            }
+            quiet(src, "rm-branch", branches.get(0));
+            assertEquals("A branch with that name does not exist.\n",
+                    run(src, "rm-branch", branches.get(0)));
+            quiet(src, "branch", branches.get(0));
+            assertEquals("A branch with that name already exists.\n",
+                    run(src, "branch", branches.get(0)));
+            File lock = new File(src, ".gitlet/.gitletMeta/.refs.lock");
+            assertTrue(lock.createNewFile());
+            assertTrue(run(src, "branch", "locked").startsWith(
+                    "Another gitlet process is updating branches;"));
+            assertTrue(lock.delete());
+            assertFalse(run(src, "status").contains("\nlocked\n"));
+
+            File old = repo(root, "old", "f", "f\n");
+            String head = run(old, "log", "-n", "1", "--format=%H").trim();
+            File meta = new File(old, ".gitlet/.gitletMeta");
+            delete(new File(meta, ".packedRefs"));
+            delete(new File(meta, ".refs"));
+            LinkedHashMap<String, String> branchMap = new LinkedHashMap<>();
+            branchMap.put("master", head);
+            branchMap.put("kept", head);
+            Utils.writeObject(new File(meta, ".branchMAP"), branchMap);
+            assertTrue(run(old, "status").startsWith(
+                    "=== Branches ===\n*master\nkept\n"));
+            assertFalse(new File(meta, ".branchMAP").exists());
+
+            File copy = new File(root, "copy");
+            copy.mkdirs();
+            run(copy, "clone", src.getAbsolutePath());
+            status = run(copy, "status");
+            for (String branch : branches) {
+                assertTrue(status.contains("\norigin/" + branch + "\n"));
+            }
+            assertEquals(run(src, "log", "--format=%H"),
+                    run(copy, "log", "--format=%H",
+                            "origin/" + branches.get(REFS - 1)));
+        } finally {
+            delete(root);
+        }
+    }
+
+    /** GITLET_TRACE appends one line of JSON per command, a command
+     *  stopped by an error included, and a trace that cannot be written
+     *  does not stop the command. */
+    @Test
+    public void traceTest() throws IOException, InterruptedException {
+        File root = Files.createTempDirectory("gitlet-trace").toFile();
+        try {
+            File repo = repo(root, "repo", "f", "f\n");
+            File trace = new File(root, "trace");
+            String status = run(repo, "status");
+            assertEquals(status, traced(repo, trace, "status"));
+            assertEquals("No changes added to the commit.\n",
+                    output(start(repo, null, trace, "commit", "none")));
+            String[] lines = read(root, "trace").split("\n");
+            assertEquals(2, lines.length);
+            assertTrue(lines[0].startsWith("{\"command\": \"status\""));
+            assertTrue(lines[0].contains("\"tree\": {\"name\": \"status\""));
+            assertTrue(lines[1].startsWith(
+                    "{\"command\": \"commit none\""));
+            assertTrue(lines[1].contains("{\"name\": \"readGitlet\""));
+            assertEquals(2, total(trace, "commitsRead"));
+
+            assertTrue(output(start(repo, null, root, "status"))
+                    .startsWith(status + "Cannot write trace: "));
+        } finally {
+            delete(root);
+        }
+    }
+
+    /** With fsmonitor running, status hashes only the files changed
+     *  since the last command and still reports every change; once it
+     *  stops, commands look at the whole directory again. */
+    @Test
+    public void fsmonitorTest() throws IOException, InterruptedException {
+        File root = Files.createTempDirectory("gitlet-fsmonitor").toFile();
+        Process monitor = null;
+        try {
+            File repo = repo(root, "repo", "f1", "1\n", "f2", "2\n",
+                    "f3", "3\n");
+            monitor = start(repo, null, null, "fsmonitor");
+            String banner = new BufferedReader(new InputStreamReader(
+                    monitor.getInputStream(), StandardCharsets.UTF_8))
+                    .readLine();
+            assertTrue(banner, banner.startsWith("Watching on port "));
+            assertEquals("A file system monitor is already running.\n",
+                    run(repo, "fsmonitor"));
+
+            File trace = new File(root, "trace");
+            String status = run(repo, "status");
+            assertEquals(status, traced(repo, trace, "status"));
+            assertEquals(0, total(trace, "filesHashed"));
+            write(repo, "f2", "changed\n");
+            write(repo, "new", "new\n");
+            status = traced(repo, trace, "status");
+            assertEquals(1, total(trace, "filesHashed"));
+            assertTrue(status.contains("\nf2 (modified)\n"));
+            assertTrue(status.contains("=== Untracked Files ===\nnew\n"));
+            quiet(repo, "add", "f2");
+            assertTrue(run(repo, "status").contains(
+                    "=== Staged Files ===\nf2\n"));
+
+            monitor.destroy();
+            monitor.waitFor();
+            assertFalse(new File(repo, ".gitlet/.gitletMeta/.fsmonitor")
+                    .exists());
+            write(repo, "f3", "changed\n");
+            assertTrue(traced(repo, trace, "status")
+                    .contains("\nf3 (modified)\n"));
+            assertEquals(3, total(trace, "filesHashed"));
+        } finally {
+            if (monitor != null) {
+                monitor.destroy();
+            }
+            delete(root);
+        }
+    }
+
+    /** blame names the commit that last changed each line, of the head
+     *  or an older commit, and blaming again after a commit reuses what
+     *  it found the first time. */
+    @Test
+    public void blameTest() throws IOException, InterruptedException {
+        File root = Files.createTempDirectory("gitlet-blame").toFile();
+        try {
+            File repo = repo(root, "repo", "f", "a\nb\nc\n");
+            String first = run(repo, "log", "-n", "1", "--format=%H");
+            commit(repo, "second", "f", "a\nB\nc\nd\n");
+            String second = run(repo, "log", "-n", "1", "--format=%H");
+            String[] lines = run(repo, "blame", "f").split("\n");
+            assertEquals(4, lines.length);
+            String[] origins = {first, second, first, second};
+            String[] text = {"a", "B", "c", "d"};
+            for (int i = 0; i < lines.length; i++) {
+                assertTrue(lines[i], lines[i].startsWith(
+                        origins[i].substring(0, 7) + " ("));
+                assertTrue(lines[i], lines[i].endsWith(
+                        " " + (i + 1) + ") " + text[i]));
+            }
+            assertEquals(3, count(run(repo, "blame", first.trim(), "f"),
+                    first.substring(0, 7)));
+            assertEquals("File does not exist in that commit.\n",
+                    run(repo, "blame", "g"));
+
+            StringBuilder contents = new StringBuilder("a\nB\nc\nd\n");
+            for (int i = 0; i < HISTORY; i++) {
+                contents.append(i).append('\n');
+                commit(repo, "c" + i, "f", contents.toString());
+            }
+            File trace = new File(root, "trace");
+            traced(repo, trace, "blame", "f");
+            int full = total(trace, "commitsRead");
+            commit(repo, "last", "f", contents + "last\n");
+            lines = traced(repo, trace, "blame", "f").split("\n");
+            assertTrue(total(trace, "commitsRead") < full - HISTORY / 2);
+            assertEquals(HISTORY + 5, lines.length);
+            assertTrue(lines[1].startsWith(second.substring(0, 7)));
+            assertEquals(run(repo, "log", "-n", "1", "--format=%h"),
+                    lines[HISTORY + 4].substring(0, 7) + "\n");
+        } finally {
+            delete(root);
+        }
+    }
+
+    /** Run gitlet with ARGS in DIR, with a heap smaller than
+     *  LARGE_SIZE, failing if it prints anything unexpected. */
+    private static void gitlet(File dir, String... args)
+            throws IOException, InterruptedException {
+        String output = output(dir, LARGE_HEAP, args);
+        for (String line : output.split("\n")) {
+            assertTrue("gitlet " + String.join(" ", args) + ": " + output,
+                    line.isEmpty()
+                    || line.equals("Encountered a merge conflict."));
+        }
+    }
+
+    /** Run gitlet with ARGS in DIR, failing if it prints anything. */
+    private static void quiet(File dir, String... args)
+            throws IOException, InterruptedException {
+        assertEquals("gitlet " + String.join(" ", args), "",
+                run(dir, args));
+    }
+
+    /** Returns the output of gitlet run with ARGS in DIR. */
+    private static String run(File dir, String... args)
+            throws IOException, InterruptedException {
+        return output(dir, null, args);
+    }
+
+    /** Returns the output, standard error included, of gitlet run with
+     *  ARGS in DIR, with a heap of HEAP or the default iff it is null. */
+    private static String output(File dir, String heap, String... args)
+            throws IOException, InterruptedException {
+        return output(start(dir, heap, null, args));
+    }
+
+    /** Returns the output of gitlet run with ARGS in DIR, tracing it to
+     *  the file TRACE, replacing any earlier trace. */
+    private static String traced(File dir, File trace, String... args)
+            throws IOException, InterruptedException {
+        trace.delete();
+        return output(start(dir, null, trace, args));
+    }
+
+    /** Returns the output, standard error included, of PROCESS once it
+     *  has exited. */
+    private static String output(Process process)
+            throws IOException, InterruptedException {
+        String output = new String(process.getInputStream().readAllBytes(),
+                StandardCharsets.UTF_8);
+        process.waitFor();
+        return output;
+    }
+
+    /** Returns gitlet started with ARGS in DIR, with a heap of HEAP or
+     *  the default iff it is null, and tracing to TRACE iff it is not
+     *  null.  Standard error goes to its output. */
+    private static Process start(File dir, String heap, File trace,
+                                 String... args) throws IOException {
+        List<String> command = new ArrayList<>(List.of(
+                new File(System.getProperty("java.home"), "bin/java")
+                        .getPath()));
+        if (heap != null) {
+            command.add("-Xmx" + heap);
+        }
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"),
+                "gitlet.Main"));
+        command.addAll(Arrays.asList(args));
+        ProcessBuilder builder = new ProcessBuilder(command).directory(dir)
+                .redirectErrorStream(true);
+        if (trace != null) {
+            builder.environment().put("GITLET_TRACE", trace.getPath());
+        }
+        return builder.start();
+    }
+
+    /** Relays each connection made to RELAY to PORT on this host,
+     *  passing on only the first LIMIT bytes of the reply, after which
+     *  the connection hangs like one whose sender was cut off. */
+    private static void relay(ServerSocket relay, int port, long limit) {
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    Socket client = relay.accept();
+                    Socket server = new Socket(
+                            InetAddress.getLoopbackAddress(), port);
+                    pump(client, server, Long.MAX_VALUE);
+                    pump(server, client, limit);
+                }
+            } catch (IOException excp) {
+                return;
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /** Copies at most LIMIT bytes from FROM to TO on a new thread,
+     *  closing TO if FROM ends first. */
+    private static void pump(Socket from, Socket to, long limit) {
+        Thread pump = new Thread(() -> {
+            byte[] buf = new byte[1 << 12];
+            try (InputStream in = from.getInputStream()) {
+                OutputStream out = to.getOutputStream();
+                for (long left = limit; left > 0; ) {
+                    int n = in.read(buf, 0, (int) Math.min(buf.length, left));
+                    if (n < 0) {
+                        to.close();
+                        return;
+                    }
+                    out.write(buf, 0, n);
+                    left -= n;
+                }
+            } catch (IOException excp) {
+                return;
+            }
+        });
+        pump.setDaemon(true);
+        pump.start();
+    }
+
+    /** Returns the sum of COUNTER over the commands traced to TRACE. */
+    private static int total(File trace, String counter) {
+        Matcher totals = Pattern.compile("\"totals\": \\{[^}]*\""
+                + counter + "\": (\\d+)")
+                .matcher(read(trace.getParentFile(), trace.getName()));
+        int total = 0;
+        while (totals.find()) {
+            total += Integer.parseInt(totals.group(1));
+        }
+        return total;
+    }
+
+    /** Returns a new repository named NAME under ROOT, holding FILES, a
+     *  file name then its contents, committed in one commit. */
+    private static File repo(File root, String name, String... files)
+            throws IOException, InterruptedException {
+        File repo = new File(root, name);
+        repo.mkdirs();
+        quiet(repo, "init");
+        if (files.length > 0) {
+            commit(repo, "files", files);
+        }
+        return repo;
+    }
+
+    /** Write FILES, a file name then its contents, to REPO, add them and
+     *  commit them with message MSG. */
+    private static void commit(File repo, String msg, String... files)
+            throws IOException, InterruptedException {
+        for (int i = 0; i < files.length; i += 2) {
+            write(repo, files[i], files[i + 1]);
+            quiet(repo, "add", files[i]);
+        }
+        quiet(repo, "commit", msg);
+    }
+
+    /** Write to FILE a bundle advertising no refs and carrying
+     *  RECORDS, given as the record type, name and contents of each
+     *  object in turn, with a correct trailing checksum. */
+    private static void writeBundle(File file, Object... records)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF("gitlet bundle v2");
+        out.writeInt(0);
+        for (int i = 0; i < records.length; i += 3) {
+            byte[] contents = (byte[]) records[i + 2];
+            Deflater deflater = new Deflater();
+            deflater.setInput(contents);
+            deflater.finish();
+            byte[] compressed = new byte[contents.length + 64];
+            int length = deflater.deflate(compressed);
+            deflater.end();
+            out.writeByte((Integer) records[i]);
+            out.writeUTF((String) records[i + 1]);
+            out.writeInt(length);
+            out.write(compressed, 0, length);
+        }
+        out.writeByte(0);
+        out.write(HexFormat.of().parseHex(Utils.sha1(bytes.toByteArray())));
+        Files.write(file.toPath(), bytes.toByteArray());
+    }
+
+    /** Write CONTENTS to the file NAME in DIR. */
+    private static void write(File dir, String name, String contents) {
+        Utils.writeContents(new File(dir, name), contents);
+    }
+
+    /** Returns the contents of the file NAME in DIR. */
+    private static String read(File dir, String name) {
+        return Utils.readContentsAsString(new File(dir, name));
+    }
+
+    /** Write LARGE_SIZE random bytes from SEED to FILE. */
+    private static void writeRandom(File file, long seed)
+            throws IOException {
+        Random random = new Random(seed);
+        byte[] buf = new byte[1 << 16];
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            for (long n = 0; n < LARGE_SIZE; n += buf.length) {
+                random.nextBytes(buf);
+                out.write(buf);
+            }
+        }
+    }
+
+    /** Delete FILE and, if it is a directory, everything under it. */
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /** Name every initial commit has had. */
+    private static final String LEGACY_INITIAL =
+            "4fb48c12e2c10aa0bb0a404ba41b02346b811247";
+
+    /** Name of LEGACY_COMMIT. */
+    private static final String LEGACY =
+            "78edf4c797626af20b92f8f046d561277305f9de";
+
+    /** A commit "legacy" of LEGACY_MAPPING on the initial commit, as
+     *  written before the timestamp was split, in hex. */
+    private static final String LEGACY_COMMIT = "aced00057372000d6769746c65742e"
+            + "436f6d6d6974c7dff43f4047eb770200054c000f5f6d65726765506172656e"
+            + "745348417400124c6a6176612f6c616e672f537472696e673b4c00045f6d73"
+            + "6771007e00014c000a5f706172656e7453484171007e00014c00075f736861"
+            + "56616c71007e00014c00055f74696d6571007e00017870707400066c656761"
+            + "63797400283466623438633132653263313061613062623061343034626134"
+            + "31623032333436623831313234377400283738656466346337393736323661"
+            + "66323062393266386630343664353631323737333035663964657400244461"
+            + "74653a204d6f6e204f63742031392031303a30353a31362032303236202b30"
+            + "303030";
+
+    /** The mapping of LEGACY_COMMIT, tracking f as "legacy\n", in hex. */
+    private static final String LEGACY_MAPPING = "aced0005737200176a6176612e75"
+            + "74696c2e4c696e6b6564486173684d617034c04e5c106cc0fb0200015a000b"
+            + "6163636573734f72646572787200116a6176612e7574696c2e486173684d61"
+            + "700507dac1c31660d103000246000a6c6f6164466163746f72490009746872"
+            + "6573686f6c6478703f4000000000000c770800000010000000017400016674"
+            + "00283063373334386333346336373336386437363365336534393961623635"
+            + "35636263636661323563377800";
+
+    /** Number of commits in the histories the tests build. */
+    private static final int HISTORY = 12;
+
+    /** Milliseconds after which a directory modified by a command is
+     *  trusted to show its next modification. */
+    private static final long SETTLE_MILLIS = 2100;
+
+    /** Number of branches refsTest makes, enough to pack them. */
+    private static final int REFS = 70;
+
+    /** Size of the file addTest checks is not copied needlessly, far
+     *  more than the stage and commit metadata a command writes. */
+    private static final int BLOB_SIZE = 100000;
+
+    /** Heap of the gitlet processes in largeFileTest. */
+    private static final String LARGE_HEAP = "16m";
+
+    /** Size of the file in largeFileTest, a multiple of 64 KiB well over
+     *  LARGE_HEAP. */
+    private static final long LARGE_SIZE = 48L << 20;
+
 }
 
 
@@ -7,11 +7,16 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -19,6 +24,7 @@ import java.util.Arrays;
 import java.util.Formatter;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 import static gitlet.Const.*;
 
@@ -31,27 +37,30 @@ public class Utils {
     /* SHA-1 HASH VALUES. */
 
     /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
-    static final int UID_LENGTH = 40;
+    public static final int UID_LENGTH = 40;
 
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
+    @SuppressWarnings("try")
     public static String sha1(Object... vals) {
-        try {
+        try (Trace.Span span = Trace.span("sha1")) {
             MessageDigest md = MessageDigest.getInstance("SHA-1");
+            long hashed = 0;
             for (Object val : vals) {
                 if (val instanceof byte[]) {
                     md.update((byte[]) val);
+                    hashed += ((byte[]) val).length;
                 } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+                    byte[] bytes =
+                        ((String) val).getBytes(StandardCharsets.UTF_8);
+                    md.update(bytes);
+                    hashed += bytes.length;
                 } else {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
+            Trace.count(Trace.BYTES_HASHED, hashed);
+            return toHex(md.digest());
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
@@ -63,11 +72,146 @@ public class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
-    /** Returns the SHA-1 hash based on the contents inside the FILE.*/
+    /** Returns the SHA-1 hash based on the contents inside the FILE.
+     *  The file is streamed through the digest rather than read whole. */
+    @SuppressWarnings("try")
     public static String sha1(File file) {
-        return sha1(readContents(file));
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        try (Trace.Span span = Trace.span("sha1File");
+             InputStream in = Files.newInputStream(file.toPath())) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] buf = new byte[BUFFER_SIZE];
+            long hashed = 0;
+            for (int n = in.read(buf); n != -1; n = in.read(buf)) {
+                md.update(buf, 0, n);
+                hashed += n;
+            }
+            Trace.count(Trace.FILES_HASHED, 1);
+            Trace.count(Trace.BYTES_HASHED, hashed);
+            Trace.count(Trace.BYTES_READ, hashed);
+            return toHex(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
     }
 
+    /** Writes the contents of FILE into DIR as a blob named by their
+     *  SHA-1 hash and returns that hash.  FILE is hashed first, so a
+     *  blob DIR already has is only touched, never copied again. */
+    public static String writeBlob(File file, File dir) {
+        return writeBlob(file, dir, sha1(file));
+    }
+
+    /** Writes the contents of FILE, whose SHA-1 hash was HASH when last
+     *  read, into DIR as a blob named by their hash, and returns that
+     *  hash.  If DIR already has blob HASH, it is touched and nothing is
+     *  copied.  Otherwise the file is hashed again while copying, so a
+     *  file changed since is stored under its new hash.  The copy is
+     *  made under a temporary name next to DIR and moved into place, so
+     *  DIR never holds a partial blob. */
+    @SuppressWarnings("try")
+    public static String writeBlob(File file, File dir, String hash) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        if (touch(new File(dir, hash))) {
+            return hash;
+        }
+        Path tmp = null;
+        Events.ObjectWrite event = new Events.ObjectWrite();
+        event.begin();
+        try (Trace.Span span = Trace.span("writeBlob")) {
+            tmp = newTempFile(dir.getParentFile());
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            long copied = 0;
+            try (InputStream in = Files.newInputStream(file.toPath());
+                 OutputStream out = Files.newOutputStream(tmp)) {
+                byte[] buf = new byte[BUFFER_SIZE];
+                for (int n = in.read(buf); n != -1; n = in.read(buf)) {
+                    md.update(buf, 0, n);
+                    out.write(buf, 0, n);
+                    copied += n;
+                }
+            }
+            Trace.count(Trace.FILES_HASHED, 1);
+            Trace.count(Trace.BYTES_HASHED, copied);
+            Trace.count(Trace.BYTES_READ, copied);
+            Trace.count(Trace.BYTES_WRITTEN, copied);
+            String stored = toHex(md.digest());
+            File blob = new File(dir, stored);
+            if (!touch(blob)) {
+                Files.move(tmp, blob.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (event.shouldCommit()) {
+                event.id = stored;
+                event.type = "blob";
+                event.size = copied;
+                event.commit();
+            }
+            return stored;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        } finally {
+            if (tmp != null) {
+                tmp.toFile().delete();
+            }
+        }
+    }
+
+    /** Creates and returns a new, empty file in DIR named blobN.tmp,
+     *  for a random N.  Unlike Files.createTempFile, which makes the
+     *  file readable by its owner only, it gets the default permissions,
+     *  so blobs moved into place from it and files copied from those
+     *  blobs do too. */
+    public static Path newTempFile(File dir) throws IOException {
+        return newTempFile(dir, "blob");
+    }
+
+    /** Creates and returns a new, empty file in DIR named PREFIXN.tmp,
+     *  for a random N, with the default permissions. */
+    public static Path newTempFile(File dir, String prefix)
+            throws IOException {
+        while (true) {
+            Path tmp = dir.toPath().resolve(prefix
+                    + Long.toUnsignedString(
+                            ThreadLocalRandom.current().nextLong())
+                    + ".tmp");
+            try {
+                return Files.createFile(tmp);
+            } catch (FileAlreadyExistsException excp) {
+                continue;
+            }
+        }
+    }
+
+    /** Sets the modification time of FILE, an object a writer would
+     *  have written had it not been there already, to now, so that gc
+     *  gives it the same grace period as an object just written.
+     *  Returns true iff FILE exists. */
+    public static boolean touch(File file) {
+        return file.setLastModified(System.currentTimeMillis());
+    }
+
+    /** Returns DIGEST as a lower-case hexadecimal numeral. */
+    public static String toHex(byte[] digest) {
+        Formatter result = new Formatter();
+        for (byte b : digest) {
+            result.format("%02x", b);
+        }
+        return result.toString();
+    }
+
+    /** Size of the buffer used when streaming file contents. */
+    public static final int BUFFER_SIZE = 1 << 16;
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -118,13 +262,18 @@ public class Utils {
 
     /** Return the entire contents of FILE as a byte array.  FILE must
      *  be a normal file.  Throws IllegalArgumentException
-     *  in case of problems. */
+     *  in case of problems.  Only for small files, such as metadata;
+     *  file contents of any size go through sha1(File), writeBlob and
+     *  copyContents, which stream. */
+    @SuppressWarnings("try")
     public static byte[] readContents(File file) {
         if (!file.isFile()) {
             throw new IllegalArgumentException("must be a normal file");
         }
-        try {
-            return Files.readAllBytes(file.toPath());
+        try (Trace.Span span = Trace.span("readContents")) {
+            byte[] contents = Files.readAllBytes(file.toPath());
+            Trace.count(Trace.BYTES_READ, contents.length);
+            return contents;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -141,36 +290,42 @@ public class Utils {
      *  creating or overwriting it as needed.  Each object in CONTENTS may be
      *  either a String or a byte array.  Throws IllegalArgumentException
      *  in case of problems. */
+    @SuppressWarnings("try")
     public static void writeContents(File file, Object... contents) {
-        try {
+        try (Trace.Span span = Trace.span("writeContents")) {
             if (file.isDirectory()) {
                 throw
                     new IllegalArgumentException("cannot overwrite directory");
             }
             BufferedOutputStream str =
                 new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+            long written = 0;
             for (Object obj : contents) {
-                if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
-                } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
-                }
+                byte[] bytes = obj instanceof byte[] ? (byte[]) obj
+                    : ((String) obj).getBytes(StandardCharsets.UTF_8);
+                str.write(bytes);
+                written += bytes.length;
             }
             str.close();
+            Trace.count(Trace.BYTES_WRITTEN, written);
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
     /** Copy contents in ORG to DEST, if DEST does not exist,
-     * create a new dest file.
+     * create a new dest file.  The contents are streamed, so files of
+     * any size can be copied.  Only the contents are copied: a new DEST
+     * gets the default permissions, not those of ORG.
      */
+    @SuppressWarnings("try")
     public static void copyContents(File org, File dest) throws IOException {
-        byte[] content = readContents(org);
-        if (dest.exists()) {
-            dest.createNewFile();
+        try (Trace.Span span = Trace.span("copyContents");
+             OutputStream out = Files.newOutputStream(dest.toPath())) {
+            long copied = Files.copy(org.toPath(), out);
+            Trace.count(Trace.BYTES_READ, copied);
+            Trace.count(Trace.BYTES_WRITTEN, copied);
         }
-        writeContents(dest, content);
     }
 
     /**copy all files from orgDir to DestDir, overwring files if
@@ -189,13 +344,26 @@ public class Utils {
 
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
+    @SuppressWarnings("try")
     public static <T extends Serializable> T readObject(
             File file, Class<T> expectedClass) {
-        try {
+        Events.ObjectRead event = new Events.ObjectRead();
+        event.begin();
+        try (Trace.Span span = Trace.span("readObject")) {
             ObjectInputStream in =
                 new ObjectInputStream(new FileInputStream(file));
             T result = expectedClass.cast(in.readObject());
             in.close();
+            if (Trace.ENABLED) {
+                Trace.count(Trace.OBJECTS_READ, 1);
+                Trace.count(Trace.BYTES_READ, file.length());
+            }
+            if (event.shouldCommit()) {
+                event.id = file.getName();
+                event.type = expectedClass.getSimpleName();
+                event.size = file.length();
+                event.commit();
+            }
             return result;
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
@@ -216,7 +384,30 @@ public class Utils {
 
     /** Write OBJ to FILE. */
     public static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+        Events.ObjectWrite event = new Events.ObjectWrite();
+        event.begin();
+        byte[] bytes = serialize(obj);
+        writeContents(file, bytes);
+        if (event.shouldCommit()) {
+            event.id = file.getName();
+            event.type = obj.getClass().getSimpleName();
+            event.size = bytes.length;
+            event.commit();
+        }
+    }
+
+    /** Write OBJ to a temporary sibling of FILE and rename it over FILE,
+     *  so readers see either the old or the new contents, never a mix. */
+    public static void writeObjectAtomic(File file, Serializable obj) {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        writeObject(tmp, obj);
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
     }
 
     /* DIRECTORIES */
@@ -233,8 +424,13 @@ public class Utils {
     /** Returns a list of the names of all plain files in the directory DIR, in
      *  lexicographic order as Java Strings.  Returns null if DIR does
      *  not denote a directory. */
+    @SuppressWarnings("try")
     public static List<String> plainFilenamesIn(File dir) {
-        String[] files = dir.list(PLAIN_FILES);
+        String[] files;
+        try (Trace.Span span = Trace.span("plainFilenamesIn")) {
+            files = dir.list(PLAIN_FILES);
+            Trace.count(Trace.DIRS_LISTED, 1);
+        }
         if (files == null) {
             return null;
         } else {
@@ -0,0 +1,81 @@
+package gitlet.bench;
+
+import gitlet.Main;
+import gitlet.Utils;
+
+import java.io.File;
+import java.io.IOException;
+
+/** A scratch gitlet repository in the working directory for benchmarks
+ *  to run against.  Gitlet always works on the working directory, so
+ *  the benchmarks must be run from an empty scratch directory, as the
+ *  run target of the Makefile does.
+ */
+final class BenchRepo {
+
+    /** Make a fresh repository with COMMITS commits on master, each
+     *  changing one of FILES files, and a branch "side" that forks off
+     *  halfway and has COMMITS / 2 commits of its own.  Errors rather
+     *  than touch a repository it did not make itself. */
+    static void create(int commits, int files) throws IOException {
+        if (GITLET_DIR.exists() && !MARKER.exists()) {
+            throw new IllegalStateException("refusing to replace a real "
+                    + "repository; run benchmarks from a scratch directory");
+        }
+        delete(GITLET_DIR);
+        for (int i = 0; i < files; i++) {
+            new File(fileName(i)).delete();
+        }
+        Main.main("init");
+        MARKER.createNewFile();
+        for (int i = 0; i < files; i++) {
+            Utils.writeContents(new File(fileName(i)), "version 0\n");
+            Main.main("add", fileName(i));
+        }
+        Main.main("commit", "add files");
+        for (int i = 1; i < commits; i++) {
+            if (i == commits / 2) {
+                Main.main("branch", "side");
+            }
+            change(i, i % files, "master");
+        }
+        Main.main("checkout", "side");
+        for (int i = 0; i < commits / 2; i++) {
+            change(i, (files - 1) - i % files, "side");
+        }
+        Main.main("checkout", "master");
+        Main.readGitlet();
+    }
+
+    /** Commit a new version, numbered I, of file number FILE on BRANCH,
+     *  the active branch. */
+    private static void change(int i, int file, String branch)
+            throws IOException {
+        Utils.writeContents(new File(fileName(file)),
+                branch + " version " + i + "\n");
+        Main.main("add", fileName(file));
+        Main.main("commit", branch + " commit " + i);
+    }
+
+    /** Returns the name of file number I. */
+    static String fileName(int i) {
+        return "file" + i + ".txt";
+    }
+
+    /** Delete FILE and, if it is a directory, everything under it. */
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /** The .gitlet directory of the working directory. */
+    private static final File GITLET_DIR = new File(".gitlet");
+
+    /** File marking a repository as made by create. */
+    private static final File MARKER = new File(GITLET_DIR, ".bench");
+}
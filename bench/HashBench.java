@@ -0,0 +1,68 @@
+package gitlet.bench;
+
+import gitlet.Utils;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Utils.sha1, over contents in memory and in a file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashBench {
+
+    /** Size of the contents hashed, in bytes. */
+    @Param({"1024", "65536", "1048576", "16777216"})
+    private int _size;
+
+    /** Contents hashed. */
+    private byte[] _contents;
+
+    /** File holding _CONTENTS. */
+    private File _file;
+
+    /** Make random contents of the size benchmarked. */
+    @Setup
+    public void setup() {
+        _contents = new byte[_size];
+        new Random(_size).nextBytes(_contents);
+        _file = new File("hash-" + _size + ".bin");
+        Utils.writeContents(_file, (Object) _contents);
+    }
+
+    /** Remove the file made by setup. */
+    @TearDown
+    public void tearDown() {
+        _file.delete();
+    }
+
+    /** Hash contents already in memory. */
+    @Benchmark
+    public String sha1Bytes() {
+        return Utils.sha1((Object) _contents);
+    }
+
+    /** Hash contents streamed from a file, as add and fsck do. */
+    @Benchmark
+    public String sha1File() {
+        return Utils.sha1(_file);
+    }
+}
@@ -0,0 +1,303 @@
+package gitlet.bench;
+
+import gitlet.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** End-to-end benchmarks of gitlet commands against an existing
+ *  repository, such as one made by RepoGenerator.  Each command runs as
+ *  its own process, exactly as a user runs it, so the times include
+ *  starting the JVM and reading and saving the repository.
+ *  Usage: java gitlet.bench.MacroBench REPO [OPTION VALUE]...
+ *     --reps N      timed runs of each command (default 10).
+ *     --ops LIST    comma-separated commands to time, from add, commit,
+ *                   status, log, checkout, merge, push and fetch
+ *                   (default all).
+ *     --json FILE   also write the results to FILE as JSON.
+ *  Prints the 50th, 90th and 99th percentile and the maximum time of
+ *  each command in milliseconds.  Any setup a command needs, such as
+ *  diverged branches before a merge, is done untimed before every run.
+ *  REPO gains commits and branches, so it should be a scratch copy;
+ *  push and fetch go to and from a clone in a temporary directory.
+ */
+public class MacroBench {
+
+    /** Run the benchmarks described by ARGS. */
+    public static void main(String... args) throws IOException {
+        if (args.length % 2 != 1) {
+            usage();
+        }
+        File repo = new File(args[0]).getAbsoluteFile();
+        List<String> ops = Arrays.asList(OPS);
+        File json = null;
+        for (int i = 1; i < args.length; i += 2) {
+            switch (args[i]) {
+            case "--reps": _reps = Integer.parseInt(args[i + 1]); break;
+            case "--ops": ops = Arrays.asList(args[i + 1].split(",")); break;
+            case "--json": json = new File(args[i + 1]); break;
+            default: usage();
+            }
+        }
+        if (!new File(repo, ".gitlet").isDirectory() || _reps < 1
+                || !Arrays.asList(OPS).containsAll(ops)) {
+            usage();
+        }
+        _output = File.createTempFile("gitlet-macro", ".out");
+        _output.deleteOnExit();
+        _tag = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+        Map<String, List<Long>> results = new LinkedHashMap<>();
+        run(repo, "status");
+        for (String op : OPS) {
+            if (ops.contains(op)) {
+                results.put(op, bench(op, repo));
+            }
+        }
+        report(results, json);
+    }
+
+    /** Returns the times in nanoseconds of _reps runs of command OP
+     *  against REPO. */
+    private static List<Long> bench(String op, File repo)
+            throws IOException {
+        List<Long> times = new ArrayList<>();
+        switch (op) {
+        case "status":
+        case "log":
+            for (int i = 0; i < _reps; i++) {
+                times.add(time(repo, false, op));
+            }
+            break;
+        case "add":
+            for (int i = 0; i < _reps; i++) {
+                change(repo, "a", i);
+                times.add(time(repo, true, "add", fileName("a")));
+                run(repo, "commit", "macro add " + i);
+            }
+            break;
+        case "commit":
+            for (int i = 0; i < _reps; i++) {
+                change(repo, "c", i);
+                run(repo, "add", fileName("c"));
+                times.add(time(repo, true, "commit", "macro commit " + i));
+            }
+            break;
+        case "checkout":
+            String other = otherBranch(repo);
+            if (other == null) {
+                System.err.println("Skipping checkout: no other branch.");
+                break;
+            }
+            for (int i = 0; i < _reps; i++) {
+                times.add(time(repo, true, "checkout", other));
+                times.add(time(repo, true, "checkout", "master"));
+            }
+            break;
+        case "merge":
+            for (int i = 0; i < _reps; i++) {
+                String branch = "macro-" + _tag + "-" + i;
+                run(repo, "branch", branch);
+                commit(repo, "m", i);
+                run(repo, "checkout", branch);
+                commit(repo, "b", i);
+                run(repo, "checkout", "master");
+                times.add(time(repo, false, "merge", branch));
+            }
+            break;
+        default:
+            times.addAll(benchRemote(op, repo));
+        }
+        return times;
+    }
+
+    /** Returns the times in nanoseconds of _reps runs of OP, push or
+     *  fetch, between REPO and a clone of it.  A push sends one new
+     *  commit of the clone, and a fetch brings one new commit of REPO. */
+    private static List<Long> benchRemote(String op, File repo)
+            throws IOException {
+        File clone = Files.createTempDirectory("gitlet-macro").toFile();
+        List<Long> times = new ArrayList<>();
+        try {
+            run(clone, "clone", repo.getPath());
+            for (int i = 0; i < _reps; i++) {
+                if (op.equals("push")) {
+                    commit(clone, "p", i);
+                    times.add(time(clone, true, "push", "origin", "master"));
+                } else {
+                    commit(repo, "f", i);
+                    times.add(time(clone, true, "fetch", "origin", "master"));
+                }
+            }
+            if (op.equals("push")) {
+                run(repo, "reset", capture(repo, "log", "-n", "1",
+                        "--format=%H").trim());
+            }
+        } finally {
+            delete(clone);
+        }
+        return times;
+    }
+
+    /** Returns the time in nanoseconds of running gitlet with ARGS in
+     *  directory DIR.  Iff QUIET, the command must print nothing. */
+    private static long time(File dir, boolean quiet, String... args)
+            throws IOException {
+        long start = System.nanoTime();
+        String output = capture(dir, args);
+        long elapsed = System.nanoTime() - start;
+        if (quiet && !output.isEmpty()) {
+            fail(args, output);
+        }
+        return elapsed;
+    }
+
+    /** Run gitlet with ARGS in directory DIR, untimed, failing iff it
+     *  prints anything, as gitlet prints every error. */
+    private static void run(File dir, String... args) throws IOException {
+        String output = capture(dir, args);
+        if (!output.isEmpty() && !args[0].equals("status")) {
+            fail(args, output);
+        }
+    }
+
+    /** Returns the output of running gitlet with ARGS in directory DIR.
+     *  Output goes to a file so that a long log never blocks on a full
+     *  pipe. */
+    private static String capture(File dir, String... args)
+            throws IOException {
+        List<String> command = new ArrayList<>(List.of(JAVA, "-cp",
+                System.getProperty("java.class.path"), "gitlet.Main"));
+        Collections.addAll(command, args);
+        Process process = new ProcessBuilder(command).directory(dir)
+                .redirectOutput(_output)
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        try {
+            process.waitFor();
+        } catch (InterruptedException excp) {
+            throw new IOException(excp);
+        }
+        return Utils.readContentsAsString(_output);
+    }
+
+    /** Write version I of macro file NAME in REPO, then commit it. */
+    private static void commit(File repo, String name, int i)
+            throws IOException {
+        change(repo, name, i);
+        run(repo, "add", fileName(name));
+        run(repo, "commit", "macro " + name + " " + i);
+    }
+
+    /** Write version I of macro file NAME in REPO. */
+    private static void change(File repo, String name, int i) {
+        Utils.writeContents(new File(repo, fileName(name)),
+                "macro " + _tag + " version " + i + "\n");
+    }
+
+    /** Returns the name of macro file NAME. */
+    private static String fileName(String name) {
+        return "macro-" + name + ".txt";
+    }
+
+    /** Returns a branch of REPO other than master, or null iff there is
+     *  none, as listed by status. */
+    private static String otherBranch(File repo) throws IOException {
+        boolean branches = false;
+        for (String line : capture(repo, "status").split("\n")) {
+            if (line.equals("=== Branches ===")) {
+                branches = true;
+            } else if (line.isEmpty()) {
+                branches = false;
+            } else if (branches && !line.equals("*master")) {
+                return line.startsWith("*") ? line.substring(1) : line;
+            }
+        }
+        return null;
+    }
+
+    /** Print the percentiles of RESULTS, times in nanoseconds of each
+     *  command, and write them to JSON too iff it is not null. */
+    private static void report(Map<String, List<Long>> results, File json) {
+        StringBuilder out = new StringBuilder("[");
+        System.out.printf("%-10s %5s %9s %9s %9s %9s%n", "command", "runs",
+                "p50 ms", "p90 ms", "p99 ms", "max ms");
+        for (Map.Entry<String, List<Long>> entry : results.entrySet()) {
+            List<Long> times = entry.getValue();
+            if (times.isEmpty()) {
+                continue;
+            }
+            Collections.sort(times);
+            double[] stats = {
+                percentile(times, 50), percentile(times, 90),
+                percentile(times, 99), percentile(times, 100)
+            };
+            System.out.printf("%-10s %5d %9.1f %9.1f %9.1f %9.1f%n",
+                    entry.getKey(), times.size(),
+                    stats[0], stats[1], stats[2], stats[3]);
+            out.append(out.length() > 1 ? ",\n " : "\n ")
+                    .append(String.format("{\"command\": \"%s\", "
+                            + "\"runs\": %d, \"p50\": %.3f, \"p90\": %.3f, "
+                            + "\"p99\": %.3f, \"max\": %.3f}",
+                            entry.getKey(), times.size(),
+                            stats[0], stats[1], stats[2], stats[3]));
+        }
+        if (json != null) {
+            Utils.writeContents(json, out.append("\n]\n").toString());
+        }
+    }
+
+    /** Returns the P-th percentile of TIMES, sorted nanoseconds, in
+     *  milliseconds, by the nearest-rank method. */
+    private static double percentile(List<Long> times, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * times.size());
+        return times.get(Math.max(rank, 1) - 1) / 1e6;
+    }
+
+    /** Report that gitlet with ARGS printed OUTPUT, an error, and exit. */
+    private static void fail(String[] args, String output) {
+        System.err.println("gitlet " + String.join(" ", args) + ": "
+                + output.trim());
+        System.exit(1);
+    }
+
+    /** Delete FILE and, if it is a directory, everything under it. */
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /** Print usage and exit. */
+    private static void usage() {
+        Utils.error("Usage: java gitlet.bench.MacroBench REPO [--reps N] "
+                + "[--ops LIST] [--json FILE]");
+    }
+
+    /** Commands that can be timed, in the order they are. */
+    private static final String[] OPS = {
+        "add", "commit", "status", "log", "checkout", "merge", "push",
+        "fetch"
+    };
+
+    /** The java launcher running this benchmark. */
+    private static final String JAVA = System.getProperty("java.home")
+            + File.separator + "bin" + File.separator + "java";
+
+    /** Timed runs of each command. */
+    private static int _reps = 10;
+    /** File receiving the output of each command. */
+    private static File _output;
+    /** Tag unique to this run, keeping its branches and files apart from
+     *  those of earlier runs. */
+    private static String _tag;
+}
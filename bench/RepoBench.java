@@ -0,0 +1,98 @@
+package gitlet.bench;
+
+import gitlet.Commit;
+import gitlet.Manager.CommitManager;
+import gitlet.Manager.InfoManager;
+import gitlet.Manager.MergeManager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of operations on a repository: reading a mapping,
+ *  resolving an abbreviated id, finding a merge base, and status.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepoBench {
+
+    /** Number of commits on master. */
+    @Param({"100", "1000"})
+    private int _commits;
+
+    /** Number of files in the working directory. */
+    @Param({"100"})
+    private int _files;
+
+    /** Head commit of master. */
+    private Commit _head;
+
+    /** Abbreviated id of the oldest commit on master but one. */
+    private String _shortSHA;
+
+    /** Standard output, while status writes elsewhere. */
+    private PrintStream _stdout;
+
+    /** Make a repository of the size benchmarked. */
+    @Setup
+    public void setup() throws IOException {
+        BenchRepo.create(_commits, _files);
+        _head = CommitManager.headCommit();
+        Commit commit = _head;
+        while (commit.getParentCommit().hasParent()) {
+            commit = commit.getParentCommit();
+        }
+        _shortSHA = commit.getShaVal().substring(0, 8);
+        _stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    /** Restore standard output. */
+    @TearDown
+    public void tearDown() {
+        System.setOut(_stdout);
+    }
+
+    /** Read the mapping of the head commit. */
+    @Benchmark
+    public LinkedHashMap<String, String> getBlobMapping() {
+        return _head.getBlobMapping();
+    }
+
+    /** Resolve an abbreviated commit id. */
+    @Benchmark
+    public Commit fetchCommit() {
+        return CommitManager.fetchCommit(_shortSHA);
+    }
+
+    /** Find the merge base of master and side, as merge does first. */
+    @Benchmark
+    public MergeManager mergeBase() throws IOException {
+        return new MergeManager("master", "side");
+    }
+
+    /** Compute and print status, output discarded. */
+    @Benchmark
+    public void status() {
+        InfoManager.status();
+    }
+}
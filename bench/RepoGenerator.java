@@ -0,0 +1,221 @@
+package gitlet.bench;
+
+import gitlet.Main;
+import gitlet.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Generates a synthetic gitlet repository of a given shape in the
+ *  working directory, by running real gitlet commands, so benchmarks can
+ *  be run against workloads of any size.
+ *  Usage: java gitlet.bench.RepoGenerator [OPTION VALUE]...
+ *     --files N         files in the first commit (default 100).
+ *     --sizes DIST      distribution of file sizes: fixed:SIZE,
+ *                       uniform:MIN:MAX or lognormal:MEDIAN:SIGMA, sizes
+ *                       in bytes with an optional k, m or g suffix
+ *                       (default uniform:1k:16k).
+ *     --commits N       commits after the first (default 1000).
+ *     --branches N      branches besides master (default 4).
+ *     --merge-every N   merge a branch into master every N commits, 0
+ *                       for never (default 20).
+ *     --changes N       files changed by each commit, at most (default 3).
+ *     --seed N          seed of the random choices (default 1).
+ *  The same options and seed always give a repository of the same shape.
+ */
+public class RepoGenerator {
+
+    /** Generate a repository as described by ARGS. */
+    public static void main(String... args) throws IOException {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "--files": _files = Integer.parseInt(value); break;
+            case "--sizes": _sizes = new SizeDistribution(value); break;
+            case "--commits": _commits = Integer.parseInt(value); break;
+            case "--branches": _branches = Integer.parseInt(value); break;
+            case "--merge-every": _mergeEvery = Integer.parseInt(value);
+                break;
+            case "--changes": _changes = Integer.parseInt(value); break;
+            case "--seed": _random = new Random(Long.parseLong(value));
+                break;
+            default: usage();
+            }
+        }
+        if (args.length % 2 != 0 || _files < 1 || _changes < 1) {
+            usage();
+        }
+        if (new File(".gitlet").exists()) {
+            Utils.error("Refusing to generate into an existing repository.");
+        }
+        generate();
+    }
+
+    /** Make the repository: one commit adding every file, then commits
+     *  on random branches, with periodic merges into master. */
+    private static void generate() throws IOException {
+        long start = System.nanoTime();
+        Main.main("init");
+        for (int i = 0; i < _files; i++) {
+            writeFile(i);
+            Main.main("add", fileName(i));
+        }
+        Main.main("commit", "add " + _files + " files");
+        List<String> branches = new ArrayList<>();
+        branches.add("master");
+        for (int i = 0; i < _branches; i++) {
+            branches.add("branch" + i);
+            Main.main("branch", "branch" + i);
+        }
+        boolean[] advanced = new boolean[branches.size()];
+        String active = "master";
+        int merges = 0;
+        for (int i = 1; i <= _commits; i++) {
+            int branch = _random.nextInt(2) == 0
+                    ? 0 : _random.nextInt(branches.size());
+            active = checkout(active, branches.get(branch));
+            int changes = 1 + _random.nextInt(_changes);
+            for (int j = 0; j < changes; j++) {
+                int file = _random.nextInt(_files);
+                writeFile(file);
+                Main.main("add", fileName(file));
+            }
+            Main.main("commit", "commit " + i + " on " + active);
+            advanced[branch] = true;
+            if (_mergeEvery > 0 && i % _mergeEvery == 0
+                    && branches.size() > 1) {
+                int given = 1 + _random.nextInt(branches.size() - 1);
+                if (advanced[0] && advanced[given]) {
+                    active = checkout(active, "master");
+                    Main.main("merge", branches.get(given));
+                    advanced[0] = true;
+                    advanced[given] = false;
+                    merges++;
+                }
+            }
+        }
+        checkout(active, "master");
+        System.err.printf("Generated %d files, %d commits, %d branches and "
+                + "%d merges in %.1fs.%n", _files, _commits + 1,
+                branches.size(), merges, (System.nanoTime() - start) / 1e9);
+    }
+
+    /** Check out branch TO, given that FROM is active, returning TO.
+     *  Merges only happen when both sides have new commits, since gitlet
+     *  exits after a fast-forward or a merge of an ancestor. */
+    private static String checkout(String from, String to)
+            throws IOException {
+        if (!from.equals(to)) {
+            Main.main("checkout", to);
+        }
+        return to;
+    }
+
+    /** Write a new version of file number I, of a size drawn from the
+     *  size distribution. */
+    private static void writeFile(int i) {
+        _version++;
+        long size = _sizes.next(_random);
+        StringBuilder contents = new StringBuilder();
+        contents.append("file ").append(i).append(" version ")
+                .append(_version).append('\n');
+        while (contents.length() < size) {
+            contents.append(Long.toHexString(_random.nextLong()))
+                    .append(_random.nextInt(4) == 0 ? '\n' : ' ');
+        }
+        contents.setLength((int) Math.max(size, contents.indexOf("\n") + 1));
+        Utils.writeContents(new File(fileName(i)), contents.toString());
+    }
+
+    /** Returns the name of file number I. */
+    static String fileName(int i) {
+        return "file" + i + ".txt";
+    }
+
+    /** Print usage and exit. */
+    private static void usage() {
+        Utils.error("Usage: java gitlet.bench.RepoGenerator [--files N] "
+                + "[--sizes DIST] [--commits N] [--branches N] "
+                + "[--merge-every N] [--changes N] [--seed N]");
+    }
+
+    /** A distribution of file sizes. */
+    static class SizeDistribution {
+        /** The distribution described by SPEC: fixed:SIZE,
+         *  uniform:MIN:MAX or lognormal:MEDIAN:SIGMA. */
+        SizeDistribution(String spec) {
+            String[] parts = spec.split(":");
+            _kind = parts[0];
+            switch (_kind) {
+            case "fixed":
+                _a = parseSize(parts[1]);
+                break;
+            case "uniform":
+                _a = parseSize(parts[1]);
+                _b = parseSize(parts[2]);
+                break;
+            case "lognormal":
+                _a = parseSize(parts[1]);
+                _b = Double.parseDouble(parts[2]);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown distribution: "
+                        + spec);
+            }
+        }
+
+        /** Returns a size drawn from this distribution with RANDOM. */
+        long next(Random random) {
+            switch (_kind) {
+            case "fixed":
+                return (long) _a;
+            case "uniform":
+                return (long) (_a + random.nextDouble() * (_b - _a));
+            default:
+                return (long) (_a * Math.exp(_b * random.nextGaussian()));
+            }
+        }
+
+        /** Returns SIZE, bytes with an optional k, m or g suffix. */
+        static long parseSize(String size) {
+            String lower = size.toLowerCase();
+            int shift = 0;
+            switch (lower.charAt(lower.length() - 1)) {
+            case 'k': shift = 10; break;
+            case 'm': shift = 20; break;
+            case 'g': shift = 30; break;
+            default: return Long.parseLong(lower);
+            }
+            return Long.parseLong(lower.substring(0, lower.length() - 1))
+                    << shift;
+        }
+
+        /** Kind of distribution. */
+        private final String _kind;
+        /** First parameter: the size, minimum or median. */
+        private double _a;
+        /** Second parameter: the maximum or sigma. */
+        private double _b;
+    }
+
+    /** Files in the first commit. */
+    private static int _files = 100;
+    /** Distribution of file sizes. */
+    private static SizeDistribution _sizes =
+            new SizeDistribution("uniform:1k:16k");
+    /** Commits after the first. */
+    private static int _commits = 1000;
+    /** Branches besides master. */
+    private static int _branches = 4;
+    /** Commits between merges, 0 for none. */
+    private static int _mergeEvery = 20;
+    /** Most files changed by a commit. */
+    private static int _changes = 3;
+    /** Source of random choices. */
+    private static Random _random = new Random(1);
+    /** Versions of files written so far, so every version differs. */
+    private static long _version;
+}
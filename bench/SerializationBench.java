@@ -0,0 +1,96 @@
+package gitlet.bench;
+
+import gitlet.Commit;
+import gitlet.Manager.CommitManager;
+import gitlet.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of writing and reading the serialized objects gitlet
+ *  keeps on disk: commits, and mappings of file names to blobs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBench {
+
+    /** Number of files in the mapping. */
+    @Param({"10", "1000", "100000"})
+    private int _files;
+
+    /** Commit written and read. */
+    private Commit _commit;
+
+    /** Mapping written and read. */
+    private LinkedHashMap<String, String> _mapping;
+
+    /** File the commit is written to. */
+    private final File _commitFile = new File("commit.ser");
+
+    /** File the mapping is written to. */
+    private final File _mappingFile = new File("mapping.ser");
+
+    /** Make a repository to take a commit from, and a mapping of the
+     *  size benchmarked. */
+    @Setup
+    public void setup() throws IOException {
+        BenchRepo.create(2, 1);
+        _commit = CommitManager.headCommit();
+        _mapping = new LinkedHashMap<>();
+        for (int i = 0; i < _files; i++) {
+            _mapping.put(BenchRepo.fileName(i), Utils.sha1("blob " + i));
+        }
+        Utils.writeObject(_commitFile, _commit);
+        Utils.writeObject(_mappingFile, _mapping);
+    }
+
+    /** Remove the files made by setup. */
+    @TearDown
+    public void tearDown() {
+        _commitFile.delete();
+        _mappingFile.delete();
+    }
+
+    /** Serialize and write a commit. */
+    @Benchmark
+    public void writeCommit() {
+        Utils.writeObject(_commitFile, _commit);
+    }
+
+    /** Read and deserialize a commit. */
+    @Benchmark
+    public Commit readCommit() {
+        return Utils.readObject(_commitFile, Commit.class);
+    }
+
+    /** Serialize and write a mapping. */
+    @Benchmark
+    public void writeMapping() {
+        Utils.writeObject(_mappingFile, _mapping);
+    }
+
+    /** Read and deserialize a mapping. */
+    @Benchmark
+    public LinkedHashMap<String, String> readMapping() {
+        return Utils.readLinkedHashMap(_mappingFile);
+    }
+}